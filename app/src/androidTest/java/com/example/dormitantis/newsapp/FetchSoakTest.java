@@ -0,0 +1,248 @@
+package com.example.dormitantis.newsapp;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented soak of the fetch pipeline: thousands of queries through
+ * {@link QueryUtils#fetchNewsData} and {@link NewsLoader}, served by a {@link MockGuardianServer}
+ * in the test process with some latency and a few failures, so no network is needed.
+ * <p>
+ * The throughput, latency percentiles and allocations per query are logged and reported as
+ * instrumentation status. The heap retained after a garbage collection is sampled halfway and
+ * at the end: the caches fill up during the first half, so what the second half keeps is a leak.
+ * The loads store their news on the device like a real session would, run it on a test device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FetchSoakTest {
+
+    private static final String LOG_TAG = FetchSoakTest.class.getSimpleName();
+
+    private static final int QUERY_COUNT = 2000;
+    private static final int LOAD_COUNT = 1000;
+
+    /**
+     * Queries run at once, like the fan-out of a feed and the prefetches
+     */
+    private static final int THREADS = 4;
+
+    private static final int PAGE_SIZE = 42;
+
+    /**
+     * Queries run before measuring, to load the classes and open the connections
+     */
+    private static final int WARM_UP_COUNT = 50;
+
+    private static final double ERROR_RATE = 0.01;
+
+    /**
+     * Heap the second half of a soak may keep, the bounded caches being full by then
+     */
+    private static final long MAX_RETAINED_GROWTH_BYTES = 1024 * 1024;
+
+    /**
+     * Performs the query of the given iteration, returning whether it got news.
+     */
+    private interface Iteration {
+        boolean run(int i);
+    }
+
+    private MockGuardianServer server;
+    private GovernedTransport previousTransport;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockGuardianServer.Builder()
+                .latency(5, 10)
+                .errorRate(ERROR_RATE)
+                .build();
+        server.start();
+        // The failures are retried quickly, and the quotas of the real API do not apply:
+        // the calls are counted in memory, not in the quota of the day of the device
+        RequestGovernor governor = new RequestGovernor(10000, 100, Integer.MAX_VALUE);
+        governor.setQuotaStore(new MemoryQuotaStore());
+        previousTransport = QueryUtils.getTransport();
+        QueryUtils.setTransport(new GovernedTransport(new LoopbackTransport(new UrlConnectionTransport(
+                        UrlConnectionTransport.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                        UrlConnectionTransport.DEFAULT_READ_TIMEOUT_MILLIS, 0, 10), server),
+                governor, UrlConnectionTransport.DEFAULT_MAX_RETRIES, 10));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        QueryUtils.setTransport(previousTransport);
+        server.close();
+    }
+
+    @Test
+    public void fetchNewsData() throws Exception {
+        soak("fetch", QUERY_COUNT, new Iteration() {
+            @Override
+            public boolean run(int i) {
+                String url = queryOf(i).withPage(1 + i % 3).toUrl();
+                return QueryUtils.fetchNewsData(url, null, new CancellationToken()) != null;
+            }
+        });
+    }
+
+    @Test
+    public void newsLoader() throws Exception {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        soak("loader", LOAD_COUNT, new Iteration() {
+            @Override
+            public boolean run(int i) {
+                NewsLoader loader = new NewsLoader(context, Collections.singletonList(queryOf(i)));
+                return loader.loadInBackground() != null;
+            }
+        });
+    }
+
+    /**
+     * Runs the given number of iterations on {@link #THREADS} threads, then reports and checks
+     * their metrics.
+     */
+    private void soak(String name, int count, Iteration iteration) throws Exception {
+        run(iteration, count, count + WARM_UP_COUNT, new LatencyHistogram(), new AtomicInteger());
+
+        LatencyHistogram latency = new LatencyHistogram();
+        AtomicInteger failures = new AtomicInteger();
+        int requestsBefore = server.getRequestCount();
+        long bytesBefore = server.getBytesServed();
+        long heapBefore = usedHeapAfterGc();
+        Debug.resetAllCounts();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+
+        run(iteration, 0, count / 2, latency, failures);
+        Debug.stopAllocCounting();
+        long heapHalfway = usedHeapAfterGc();
+        Debug.startAllocCounting();
+        run(iteration, count / 2, count, latency, failures);
+
+        long elapsedNanos = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        long heapAfter = usedHeapAfterGc();
+
+        Bundle results = new Bundle();
+        results.putDouble(name + "_per_second", count * 1e9 / elapsedNanos);
+        results.putLong(name + "_p50_us", latency.getPercentileMicros(50));
+        results.putLong(name + "_p99_us", latency.getPercentileMicros(99));
+        results.putLong(name + "_max_us", latency.getMaxMicros());
+        results.putInt(name + "_failures", failures.get());
+        results.putInt(name + "_requests", server.getRequestCount() - requestsBefore);
+        results.putLong(name + "_kb_served", (server.getBytesServed() - bytesBefore) / 1024);
+        results.putLong(name + "_allocated_bytes_per_query", Debug.getGlobalAllocSize() / count);
+        results.putLong(name + "_allocations_per_query", Debug.getGlobalAllocCount() / count);
+        results.putLong(name + "_retained_first_half_kb", (heapHalfway - heapBefore) / 1024);
+        results.putLong(name + "_retained_second_half_kb", (heapAfter - heapHalfway) / 1024);
+        Log.i(LOG_TAG, "Soaking " + count + " queries: " + results);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+
+        // With two retries, a query only fails when three attempts in a row do
+        assertTrue(failures.get() + " queries failed", failures.get() < count * ERROR_RATE);
+        assertTrue("The second half retained " + (heapAfter - heapHalfway) + " bytes",
+                heapAfter - heapHalfway < MAX_RETAINED_GROWTH_BYTES);
+    }
+
+    /**
+     * Runs the iterations from {@code from} to {@code to}, recording their latency and failures.
+     */
+    private static void run(final Iteration iteration, int from, final int to, final LatencyHistogram latency,
+                            final AtomicInteger failures) throws InterruptedException {
+        final AtomicInteger next = new AtomicInteger(from);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    int i;
+                    while ((i = next.getAndIncrement()) < to) {
+                        long start = System.nanoTime();
+                        if (!iteration.run(i)) {
+                            failures.incrementAndGet();
+                        }
+                        latency.recordNanos(System.nanoTime() - start);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.MINUTES));
+    }
+
+    /**
+     * Returns the first page of the query of the given iteration, each with its own keyword
+     * so nothing is served from the caches.
+     */
+    private static GuardianQuery queryOf(int i) {
+        return new GuardianQuery.Builder()
+                .apiKey(NewsActivity.GUARDIAN_API_KEY)
+                .keyword("soak " + i)
+                .pageSize(PAGE_SIZE)
+                .build();
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        runtime.runFinalization();
+        runtime.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Counts the calls of the day for the lifetime of the test only.
+     */
+    private static final class MemoryQuotaStore implements RequestGovernor.QuotaStore {
+        private long day;
+        private int requests;
+
+        @Override
+        public synchronized int load(long day) {
+            return day == this.day ? requests : 0;
+        }
+
+        @Override
+        public synchronized void save(long day, int requests) {
+            this.day = day;
+            this.requests = requests;
+        }
+    }
+
+    /**
+     * Sends the requests meant for theguardian to the mock server.
+     */
+    private static final class LoopbackTransport implements HttpTransport {
+        private final HttpTransport transport;
+        private final MockGuardianServer server;
+
+        LoopbackTransport(HttpTransport transport, MockGuardianServer server) {
+            this.transport = transport;
+            this.server = server;
+        }
+
+        @Override
+        public Response get(String url, Map<String, String> headers, CancellationToken token) throws IOException {
+            return transport.get(server.urlFor(url), headers, token);
+        }
+    }
+}
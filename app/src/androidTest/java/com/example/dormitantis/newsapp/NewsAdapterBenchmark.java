@@ -0,0 +1,117 @@
+package com.example.dormitantis.newsapp;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.support.v7.widget.RecyclerView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark of {@link NewsAdapter#onBindViewHolder}, binding a few thousand rows
+ * the way a fling does: a handful of recycled rows rebound over and over, a few rows per frame.
+ * Bind time and allocations per frame are logged and reported as instrumentation status.
+ *
+ * @see <a href="http://d.android.com/tools/testing">Testing documentation</a>
+ */
+@RunWith(AndroidJUnit4.class)
+public class NewsAdapterBenchmark {
+
+    private static final String LOG_TAG = NewsAdapterBenchmark.class.getSimpleName();
+
+    private static final int ROW_COUNT = 3000;
+
+    /**
+     * Rows entering the screen per frame during a fast fling
+     */
+    private static final int ROWS_PER_FRAME = 3;
+
+    /**
+     * Rows kept by the RecyclerView pool
+     */
+    private static final int RECYCLED_ROWS = 12;
+
+    private static final String[] SECTIONS = {"World news", "Technology", "Football", "Opinion", "Business"};
+
+    @Test
+    public void bindDuringFling() throws Exception {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        final long[] frameNanos = new long[ROW_COUNT / ROWS_PER_FRAME];
+        final int[] frameAllocations = new int[frameNanos.length];
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                NewsPageFile pageFile = new NewsPageFile(new File(context.getCacheDir(), "benchmark.pages"));
+                WindowedNewsList newsList = new WindowedNewsList(pageFile, WindowedNewsList.DEFAULT_WINDOW_SIZE);
+                for (int i = 0; i < ROW_COUNT; i++) {
+                    newsList.add(new News("https://www.theguardian.com/world/2018/oct/" + i,
+                            "Headline number " + i + " that is long enough to wrap on three lines of the row",
+                            SECTIONS[i % SECTIONS.length], "Author " + (i % 50)));
+                }
+                NewsAdapter adapter = new NewsAdapter(context, newsList);
+                RecyclerView parent = new RecyclerView(context);
+
+                // Warm up: inflate the recycled rows and let the first binds load the resources
+                List<NewsAdapter.ViewHolder> rows = new ArrayList<>();
+                for (int i = 0; i < RECYCLED_ROWS; i++) {
+                    NewsAdapter.ViewHolder holder = adapter.onCreateViewHolder(parent, 0);
+                    adapter.onBindViewHolder(holder, i);
+                    rows.add(holder);
+                }
+
+                Debug.startAllocCounting();
+                int position = 0;
+                for (int frame = 0; frame < frameNanos.length; frame++) {
+                    Debug.resetThreadAllocCount();
+                    long start = System.nanoTime();
+                    // What the scroll listener does every frame, the window moves on another thread
+                    adapter.onScrolled(position);
+                    for (int i = 0; i < ROWS_PER_FRAME; i++, position++) {
+                        adapter.onBindViewHolder(rows.get(position % RECYCLED_ROWS), position);
+                    }
+                    frameNanos[frame] = System.nanoTime() - start;
+                    frameAllocations[frame] = Debug.getThreadAllocCount();
+                }
+                Debug.stopAllocCounting();
+                try {
+                    pageFile.close();
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, "Cannot delete the page file", e);
+                }
+            }
+        });
+
+        Arrays.sort(frameNanos);
+        Arrays.sort(frameAllocations);
+        long totalAllocations = 0;
+        for (int allocations : frameAllocations) {
+            totalAllocations += allocations;
+        }
+
+        Bundle results = new Bundle();
+        results.putLong("bind_frame_p50_us", frameNanos[frameNanos.length / 2] / 1000);
+        results.putLong("bind_frame_p99_us", frameNanos[frameNanos.length * 99 / 100] / 1000);
+        results.putLong("bind_frame_max_us", frameNanos[frameNanos.length - 1] / 1000);
+        results.putDouble("allocations_per_frame", (double) totalAllocations / frameAllocations.length);
+        results.putInt("allocations_per_frame_max", frameAllocations[frameAllocations.length - 1]);
+        Log.i(LOG_TAG, "Binding " + ROW_COUNT + " rows: " + results);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+
+        // A frame is 16ms, binding the rows entering it must take a small part of that
+        assertTrue("p99 bind time per frame is " + results.getLong("bind_frame_p99_us") + "us",
+                results.getLong("bind_frame_p99_us") < 8000);
+    }
+}
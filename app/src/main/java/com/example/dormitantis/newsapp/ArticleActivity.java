@@ -0,0 +1,165 @@
+package com.example.dormitantis.newsapp;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.text.TextUtils;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+
+/**
+ * Shows the body of an article inside the app, out of the {@link ArticleBodyStore} when
+ * {@link ArticlePrefetcher} got it already, so it opens right away and offline too.
+ * An article that is not stored is downloaded first, and opened in the browser if it cannot be.
+ * The time from the tap to the article being loaded is recorded as {@link PipelineTracer.Stage#READER_OPEN}.
+ */
+public class ArticleActivity extends AppCompatActivity {
+
+    private static final String EXTRA_WEB = "com.example.dormitantis.newsapp.extra.WEB";
+    private static final String EXTRA_TITLE = "com.example.dormitantis.newsapp.extra.TITLE";
+    private static final String EXTRA_TAPPED_AT = "com.example.dormitantis.newsapp.extra.TAPPED_AT";
+
+    /**
+     * Fits the images to the screen and keeps the text readable
+     */
+    private static final String PAGE_HEAD = "<html><head>"
+            + "<meta name=\"viewport\" content=\"width=device-width, initial-scale=1\">"
+            + "<style>body{font-family:sans-serif;line-height:1.5;margin:16px}"
+            + "img,figure,iframe,video{max-width:100%;height:auto}</style>"
+            + "</head><body>";
+    private static final String PAGE_TAIL = "</body></html>";
+
+    private final CancellationToken token = new CancellationToken();
+
+    private String web;
+    private WebView webView;
+
+    /**
+     * The {@link System#nanoTime()} of the tap opening the article, 0 once it is loaded
+     */
+    private long tappedAtNanos;
+
+    /**
+     * Returns the intent showing the given news.
+     *
+     * @param tappedAtNanos the {@link System#nanoTime()} of the tap, to time the opening with
+     */
+    public static Intent newIntent(Context context, News news, long tappedAtNanos) {
+        return new Intent(context, ArticleActivity.class)
+                .putExtra(EXTRA_WEB, news.getWeb())
+                .putExtra(EXTRA_TITLE, news.getTitle())
+                .putExtra(EXTRA_TAPPED_AT, tappedAtNanos);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_article);
+
+        web = getIntent().getStringExtra(EXTRA_WEB);
+        String title = getIntent().getStringExtra(EXTRA_TITLE);
+        setTitle(title);
+        // Only the first opening is timed, not a recreation
+        tappedAtNanos = savedInstanceState == null ? getIntent().getLongExtra(EXTRA_TAPPED_AT, 0) : 0;
+
+        webView = (WebView) findViewById(R.id.article_webview);
+        // The links of the article open in the browser
+        webView.setWebViewClient(new WebViewClient() {
+            @Override
+            @SuppressWarnings("deprecation")
+            public boolean shouldOverrideUrlLoading(WebView view, String url) {
+                LinkOpener.getInstance(ArticleActivity.this).open(ArticleActivity.this, url, System.nanoTime());
+                return true;
+            }
+
+            @Override
+            public void onPageFinished(WebView view, String url) {
+                if (tappedAtNanos != 0) {
+                    PipelineTracer.record(PipelineTracer.Stage.READER_OPEN, System.nanoTime() - tappedAtNanos);
+                    tappedAtNanos = 0;
+                }
+            }
+        });
+
+        new LoadBodyTask(this, ArticleBodyStore.getInstance(this), token).execute(web, title);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        token.cancel();
+        webView.destroy();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.article, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_open_in_browser) {
+            LinkOpener.getInstance(this).open(this, web, System.nanoTime());
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void showPage(String page) {
+        findViewById(R.id.loading_indicator).setVisibility(View.GONE);
+        if (page == null) {
+            // Neither stored nor downloadable, the browser may still have it
+            LinkOpener.getInstance(this).open(this, web, tappedAtNanos);
+            finish();
+            return;
+        }
+        webView.loadDataWithBaseURL(web, page, "text/html", "UTF-8", null);
+    }
+
+    /**
+     * Reads the body of the article off the main thread, downloading it if needed,
+     * and wraps it into a page.
+     */
+    private static class LoadBodyTask extends AsyncTask<String, Void, String> {
+        private final WeakReference<ArticleActivity> activityReference;
+        private final ArticleBodyStore store;
+        private final CancellationToken token;
+
+        LoadBodyTask(ArticleActivity activity, ArticleBodyStore store, CancellationToken token) {
+            this.activityReference = new WeakReference<>(activity);
+            this.store = store;
+            this.token = token;
+        }
+
+        @Override
+        protected String doInBackground(String... params) {
+            String web = params[0];
+            String body = store.get(web);
+            if (body == null && ArticlePrefetcher.fetch(store, NewsActivity.GUARDIAN_API_KEY,
+                    Collections.singletonList(web), token)) {
+                body = store.get(web);
+            }
+            if (body == null) {
+                return null;
+            }
+            return PAGE_HEAD + "<h1>" + TextUtils.htmlEncode(params[1]) + "</h1>" + body + PAGE_TAIL;
+        }
+
+        @Override
+        protected void onPostExecute(String page) {
+            ArticleActivity activity = activityReference.get();
+            if (activity != null && !activity.isFinishing() && !token.isCancelled()) {
+                activity.showPage(page);
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.dormitantis.newsapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the HTML bodies of the articles on disk, so they can be read without a connection.
+ * <p>
+ * Every body is gzipped into its own file, named after the hash of its webUrl. Once the
+ * directory grows over its limit, the least recently read or written bodies are deleted first,
+ * like the disk tier of {@link NewsCache}.
+ */
+public final class ArticleBodyStore {
+
+    /**
+     * Tag for log messages
+     */
+    private static final String LOG_TAG = ArticleBodyStore.class.getSimpleName();
+
+    /**
+     * Maximum size of the compressed bodies, a few hundred articles
+     */
+    private static final long MAX_DISK_BYTES = 8 * 1024 * 1024;
+
+    private static final String BODY_SUFFIX = ".html.gz";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static ArticleBodyStore instance;
+
+    private final File directory;
+
+    private ArticleBodyStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the store shared by the whole app.
+     */
+    public static synchronized ArticleBodyStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new ArticleBodyStore(new File(context.getApplicationContext().getCacheDir(), "articles"));
+        }
+        return instance;
+    }
+
+    /**
+     * Returns whether the body of the given article is stored.
+     */
+    public boolean contains(String web) {
+        return fileFor(web).exists();
+    }
+
+    /**
+     * Returns the body of the given article and marks it as recently used,
+     * or null if it is not stored.
+     */
+    public String get(String web) {
+        File file = fileFor(web);
+        if (!file.exists()) {
+            return null;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.setLastModified(System.currentTimeMillis());
+
+        InputStream in = null;
+        try {
+            in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)));
+            ByteArrayOutputStream body = new ByteArrayOutputStream((int) file.length() * 4);
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                body.write(buffer, 0, count);
+            }
+            return new String(body.toByteArray(), UTF_8);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading the article body.", e);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Stores the body of the given article, replacing the previous one.
+     */
+    public void put(String web, String body) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(LOG_TAG, "Cannot create the articles directory " + directory);
+            return;
+        }
+
+        File temp = null;
+        OutputStream out = null;
+        try {
+            // Readers never see a half written body
+            temp = File.createTempFile("article", ".tmp", directory);
+            out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.write(body.getBytes(UTF_8));
+            out.close();
+            out = null;
+            synchronized (this) {
+                if (!temp.renameTo(fileFor(web))) {
+                    throw new IOException("Cannot commit the article body " + web);
+                }
+            }
+            temp = null;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing the article body.", e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                    // The file is deleted anyway
+                }
+            }
+            if (temp != null) {
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+            }
+        }
+        trimToSize();
+    }
+
+    /**
+     * Deletes the least recently used bodies until the directory fits in its limit.
+     */
+    private synchronized void trimToSize() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<File> bodies = new ArrayList<>();
+        long size = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(BODY_SUFFIX)) {
+                bodies.add(file);
+                size += file.length();
+            }
+        }
+        if (size <= MAX_DISK_BYTES) {
+            return;
+        }
+
+        Collections.sort(bodies, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long first = a.lastModified();
+                long second = b.lastModified();
+                return first < second ? -1 : (first == second ? 0 : 1);
+            }
+        });
+        for (File body : bodies) {
+            if (size <= MAX_DISK_BYTES) {
+                break;
+            }
+            size -= body.length();
+            //noinspection ResultOfMethodCallIgnored
+            body.delete();
+        }
+    }
+
+    private File fileFor(String web) {
+        return new File(directory, NewsCache.fileNameFor(web) + BODY_SUFFIX);
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // Nothing useful can be done about it
+            }
+        }
+    }
+}
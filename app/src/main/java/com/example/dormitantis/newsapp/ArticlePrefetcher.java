@@ -0,0 +1,191 @@
+package com.example.dormitantis.newsapp;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.support.v4.net.ConnectivityManagerCompat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads the bodies of the articles the user is likely to open next into the
+ * {@link ArticleBodyStore}, so they open right away, even offline.
+ * <p>
+ * The bodies are asked for several articles at a time, on a single low priority thread.
+ * Only a couple of batches wait for it: when the user scrolls on, the oldest waiting batch,
+ * the one furthest from the screen, is dropped for the new one. Nothing is downloaded
+ * on a metered network.
+ */
+public class ArticlePrefetcher {
+
+    /**
+     * Number of rows below the visible ones whose articles are prefetched
+     */
+    public static final int PREFETCH_AHEAD = 10;
+
+    /**
+     * Number of articles asked for in one request
+     */
+    private static final int BATCH_SIZE = 10;
+
+    /**
+     * Number of batches waiting for the thread
+     */
+    private static final int MAX_QUEUED_BATCHES = 2;
+
+    private final ArticleBodyStore store;
+    private final String apiKey;
+    private final ConnectivityManager connectivityManager;
+    private final ThreadPoolExecutor executor;
+    private final CancellationToken token = new CancellationToken();
+
+    /**
+     * The webUrls queued or downloading, so they are not asked for twice
+     */
+    private final Set<String> pending = Collections.synchronizedSet(new HashSet<String>());
+
+    /**
+     * Constructs a new {@link ArticlePrefetcher}.
+     *
+     * @param context to check the network with
+     * @param store   to put the bodies in
+     * @param apiKey  the key of theguardian API
+     */
+    public ArticlePrefetcher(Context context, ArticleBodyStore store, String apiKey) {
+        this.store = store;
+        this.apiKey = apiKey;
+        this.connectivityManager = (ConnectivityManager) context.getApplicationContext()
+                .getSystemService(Context.CONNECTIVITY_SERVICE);
+        QueryUtils.init(context);
+        this.executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_QUEUED_BATCHES), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        RequestGovernor.setCurrentPriority(RequestGovernor.Priority.PREFETCH);
+                        runnable.run();
+                    }
+                }, "ArticlePrefetcher");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        }, new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                if (executor.isShutdown()) {
+                    return;
+                }
+                // Drop the oldest batch, its articles may be asked for again later
+                Batch oldest = (Batch) executor.getQueue().poll();
+                if (oldest != null) {
+                    pending.removeAll(oldest.webs);
+                }
+                executor.execute(runnable);
+            }
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Prefetches the bodies of the given news, the visible ones and the next ones,
+     * unless they are already stored. Call from the main thread.
+     */
+    public void prefetch(List<News> newsList) {
+        if (connectivityManager == null || ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager)) {
+            return;
+        }
+        List<String> webs = new ArrayList<>(BATCH_SIZE);
+        for (News news : newsList) {
+            if (pending.add(news.getWeb())) {
+                webs.add(news.getWeb());
+            }
+            if (webs.size() == BATCH_SIZE) {
+                executor.execute(new Batch(webs));
+                webs = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (!webs.isEmpty()) {
+            executor.execute(new Batch(webs));
+        }
+    }
+
+    /**
+     * Stops the downloads, the prefetcher must not be used afterwards.
+     */
+    public void shutdown() {
+        token.cancel();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Downloads the bodies of the given articles into the store. This is a blocking call.
+     *
+     * @return whether the request succeeded, the articles without a body left aside
+     */
+    public static boolean fetch(ArticleBodyStore store, String apiKey, List<String> webs, CancellationToken token) {
+        List<String> ids = new ArrayList<>(webs.size());
+        for (String web : webs) {
+            String id = GuardianQuery.idOf(web);
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        if (ids.isEmpty()) {
+            return false;
+        }
+
+        GuardianQuery guardianQuery = new GuardianQuery.Builder()
+                .apiKey(apiKey)
+                .ids(ids)
+                .showBody(true)
+                .pageSize(Math.min(ids.size(), GuardianQuery.MAX_PAGE_SIZE))
+                .build();
+        Map<String, String> bodies = QueryUtils.fetchArticleBodies(guardianQuery.toUrl(), token);
+        if (bodies == null) {
+            return false;
+        }
+        for (Map.Entry<String, String> body : bodies.entrySet()) {
+            store.put(body.getKey(), body.getValue());
+        }
+        return true;
+    }
+
+    /**
+     * The articles of one request.
+     */
+    private final class Batch implements Runnable {
+        final List<String> webs;
+
+        Batch(List<String> webs) {
+            this.webs = webs;
+        }
+
+        @Override
+        public void run() {
+            try {
+                List<String> missing = new ArrayList<>(webs.size());
+                for (String web : webs) {
+                    if (!store.contains(web)) {
+                        missing.add(web);
+                    }
+                }
+                if (!missing.isEmpty() && !token.isCancelled()) {
+                    fetch(store, apiKey, missing, token);
+                }
+            } finally {
+                pending.removeAll(webs);
+            }
+        }
+    }
+}
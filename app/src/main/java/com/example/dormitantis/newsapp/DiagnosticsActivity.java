@@ -0,0 +1,115 @@
+package com.example.dormitantis.newsapp;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.text.format.DateFormat;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Shows the latency percentiles of every stage of the loads recorded by {@link PipelineTracer},
+ * the bytes received, the cache hit rate and the usage of the quota of the API key,
+ * and exports them to a file.
+ */
+public class DiagnosticsActivity extends AppCompatActivity {
+
+    /**
+     * Tag for log messages
+     */
+    private static final String LOG_TAG = DiagnosticsActivity.class.getName();
+
+    private TextView diagnosticsTextView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_diagnostics);
+        diagnosticsTextView = (TextView) findViewById(R.id.diagnostics_textview);
+        // The usage of the quota includes the calls of the previous processes
+        QueryUtils.init(this);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        diagnosticsTextView.setText(report());
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.diagnostics, menu);
+        menu.findItem(R.id.action_warm_up).setChecked(LinkOpener.getInstance(this).isWarmUpEnabled());
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int id = item.getItemId();
+        if (id == R.id.action_export) {
+            export(report());
+            return true;
+        }
+        if (id == R.id.action_warm_up) {
+            // Applies from the next time the list is created, compare the browser warm and cold rows
+            item.setChecked(!item.isChecked());
+            LinkOpener.getInstance(this).setWarmUpEnabled(item.isChecked());
+            return true;
+        }
+        if (id == R.id.action_reset) {
+            PipelineTracer.reset();
+            diagnosticsTextView.setText(report());
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Returns the latencies of the loads followed by the usage of the quota of the API key.
+     */
+    private static String report() {
+        return PipelineTracer.report() + String.format("%n") + QueryUtils.getRequestGovernor().report();
+    }
+
+    /**
+     * Writes the given report to the external files of the app, where it can be pulled
+     * without root, or to its internal files if there is no external storage.
+     */
+    private void export(String report) {
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            directory = getFilesDir();
+        }
+        File file = new File(directory, "diagnostics-"
+                + DateFormat.format("yyyyMMdd-HHmmss", System.currentTimeMillis()) + ".txt");
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"));
+            writer.write(report);
+            writer.close();
+            writer = null;
+            Toast.makeText(this, getString(R.string.diagnostics_exported, file.getAbsolutePath()),
+                    Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem exporting the diagnostics.", e);
+            Toast.makeText(this, R.string.diagnostics_export_failed, Toast.LENGTH_LONG).show();
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem closing the diagnostics file.", e);
+                }
+            }
+        }
+    }
+}
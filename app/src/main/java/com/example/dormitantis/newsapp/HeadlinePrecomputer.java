@@ -0,0 +1,81 @@
+package com.example.dormitantis.newsapp;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Typeface;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.LruCache;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Prepares the all caps headlines of the list off the UI thread.
+ * <p>
+ * The upper casing that {@code textAllCaps} would do on every bind is done once per title,
+ * and the headline is laid out with the same paint as {@code title_textview}, which fills the
+ * text layout cache with the widths of its words. Measuring the headline on the UI thread then
+ * mostly hits that cache, which is what {@code PrecomputedText} does before Android P.
+ */
+final class HeadlinePrecomputer {
+
+    /**
+     * Number of headlines kept, a few pages worth of rows
+     */
+    private static final int MAX_HEADLINES = 512;
+
+    private final LruCache<String, String> headlines = new LruCache<>(MAX_HEADLINES);
+    private final TextPaint paint;
+    private final int width;
+    private final Locale locale;
+
+    /**
+     * Constructs a new {@link HeadlinePrecomputer} matching the title of news_item_list.
+     */
+    HeadlinePrecomputer(Context context) {
+        Resources resources = context.getResources();
+        paint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+        paint.setTextSize(resources.getDimension(R.dimen.title_text_size));
+        paint.setTypeface(Typeface.create("sans-serif-medium", Typeface.NORMAL));
+        // The title takes 8/11 of the row, the exact width does not matter for the word cache
+        width = resources.getDisplayMetrics().widthPixels * 8 / 11;
+        locale = resources.getConfiguration().locale;
+    }
+
+    /**
+     * Upper cases and lays out the titles of the given news. This is a blocking call,
+     * to make on a background thread.
+     */
+    void precompute(List<News> newsList) {
+        for (News news : newsList) {
+            String title = news.getTitle();
+            if (headlines.get(title) == null) {
+                String headline = title.toUpperCase(locale);
+                new StaticLayout(headline, paint, width, Layout.Alignment.ALIGN_NORMAL, 1f, 0f, false);
+                headlines.put(title, headline);
+            }
+        }
+    }
+
+    /**
+     * Returns the headline to display for the given title, upper casing it now
+     * if it was not precomputed.
+     */
+    String getHeadline(String title) {
+        String headline = headlines.get(title);
+        if (headline == null) {
+            headline = title.toUpperCase(locale);
+            headlines.put(title, headline);
+        }
+        return headline;
+    }
+
+    /**
+     * Forgets the precomputed headlines, they are computed again as they are displayed.
+     */
+    void evictAll() {
+        headlines.evictAll();
+    }
+}
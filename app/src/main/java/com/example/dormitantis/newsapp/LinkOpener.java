@@ -0,0 +1,170 @@
+package com.example.dormitantis.newsapp;
+
+import android.content.ActivityNotFoundException;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.customtabs.CustomTabsCallback;
+import android.support.customtabs.CustomTabsClient;
+import android.support.customtabs.CustomTabsIntent;
+import android.support.customtabs.CustomTabsServiceConnection;
+import android.support.customtabs.CustomTabsSession;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opens the links in the browser, in a Custom Tab when the browser supports them.
+ * <p>
+ * While the list is on screen, the browser process is warmed up so a link opens faster. No
+ * link is hinted to it ahead of the tap: the news of the list open in {@link ArticleActivity},
+ * so preloading them in the browser would only spend data. Without a browser supporting
+ * Custom Tabs, the links are opened with a plain {@link Intent#ACTION_VIEW}.
+ * <p>
+ * The time from the tap to the end of the page load is recorded as
+ * {@link PipelineTracer.Stage#BROWSER_WARM} or {@link PipelineTracer.Stage#BROWSER_COLD},
+ * whether the browser was warmed up or not. The warm-up can be turned off from the
+ * diagnostics screen to compare both.
+ */
+public final class LinkOpener {
+
+    /**
+     * Tag for log messages
+     */
+    private static final String LOG_TAG = LinkOpener.class.getSimpleName();
+
+    private static final String PREFS_NAME = "link_opener";
+    private static final String PREF_WARM_UP = "warmUp";
+
+    private static LinkOpener instance;
+
+    private final Context context;
+    private final SharedPreferences prefs;
+
+    /**
+     * When the link being opened was tapped, 0 once its page loaded
+     */
+    private final AtomicLong tappedAtNanos = new AtomicLong();
+    private volatile boolean tappedWarm;
+
+    private CustomTabsServiceConnection connection;
+    private CustomTabsSession session;
+    private boolean warmedUp;
+
+    private LinkOpener(Context context) {
+        this.context = context;
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Returns the opener shared by the whole app.
+     */
+    public static synchronized LinkOpener getInstance(Context context) {
+        if (instance == null) {
+            instance = new LinkOpener(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public boolean isWarmUpEnabled() {
+        return prefs.getBoolean(PREF_WARM_UP, true);
+    }
+
+    /**
+     * Turns the warm-up on or off, from the next connection to the browser on.
+     */
+    public void setWarmUpEnabled(boolean enabled) {
+        prefs.edit().putBoolean(PREF_WARM_UP, enabled).apply();
+    }
+
+    /**
+     * Connects to the browser and warms it up, call when the list comes on screen.
+     * Does nothing if it is already connected or no browser supports Custom Tabs.
+     */
+    public void bind() {
+        if (connection != null) {
+            return;
+        }
+        String packageName = CustomTabsClient.getPackageName(context, null);
+        if (packageName == null) {
+            return;
+        }
+        final boolean warmUp = isWarmUpEnabled();
+        CustomTabsServiceConnection newConnection = new CustomTabsServiceConnection() {
+            @Override
+            public void onCustomTabsServiceConnected(ComponentName name, CustomTabsClient client) {
+                if (connection != this) {
+                    return;
+                }
+                warmedUp = warmUp && client.warmup(0);
+                session = client.newSession(new CustomTabsCallback() {
+                    @Override
+                    public void onNavigationEvent(int navigationEvent, Bundle extras) {
+                        if (navigationEvent == NAVIGATION_FINISHED) {
+                            recordOpen();
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onServiceDisconnected(ComponentName name) {
+                if (connection == this) {
+                    session = null;
+                    warmedUp = false;
+                }
+            }
+        };
+        if (CustomTabsClient.bindCustomTabsService(context, packageName, newConnection)) {
+            connection = newConnection;
+        }
+    }
+
+    /**
+     * Disconnects from the browser, call when the list leaves the screen.
+     */
+    public void unbind() {
+        if (connection == null) {
+            return;
+        }
+        context.unbindService(connection);
+        connection = null;
+        session = null;
+        warmedUp = false;
+    }
+
+    /**
+     * Opens the given link, in a Custom Tab if connected to the browser.
+     *
+     * @param activity      to start the browser from
+     * @param tappedAtNanos the {@link System#nanoTime()} of the tap, to time the opening with
+     */
+    public void open(Context activity, String url, long tappedAtNanos) {
+        Uri uri = Uri.parse(url);
+        try {
+            if (session != null) {
+                tappedWarm = warmedUp;
+                this.tappedAtNanos.set(tappedAtNanos);
+                new CustomTabsIntent.Builder(session).build().launchUrl(activity, uri);
+            } else {
+                activity.startActivity(new Intent(Intent.ACTION_VIEW, uri));
+            }
+        } catch (ActivityNotFoundException e) {
+            Log.e(LOG_TAG, "No browser to open " + url, e);
+        }
+    }
+
+    /**
+     * Records how long the page last tapped took to load, on a binder thread.
+     */
+    private void recordOpen() {
+        long tapped = tappedAtNanos.getAndSet(0);
+        if (tapped != 0) {
+            PipelineTracer.record(tappedWarm ? PipelineTracer.Stage.BROWSER_WARM : PipelineTracer.Stage.BROWSER_COLD,
+                    System.nanoTime() - tapped);
+        }
+    }
+}
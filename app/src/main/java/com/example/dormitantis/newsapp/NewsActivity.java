@@ -2,26 +2,31 @@ package com.example.dormitantis.newsapp;
 
 import android.app.LoaderManager;
 import android.app.LoaderManager.LoaderCallbacks;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.Intent;
 import android.content.Loader;
 import android.content.SharedPreferences;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
-import android.net.Uri;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
+import android.support.v4.os.TraceCompat;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.view.ViewTreeObserver;
 import android.widget.TextView;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 public class NewsActivity extends AppCompatActivity implements LoaderCallbacks<List<News>>, SharedPreferences.OnSharedPreferenceChangeListener {
 
@@ -31,9 +36,19 @@ public class NewsActivity extends AppCompatActivity implements LoaderCallbacks<L
     private static final String LOG_TAG = NewsActivity.class.getName();
 
     /**
-     * URL for theguardian data from the data-set
+     * Number of news requested per page
      */
-    private static final String GUARDIAN_URL_REQUEST = "https://content.guardianapis.com/search?format=json&from-date=2017-01-01&show-tags=contributor&show-fields=starRating,headline,thumbnail,short-url&page-size=42&api-key=test";
+    private static final int PAGE_SIZE = 42;
+
+    /**
+     * Key of theguardian API
+     */
+    static final String GUARDIAN_API_KEY = "test";
+
+    /**
+     * Separates the keywords the user filled
+     */
+    private static final String KEYWORD_SEPARATOR = ",";
 
     /**
      * Constant value for the news loader ID. We can choose any integer.
@@ -41,6 +56,11 @@ public class NewsActivity extends AppCompatActivity implements LoaderCallbacks<L
      */
     private static final int NEWS_LOADER_ID = 42;
 
+    /**
+     * Number of rows kept for reuse, about two screens of them
+     */
+    private static final int RECYCLED_ROWS = 20;
+
     /**
      * Adapter for the list of news
      */
@@ -51,80 +71,272 @@ public class NewsActivity extends AppCompatActivity implements LoaderCallbacks<L
      */
     private TextView emptyStateTextView;
 
+    /**
+     * Pool of recycled rows shared by the lists of news of the activity
+     */
+    private final RecyclerView.RecycledViewPool sharedViewPool = new RecyclerView.RecycledViewPool();
+
+    /**
+     * Loads the pages following the first one as the user scrolls
+     */
+    private NewsPagePrefetcher newsPagePrefetcher;
+
+    /**
+     * Downloads the articles of the visible news and the next ones, for the reader
+     */
+    private ArticlePrefetcher articlePrefetcher;
+
+    private LinearLayoutManager layoutManager;
+
+    /**
+     * Where the news scrolled away from are spilled
+     */
+    private NewsPageFile newsPageFile;
+
+    /**
+     * Key of the feed currently displayed, and how many news its first page had
+     */
+    private String shownRequestKey;
+    private int shownFirstPageSize;
+
+    /**
+     * Key of the feed whose first page is being displayed batch by batch, if any
+     */
+    private String streamingRequestKey;
+
+    /**
+     * Appends the news of the first page as they are downloaded, so the first rows show
+     * before the end of the response
+     */
+    private final NewsLoader.OnNewsBatchListener newsBatchListener = new NewsLoader.OnNewsBatchListener() {
+        @Override
+        public void onNewsBatch(NewsLoader loader, List<News> batch, Runnable onApplied) {
+            String requestKey = loader.getRequestKey();
+            if (!requestKey.equals(shownRequestKey)) {
+                findViewById(R.id.loading_indicator).setVisibility(View.GONE);
+                emptyStateTextView.setText("");
+                newsAdapter.clear();
+                streamingRequestKey = requestKey;
+                shownRequestKey = requestKey;
+                shownFirstPageSize = 0;
+            } else if (!requestKey.equals(streamingRequestKey)) {
+                // A refresh of the news on screen, they are only updated once it is complete
+                onApplied.run();
+                return;
+            }
+            shownFirstPageSize += batch.size();
+            newsAdapter.addAll(batch, onApplied);
+        }
+    };
+
+    /**
+     * Debounces the keyword changes and leaves out the ones that do not change the query
+     */
+    private QueryScheduler queryScheduler;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        final long createdAtNanos = System.nanoTime();
         super.onCreate(savedInstanceState);
+
+        // Show the stages of the loads in systrace
+        PipelineTracer.setSectionListener(new PipelineTracer.SectionListener() {
+            @Override
+            public void beginSection(String name) {
+                TraceCompat.beginSection(name);
+            }
+
+            @Override
+            public void endSection() {
+                TraceCompat.endSection();
+            }
+        });
+
         setContentView(R.layout.activity_news);
 
-        // Find a reference to the {@link ListView} in the layout
-        ListView newsListView = (ListView) findViewById(R.id.list);
+        // Find a reference to the {@link RecyclerView} in the layout
+        final RecyclerView newsListView = (RecyclerView) findViewById(R.id.list);
 
-        emptyStateTextView = (TextView) findViewById(R.id.empty_view);
+        // Time how long it takes to get the first news on screen
+        newsListView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                if (newsAdapter.getItemCount() > 0) {
+                    PipelineTracer.record(PipelineTracer.Stage.FIRST_FRAME, System.nanoTime() - createdAtNanos);
+                    newsListView.getViewTreeObserver().removeOnPreDrawListener(this);
+                }
+                return true;
+            }
+        });
 
-        // Create a new adapter with an empty list of news as input
-        newsAdapter = new NewsAdapter(this, new ArrayList<News>());
+        emptyStateTextView = (TextView) findViewById(R.id.empty_view);
 
-        // Set the adapter on the {@link ListView}
+        // Lay the rows out vertically, letting the GapWorker build the next rows
+        // between frames while the list is scrolled
+        layoutManager = new LinearLayoutManager(this);
+        layoutManager.setItemPrefetchEnabled(true);
+        newsListView.setLayoutManager(layoutManager);
+        newsListView.setHasFixedSize(true);
+        sharedViewPool.setMaxRecycledViews(0, RECYCLED_ROWS);
+        newsListView.setRecycledViewPool(sharedViewPool);
+
+        // Create a new adapter with an empty list of news as input, only the news around
+        // the visible rows stay on the heap
+        newsPageFile = new NewsPageFile(new File(getCacheDir(), "feed.pages"));
+        newsAdapter = new NewsAdapter(this,
+                new WindowedNewsList(newsPageFile, WindowedNewsList.DEFAULT_WINDOW_SIZE));
+
+        // Set the adapter on the {@link RecyclerView}
         // so the list can be populated in the user interface
         newsListView.setAdapter(newsAdapter);
 
+        // Append the following pages to the adapter as they arrive, in page order
+        newsPagePrefetcher = new NewsPagePrefetcher(NewsRepository.getInstance(this),
+                new NewsPagePrefetcher.OnPageLoadedListener() {
+                    @Override
+                    public void onPageLoaded(int page, List<News> newsList) {
+                        newsAdapter.addAll(newsList);
+                    }
+                });
+
+        // Ask for the next pages before the user reaches the end of the list
+        newsListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int lastVisiblePosition = layoutManager.findLastVisibleItemPosition();
+                newsPagePrefetcher.onScroll(lastVisiblePosition, newsAdapter.getItemCount());
+                if (lastVisiblePosition != RecyclerView.NO_POSITION) {
+                    newsAdapter.onScrolled((layoutManager.findFirstVisibleItemPosition() + lastVisiblePosition) / 2);
+                }
+                if (dx == 0 && dy == 0) {
+                    // A layout changed the visible rows, e.g. the first news just came in
+                    prefetchArticles();
+                }
+            }
+
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    prefetchArticles();
+                }
+            }
+        });
+        articlePrefetcher = new ArticlePrefetcher(this, ArticleBodyStore.getInstance(this), GUARDIAN_API_KEY);
+
+        // Warm the browser up for the articles opened there, for as long as the list is around
+        LinkOpener.getInstance(this).bind();
+
+        // Start the query of the keyword once the user stops changing it
+        queryScheduler = new QueryScheduler(new QueryScheduler.OnQueryListener() {
+            @Override
+            public void onQuery(String query) {
+                restartNewsLoader();
+            }
+        });
+
         // Obtain a reference to the SharedPreferences file for this app
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
         // And register to be notified of preference changes
         // So we know when the user has adjusted the query settings
         prefs.registerOnSharedPreferenceChangeListener(this);
 
-        // Set an item click listener on the ListView, which sends an intent to a web browser
-        // to open a website related to the selected news.
-        newsListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // Set an item click listener on the adapter, which opens the selected news
+        // in the reader, out of the articles prefetched while scrolling.
+        newsAdapter.setOnItemClickListener(new NewsAdapter.OnItemClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
-                // Find the current news that was clicked on
-                News currentNews = newsAdapter.getItem(position);
+            public void onItemClick(News currentNews, int position) {
+                startActivity(ArticleActivity.newIntent(NewsActivity.this, currentNews, System.nanoTime()));
+            }
+        });
 
-                // Convert the String URL into a URI object (to pass into the Intent constructor)
-                Uri newsUri = Uri.parse(currentNews.getWeb());
+        // Get a reference to the LoaderManager, in order to interact with loaders.
+        LoaderManager loaderManager = getLoaderManager();
 
-                // Create a new intent to view the news URI
-                Intent websiteIntent = new Intent(Intent.ACTION_VIEW, newsUri);
+        // Initialize the loader. Pass in the int ID constant defined above and pass in null for
+        // the bundle. Pass in this activity for the LoaderCallbacks parameter (which is valid
+        // because this activity implements the LoaderCallbacks interface).
+        // Without a network connection the loader serves the news stored on the device.
+        loaderManager.initLoader(NEWS_LOADER_ID, null, this);
 
-                // Send the intent to launch a new activity
-                startActivity(websiteIntent);
-            }
-        });
+        // Keep the feed fresh in the background, so it is already there next time
+        NewsSyncService.schedule(this);
+    }
 
-        // Get a reference to the ConnectivityManager to check state of network connectivity
-        ConnectivityManager connMgr = (ConnectivityManager)
-                getSystemService(Context.CONNECTIVITY_SERVICE);
-        assert connMgr != null;
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // The preferences hold on to their listeners, this activity would leak otherwise
+        PreferenceManager.getDefaultSharedPreferences(this).unregisterOnSharedPreferenceChangeListener(this);
+        queryScheduler.cancel();
+        newsPagePrefetcher.shutdown();
+        articlePrefetcher.shutdown();
+        LinkOpener.getInstance(this).unbind();
+        try {
+            newsPageFile.close();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem closing the feed page file.", e);
+        }
+    }
 
-        // Get details on the currently active default data network
-        NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // The window shrank while memory was low or the list was hidden
+        newsAdapter.restoreMemory();
+    }
 
-        // If there is a network connection, fetch data
-        if (networkInfo != null && networkInfo.isConnected()) {
-            // Get a reference to the LoaderManager, in order to interact with loaders.
-            LoaderManager loaderManager = getLoaderManager();
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        releaseMemory(level);
+    }
 
-            // Initialize the loader. Pass in the int ID constant defined above and pass in null for
-            // the bundle. Pass in this activity for the LoaderCallbacks parameter (which is valid
-            // because this activity implements the LoaderCallbacks interface).
-            loaderManager.initLoader(NEWS_LOADER_ID, null, this);
-        } else {
-            // Otherwise, display error
-            // First, hide loading indicator so error message will be visible
-            View loadingIndicator = findViewById(R.id.loading_indicator);
-            loadingIndicator.setVisibility(View.GONE);
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        releaseMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
 
-            // Update empty state with no connection error message
-            emptyStateTextView.setText(R.string.no_internet_connection);
+    /**
+     * Shrinks the window of news and the caches in memory according to the given
+     * {@link ComponentCallbacks2} trim level.
+     */
+    private void releaseMemory(int level) {
+        newsAdapter.trimMemory(level);
+        ThumbnailLoader.getInstance(this).trimMemory(level);
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            NewsCache.getInstance(this).evictMemory();
         }
     }
 
+    /**
+     * Prefetches the articles of the visible news and of the next ones. The news that were
+     * spilled out of the window are left out rather than read back on the main thread.
+     */
+    private void prefetchArticles() {
+        int first = layoutManager.findFirstVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) {
+            return;
+        }
+        int end = Math.min(layoutManager.findLastVisibleItemPosition() + ArticlePrefetcher.PREFETCH_AHEAD + 1,
+                newsAdapter.getItemCount());
+        List<News> newsList = new ArrayList<>(Math.max(0, end - first));
+        for (int position = first; position < end; position++) {
+            News news = newsAdapter.getItem(position);
+            if (news != null) {
+                newsList.add(news);
+            }
+        }
+        articlePrefetcher.prefetch(newsList);
+    }
+
     @Override
     public void onLoaderReset(Loader<List<News>> loader) {
         // Loader reset, so we can clear out our existing data.
+        newsPagePrefetcher.cancel();
         newsAdapter.clear();
+        shownRequestKey = null;
+        streamingRequestKey = null;
     }
 
     @Override
@@ -133,56 +345,148 @@ public class NewsActivity extends AppCompatActivity implements LoaderCallbacks<L
         View loadingIndicator = findViewById(R.id.loading_indicator);
         loadingIndicator.setVisibility(View.GONE);
 
-        // Set empty state text to display "No news for now"
-        emptyStateTextView.setText(R.string.no_news);
-
-        // Clear the adapter of previous data
-        newsAdapter.clear();
+        // Set empty state text to display "No news for now",
+        // or the no connection error message if nothing was stored for the query either
+        if (NewsRepository.getInstance(this).isOnline()) {
+            emptyStateTextView.setText(R.string.no_news);
+        } else {
+            emptyStateTextView.setText(R.string.no_internet_connection);
+        }
 
-        // If there is a valid list of {@link News}, then add them to the adapter's
-        // data set. This will trigger the ListView to update.
+        // If there is a valid list of {@link News}, then put them in the adapter's
+        // data set. This will trigger the RecyclerView to update.
         if (newsList != null && !newsList.isEmpty()) {
             emptyStateTextView.setText("");
-            newsAdapter.addAll(newsList);
             Log.e(LOG_TAG, "onLoadFinished()");
+
+            NewsLoader newsLoader = (NewsLoader) loader;
+            String requestKey = newsLoader.getRequestKey();
+            boolean firstPageComplete = !requestKey.equals(shownRequestKey) || requestKey.equals(streamingRequestKey);
+            if (requestKey.equals(shownRequestKey)) {
+                // The first page was refreshed, more queries of the feed completed or the
+                // rest of the page arrived: only update the rows that changed and keep the
+                // following pages already appended below it
+                newsAdapter.submit(shownFirstPageSize, newsList);
+            } else {
+                newsAdapter.submit(newsAdapter.getItemCount(), newsList);
+            }
+
+            if (firstPageComplete) {
+                // The first page is on screen, the following ones are loaded while scrolling.
+                // A feed of several queries is already sorted by date, so it is not paged.
+                List<GuardianQuery> guardianQueries = newsLoader.getGuardianQueries();
+                if (guardianQueries.size() == 1) {
+                    newsPagePrefetcher.reset(guardianQueries.get(0), newsList.size());
+                } else {
+                    newsPagePrefetcher.cancel();
+                }
+            }
+            shownRequestKey = requestKey;
+            streamingRequestKey = null;
+            shownFirstPageSize = newsList.size();
+        } else {
+            // Clear the adapter of previous data
+            newsAdapter.clear();
+            newsPagePrefetcher.cancel();
+            shownRequestKey = null;
+            streamingRequestKey = null;
         }
     }
 
     @Override
     public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
-        if (key.equals(getString(R.string.settings_keyword_key))) {
-            // Clear the ListView as a new query will be kicked off
-            newsAdapter.clear();
+        if (key.equals(getString(R.string.settings_keyword_key))
+                || key.equals(getString(R.string.settings_sections_key))) {
+            // The query is only restarted once the keywords stopped changing,
+            // and only if they actually make different queries
+            queryScheduler.submit(NewsLoader.requestKeyOf(buildQueries(this, prefs)));
+        }
+    }
 
-            // Hide the empty state text view as the loading indicator will be displayed
-            emptyStateTextView.setVisibility(View.GONE);
+    /**
+     * Drops the news of the previous query and restarts the loader for the current keyword.
+     */
+    private void restartNewsLoader() {
+        // Clear the list as a new query will be kicked off
+        // and drop the pages still loading for the previous one
+        newsPagePrefetcher.cancel();
+        newsAdapter.clear();
+        shownRequestKey = null;
+        streamingRequestKey = null;
+
+        // Abort the request of the previous query right away, the framework only
+        // cancels a running load by itself from Jelly Bean on
+        Loader<List<News>> loader = getLoaderManager().getLoader(NEWS_LOADER_ID);
+        if (loader instanceof NewsLoader) {
+            ((NewsLoader) loader).cancelLoadInBackground();
+        }
 
-            // Show the loading indicator while new data is being fetched
-            View loadingIndicator = findViewById(R.id.loading_indicator);
-            loadingIndicator.setVisibility(View.VISIBLE);
+        // Hide the empty state text view as the loading indicator will be displayed
+        emptyStateTextView.setVisibility(View.GONE);
 
-            // Restart the loader to requery the web as the query settings have been updated
-            getLoaderManager().restartLoader(NEWS_LOADER_ID, null, this);
-        }
+        // Show the loading indicator while new data is being fetched
+        View loadingIndicator = findViewById(R.id.loading_indicator);
+        loadingIndicator.setVisibility(View.VISIBLE);
+
+        // Restart the loader to requery the web as the query settings have been updated
+        getLoaderManager().restartLoader(NEWS_LOADER_ID, null, this);
     }
 
     @Override
     public Loader<List<News>> onCreateLoader(int id, Bundle args) {
         Log.e(LOG_TAG, "onCreateLoader()");
         SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
-        String keyword = sharedPreferences.getString(getString(R.string.settings_keyword_key),
-                getString(R.string.settings_keyword_default));
 
-        Uri baseUri = Uri.parse(GUARDIAN_URL_REQUEST);
-        Uri.Builder uriBuilder = baseUri.buildUpon();
+        long urlBuildStart = PipelineTracer.begin(PipelineTracer.Stage.URL_BUILD);
+        List<GuardianQuery> guardianQueries = buildQueries(this, sharedPreferences);
+        queryScheduler.setCurrentQuery(NewsLoader.requestKeyOf(guardianQueries));
+
+        // Create and return a new loader for the queries.
+        NewsLoader newsLoader = new NewsLoader(this, guardianQueries);
+        newsLoader.setOnNewsBatchListener(newsBatchListener);
+        PipelineTracer.end(PipelineTracer.Stage.URL_BUILD, urlBuildStart);
+        return newsLoader;
+    }
 
-        //Remove the punctuation from the field a user filled
-        keyword = keyword.replaceAll("[^a-zA-Z0-9 ]", " ").toLowerCase().replaceAll(" +", " ");
-        keyword = keyword.replace(" ", "%20");
-        uriBuilder.appendQueryParameter("q", keyword);
+    /**
+     * Returns the queries of the feed the user set up: one per keyword, restricted to
+     * the chosen sections, or one per section when there is no keyword.
+     * The background sync fetches the very same queries.
+     */
+    static List<GuardianQuery> buildQueries(Context context, SharedPreferences prefs) {
+        String keywords = prefs.getString(context.getString(R.string.settings_keyword_key),
+                context.getString(R.string.settings_keyword_default));
+        Set<String> sections = prefs.getStringSet(context.getString(R.string.settings_sections_key),
+                Collections.<String>emptySet());
+
+        //Remove the punctuation from every keyword the user filled, and the duplicates
+        Set<String> queries = new LinkedHashSet<>();
+        for (String keyword : keywords.split(KEYWORD_SEPARATOR)) {
+            String query = QueryUtils.normalizeKeyword(keyword);
+            if (!query.isEmpty()) {
+                queries.add(query);
+            }
+        }
 
-        // Create and return a new loader for the given URL.
-        return new NewsLoader(this, uriBuilder.toString());
+        List<GuardianQuery> guardianQueries = new ArrayList<>();
+        if (!queries.isEmpty()) {
+            for (String query : queries) {
+                guardianQueries.add(newQueryBuilder().keyword(query).sections(sections).build());
+            }
+        } else if (!sections.isEmpty()) {
+            for (String section : sections) {
+                guardianQueries.add(newQueryBuilder().section(section).build());
+            }
+        } else {
+            guardianQueries.add(newQueryBuilder().build());
+        }
+        return guardianQueries;
+    }
+
+    private static GuardianQuery.Builder newQueryBuilder() {
+        return new GuardianQuery.Builder()
+                .apiKey(GUARDIAN_API_KEY)
+                .pageSize(PAGE_SIZE);
     }
 
     @Override
@@ -190,6 +494,8 @@ public class NewsActivity extends AppCompatActivity implements LoaderCallbacks<L
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the Options Menu we specified in XML
         getMenuInflater().inflate(R.menu.main, menu);
+        // The diagnostics are only meant for the development builds
+        menu.findItem(R.id.action_diagnostics).setVisible(BuildConfig.DEBUG);
         return true;
     }
 
@@ -202,6 +508,10 @@ public class NewsActivity extends AppCompatActivity implements LoaderCallbacks<L
             startActivity(settingsIntent);
             return true;
         }
+        if (id == R.id.action_diagnostics) {
+            startActivity(new Intent(this, DiagnosticsActivity.class));
+            return true;
+        }
         return super.onOptionsItemSelected(item);
     }
 }
@@ -1,16 +1,89 @@
 package com.example.dormitantis.newsapp;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
+import android.widget.ImageView;
 import android.widget.TextView;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
-public class NewsAdapter extends ArrayAdapter<News> {
+public class NewsAdapter extends RecyclerView.Adapter<NewsAdapter.ViewHolder> {
+
+    /**
+     * Receives the clicks on the news of the list.
+     */
+    public interface OnItemClickListener {
+        void onItemClick(News news, int position);
+    }
+
+    /**
+     * Background gradients of the section textview
+     */
+    private static final int[] SECTION_BACKGROUNDS = {
+            R.drawable.section_background,
+            R.drawable.section_background_random,
+            R.drawable.section_background_random_two,
+            R.drawable.section_background_random_three,
+            R.drawable.section_background_random_four
+    };
+
+    /**
+     * Computes the diffs and precomputes the headlines off the main thread, one task at a time
+     */
+    private static final Executor BACKGROUND_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /**
+     * Spills and reads back the news of the window, apart from the diffs so scrolling
+     * does not wait for them
+     */
+    private static final Executor WINDOW_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final LayoutInflater inflater;
+
+    /**
+     * The list of news backing the adapter, only the rows around the visible ones stay on the heap
+     */
+    private final WindowedNewsList newsList;
+
+    private final HeadlinePrecomputer headlinePrecomputer;
+
+    private final ThumbnailLoader thumbnailLoader;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private OnItemClickListener onItemClickListener;
+
+    /**
+     * Incremented on every change of the data set, so a diff computed
+     * against an outdated list is never applied
+     */
+    private int generation;
+
+    /**
+     * Position the window of news on the heap follows
+     */
+    private int center;
+
+    /**
+     * Whether a move of the window is running, the next one is only planned once it is applied
+     */
+    private boolean windowMoving;
+
+    /**
+     * The webUrl hashes of the rows bound while their news was spilled, rebound once it is read back
+     */
+    private final Set<Long> placeholders = new HashSet<>();
 
     /**
      * Constructs a new {@link NewsAdapter}.
@@ -18,82 +91,401 @@ public class NewsAdapter extends ArrayAdapter<News> {
      * @param context  of the app
      * @param newsList is the list of news, representing the data source of the adapter
      */
-    public NewsAdapter(Context context, List<News> newsList) {
-        super(context, 0, newsList);
+    public NewsAdapter(Context context, WindowedNewsList newsList) {
+        this.inflater = LayoutInflater.from(context);
+        this.newsList = newsList;
+        this.headlinePrecomputer = new HeadlinePrecomputer(context);
+        this.thumbnailLoader = ThumbnailLoader.getInstance(context);
+        // Rows are identified by their webUrl, so the RecyclerView can animate and keep them
+        setHasStableIds(true);
+    }
+
+    /**
+     * Sets the listener notified when a news is clicked.
+     */
+    public void setOnItemClickListener(OnItemClickListener onItemClickListener) {
+        this.onItemClickListener = onItemClickListener;
+    }
+
+    /**
+     * Returns the news at the given position if it is on the heap, without reading it back.
+     *
+     * @return the news, or null while it is spilled
+     */
+    public News getItem(int position) {
+        return newsList.peek(position);
+    }
+
+    @Override
+    public int getItemCount() {
+        return newsList.size();
+    }
+
+    /**
+     * Returns a 64-bit FNV-1a hash of the webUrl of the news, which identifies its row.
+     */
+    @Override
+    public long getItemId(int position) {
+        return newsList.getWebHash(position);
+    }
+
+    /**
+     * Releases memory on the given {@link ComponentCallbacks2} trim level: the window of news
+     * kept on the heap shrinks, down to its minimum once memory runs low, and the headlines
+     * are forgotten.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            newsList.setWindowSize(WindowedNewsList.MIN_WINDOW_SIZE);
+            headlinePrecomputer.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            newsList.setWindowSize(newsList.getWindowSize() / 2);
+        }
+        moveWindow();
+    }
+
+    /**
+     * Lets the window of news kept on the heap grow back to its default size.
+     */
+    public void restoreMemory() {
+        newsList.setWindowSize(WindowedNewsList.DEFAULT_WINDOW_SIZE);
+        moveWindow();
+    }
+
+    /**
+     * Call from the list scroll listener: the window of news kept on the heap follows the
+     * given position, so the rows scrolled to are already there when they are bound.
+     *
+     * @param position the position in the middle of the visible rows
+     */
+    public void onScrolled(int position) {
+        center = position;
+        moveWindow();
+    }
+
+    /**
+     * Moves the window around the center, spilling and reading back its news on a background
+     * thread, one move at a time.
+     */
+    private void moveWindow() {
+        if (windowMoving) {
+            // Planned again around the latest center once the running one is applied
+            return;
+        }
+        final WindowedNewsList.WindowMove move = newsList.moveWindow(center);
+        if (move == null) {
+            return;
+        }
+        windowMoving = true;
+        WINDOW_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                move.run();
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        windowMoving = false;
+                        newsList.apply(move);
+                        rebindPlaceholders();
+                        moveWindow();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Rebinds the rows bound as placeholders whose news are back on the heap.
+     */
+    private void rebindPlaceholders() {
+        if (placeholders.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < newsList.size(); i++) {
+            long webHash = newsList.getWebHash(i);
+            if (newsList.peek(i) != null && placeholders.remove(webHash)) {
+                notifyItemChanged(i);
+            }
+        }
+    }
+
+    /**
+     * Removes every news from the adapter.
+     */
+    public void clear() {
+        int count = newsList.size();
+        if (count > 0) {
+            generation++;
+            newsList.clear();
+            placeholders.clear();
+            notifyItemRangeRemoved(0, count);
+        }
+    }
+
+    /**
+     * Appends the given news to the adapter, leaving out the ones it already has.
+     * Their headlines are precomputed on a background thread before they are added.
+     */
+    public void addAll(List<News> newNewsList) {
+        addAll(newNewsList, null);
+    }
+
+    /**
+     * Appends the given news like {@link #addAll(List)}, then runs the given callback
+     * on the main thread once they are in the adapter.
+     */
+    public void addAll(List<News> newNewsList, final Runnable onAdded) {
+        final List<News> appended = new ArrayList<>(newNewsList);
+        BACKGROUND_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                headlinePrecomputer.precompute(appended);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // The rows are told apart by the hash of their webUrl anyway,
+                        // and the spilled news do not have to be read back to get it
+                        Set<Long> webHashes = new HashSet<>(newsList.size() * 2);
+                        for (int i = 0; i < newsList.size(); i++) {
+                            webHashes.add(newsList.getWebHash(i));
+                        }
+                        int start = newsList.size();
+                        for (News news : appended) {
+                            if (webHashes.add(WindowedNewsList.hashOf(news.getWeb()))) {
+                                newsList.add(news);
+                            }
+                        }
+                        if (newsList.size() > start) {
+                            generation++;
+                            notifyItemRangeInserted(start, newsList.size() - start);
+                            // Spill the news added outside of the window once they pile up
+                            moveWindow();
+                        }
+                        if (onAdded != null) {
+                            onAdded.run();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Replaces the first {@code count} news of the adapter with the given ones.
+     * <p>
+     * The insertions, removals, moves and changes between the replaced news and the new ones
+     * are computed by {@link NewsDiff} on a background thread, where the new headlines are
+     * precomputed too. Then only those updates are applied and notified, so the unchanged
+     * rows are neither rebound nor animated. The news further down are left alone, apart from
+     * the ones the new page brings up again, so they do not have to be read back from disk.
+     * The replaced news that were spilled are read back on the background thread too, and if
+     * one cannot be, they are all removed and the new ones inserted instead.
+     * If the data set changes while the diff is being computed, it is computed again against
+     * the new data set.
+     *
+     * @param count       the number of news to replace
+     * @param newNewsList the news to put in their place
+     */
+    public void submit(final int count, final List<News> newNewsList) {
+        final int submittedGeneration = generation;
+        final int replaced = Math.min(count, newsList.size());
+        final WindowedNewsList.Snapshot oldSnapshot = newsList.snapshot(0, replaced);
+        final List<News> targetList = new ArrayList<>(newNewsList.size());
+        final Set<Long> webHashes = new HashSet<>();
+        for (News news : newNewsList) {
+            if (webHashes.add(WindowedNewsList.hashOf(news.getWeb()))) {
+                targetList.add(news);
+            }
+        }
+
+        BACKGROUND_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                headlinePrecomputer.precompute(newNewsList);
+                oldSnapshot.run();
+                List<News> oldList = oldSnapshot.getNews();
+                final NewsDiff diff = oldList == null ? null : NewsDiff.calculate(oldList, targetList);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (submittedGeneration != generation) {
+                            // The data set changed in the meantime
+                            submit(count, newNewsList);
+                            return;
+                        }
+                        // A news of the new page may already be further down, keep a single row for it
+                        if (removeAfter(replaced, webHashes)) {
+                            generation++;
+                        }
+                        if (diff == null) {
+                            generation++;
+                            newsList.subList(0, replaced).clear();
+                            notifyItemRangeRemoved(0, replaced);
+                            newsList.addAll(0, targetList);
+                            notifyItemRangeInserted(0, targetList.size());
+                            // Spill the news added outside of the window once they pile up
+                            moveWindow();
+                            return;
+                        }
+                        // The moves and changes of the diff do not have to read anything back
+                        newsList.apply(oldSnapshot);
+                        if (!diff.isEmpty()) {
+                            generation++;
+                            diff.applyTo(newsList);
+                            diff.dispatchUpdatesTo(new NewsDiff.Callback() {
+                                @Override
+                                public void onRemoved(int position, int itemCount) {
+                                    notifyItemRangeRemoved(position, itemCount);
+                                }
+
+                                @Override
+                                public void onMoved(int fromPosition, int toPosition) {
+                                    notifyItemMoved(fromPosition, toPosition);
+                                }
+
+                                @Override
+                                public void onInserted(int position, int itemCount) {
+                                    notifyItemRangeInserted(position, itemCount);
+                                }
+
+                                @Override
+                                public void onChanged(int position, int itemCount) {
+                                    notifyItemRangeChanged(position, itemCount);
+                                }
+                            });
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Removes the news from the given position on whose webUrl hash is one of the given ones,
+     * and notifies their removal.
+     *
+     * @return whether any news was removed
+     */
+    private boolean removeAfter(int from, Set<Long> webHashes) {
+        boolean removed = false;
+        int end = -1;
+        // From the end, so the positions stay valid
+        for (int i = newsList.size() - 1; i >= from - 1; i--) {
+            boolean duplicate = i >= from && webHashes.contains(newsList.getWebHash(i));
+            if (duplicate && end == -1) {
+                end = i + 1;
+            } else if (!duplicate && end != -1) {
+                newsList.subList(i + 1, end).clear();
+                notifyItemRangeRemoved(i + 1, end - i - 1);
+                end = -1;
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        final ViewHolder holder = new ViewHolder(inflater.inflate(R.layout.news_item_list, parent, false));
+        holder.itemView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                int position = holder.getAdapterPosition();
+                if (onItemClickListener == null || position == RecyclerView.NO_POSITION) {
+                    return;
+                }
+                // Read back if it was spilled, a single read for a tap
+                News news = newsList.get(position);
+                if (news != null) {
+                    onItemClickListener.onItemClick(news, position);
+                }
+            }
+        });
+        return holder;
     }
 
     /**
-     * Returns a list item view that displays information about the news at the given position
-     * in the list of news.
+     * Displays information about the news at the given position in the list of news.
      */
     @Override
-    public View getView(int position, View convertView, ViewGroup parent) {
-        View listItemView = convertView;
-        if (listItemView == null) {
-            listItemView = LayoutInflater.from(getContext()).inflate(
-                    R.layout.news_item_list, parent, false);
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        long bindStart = PipelineTracer.begin(PipelineTracer.Stage.BIND);
+        // Usually on the heap already, the window follows the scroll
+        News news = newsList.peek(position);
+        if (news == null) {
+            // Scrolled past the window, the row is bound again once its news is read back
+            placeholders.add(newsList.getWebHash(position));
+            bindPlaceholder(holder);
+            PipelineTracer.end(PipelineTracer.Stage.BIND, bindStart);
+            return;
         }
-        // Find the news at the given position in the list of news
-        News news = getItem(position);
 
-        // Find the TextView with view ID section_textview
-        TextView sectionTextView = (TextView) listItemView.findViewById(R.id.section_textview);
-        // Display the section of the current news in that TextView
-        sectionTextView.setText(news.getSection());
-        setSectionBackgroundColor(sectionTextView);
+        // Display the section of the current news in the section TextView
+        holder.sectionTextView.setText(news.getSection());
+        holder.sectionTextView.setBackgroundResource(getSectionBackgroundResourceId(news.getSection()));
+
+        // Display the web of the current news in the web TextView
+        holder.webTextView.setText(news.getWeb());
 
-        // Find the TextView with view ID web_textview
-        TextView webTextView = (TextView) listItemView.findViewById(R.id.web_textview);
-        // Display the web of the current news in that TextView
-        webTextView.setText(news.getWeb());
+        // Display the all caps title of the current news in the title TextView
+        holder.titleTextView.setText(headlinePrecomputer.getHeadline(news.getTitle()));
 
-        // Find the TextView with view ID title_textview
-        TextView titleTextView = (TextView) listItemView.findViewById(R.id.title_textview);
-        // Display the title of the current news in that TextView
-        titleTextView.setText(news.getTitle());
+        // Display the authors of the current news in the authors TextView
+        holder.authorsTextView.setText(news.getAuthorsText());
 
-        // Find the TextView with view ID author_textview
-        TextView authorsTextView = (TextView) listItemView.findViewById(R.id.author_textview);
-        // Display the authors of the current news in that TextView
-        authorsTextView.setText(news.getAuthors());
+        // Display the thumbnail of the current news, from memory or once it is loaded
+        thumbnailLoader.load(news.getThumbnail(), holder.thumbnailImageView);
 
-        return listItemView;
+        PipelineTracer.end(PipelineTracer.Stage.BIND, bindStart);
     }
 
     /**
-     * Sets a random background gradient for the news section textview.
+     * Empties the given row while its news is being read back.
+     */
+    private void bindPlaceholder(ViewHolder holder) {
+        holder.sectionTextView.setText(null);
+        holder.webTextView.setText(null);
+        holder.titleTextView.setText(null);
+        holder.authorsTextView.setText(null);
+        thumbnailLoader.cancel(holder.thumbnailImageView);
+    }
+
+    /**
+     * Stops loading the thumbnail of a row that went off screen.
+     */
+    @Override
+    public void onViewRecycled(ViewHolder holder) {
+        thumbnailLoader.cancel(holder.thumbnailImageView);
+    }
+
+    /**
+     * Returns the background gradient of the given section. The same section always gets the
+     * same gradient, so a row keeps its color when it is bound again, and the background
+     * resource is not even reloaded when a recycled row shows a section of the same color.
      *
-     * @param textView the background will be chosen for
-     */
-    private void setSectionBackgroundColor(TextView textView) {
-        int sectionBackgroundColorResourceId;
-        Random random = new Random();
-        int rand = random.nextInt(5);
-        switch (rand) {
-            case 0:
-                sectionBackgroundColorResourceId = R.drawable.section_background;
-                textView.setBackgroundResource(sectionBackgroundColorResourceId);
-                break;
-            case 1:
-                sectionBackgroundColorResourceId = R.drawable.section_background_random;
-                textView.setBackgroundResource(sectionBackgroundColorResourceId);
-                break;
-            case 2:
-                sectionBackgroundColorResourceId = R.drawable.section_background_random_two;
-                textView.setBackgroundResource(sectionBackgroundColorResourceId);
-                break;
-            case 3:
-                sectionBackgroundColorResourceId = R.drawable.section_background_random_three;
-                textView.setBackgroundResource(sectionBackgroundColorResourceId);
-                break;
-            case 4:
-                sectionBackgroundColorResourceId = R.drawable.section_background_random_four;
-                textView.setBackgroundResource(sectionBackgroundColorResourceId);
-                break;
-            default:
-                sectionBackgroundColorResourceId = R.drawable.section_background_random_two;
-                textView.setBackgroundResource(sectionBackgroundColorResourceId);
-                break;
+     * @param section the background will be chosen for
+     */
+    private static int getSectionBackgroundResourceId(String section) {
+        return SECTION_BACKGROUNDS[(section.hashCode() & Integer.MAX_VALUE) % SECTION_BACKGROUNDS.length];
+    }
+
+    /**
+     * Holds the views of a list item, so they are not looked up on every bind.
+     */
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView sectionTextView;
+        final TextView webTextView;
+        final TextView titleTextView;
+        final TextView authorsTextView;
+        final ImageView thumbnailImageView;
+
+        ViewHolder(View listItemView) {
+            super(listItemView);
+            sectionTextView = (TextView) listItemView.findViewById(R.id.section_textview);
+            webTextView = (TextView) listItemView.findViewById(R.id.web_textview);
+            titleTextView = (TextView) listItemView.findViewById(R.id.title_textview);
+            authorsTextView = (TextView) listItemView.findViewById(R.id.author_textview);
+            thumbnailImageView = (ImageView) listItemView.findViewById(R.id.thumbnail_imageview);
         }
     }
 }
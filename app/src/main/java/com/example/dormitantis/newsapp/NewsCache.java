@@ -0,0 +1,424 @@
+package com.example.dormitantis.newsapp;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Two-tier cache for theguardian responses.
+ * <p>
+ * The first tier is a small in-memory LRU of already parsed {@link News} lists, the second one
+ * keeps the raw response bodies on disk together with their ETag / Last-Modified validators,
+ * so a stale entry can be revalidated with a conditional GET instead of being downloaded again.
+ * Disk entries are evicted least recently used first once the directory grows over its limit.
+ */
+public final class NewsCache {
+
+    /**
+     * Tag for log messages
+     */
+    private static final String LOG_TAG = NewsCache.class.getSimpleName();
+
+    /**
+     * How long a cached response is served without asking the server.
+     */
+    private static final long FRESH_MILLIS = 5 * 60 * 1000;
+
+    /**
+     * Maximum number of parsed responses kept in memory.
+     */
+    private static final int MAX_MEMORY_ENTRIES = 8;
+
+    /**
+     * Maximum size of the raw bodies kept on disk.
+     */
+    private static final long MAX_DISK_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Age after which a temporary body is one a crashed write left behind.
+     */
+    private static final long STALE_TEMP_MILLIS = 5 * 60 * 1000;
+
+    private static final String BODY_SUFFIX = ".json";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final String META_URL = "url";
+    private static final String META_ETAG = "etag";
+    private static final String META_LAST_MODIFIED = "lastModified";
+    private static final String META_FETCHED_AT = "fetchedAt";
+
+    private static NewsCache instance;
+
+    private final File directory;
+    private final LruCache<String, MemoryEntry> memoryCache = new LruCache<>(MAX_MEMORY_ENTRIES);
+
+    private NewsCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the cache shared by the whole app.
+     */
+    public static synchronized NewsCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new NewsCache(new File(context.getApplicationContext().getCacheDir(), "news"));
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the cache key of the given request URL. Query parameters are sorted so the same
+     * request always maps to the same entry whatever order the parameters were appended in.
+     */
+    public static String keyFor(String requestUrl) {
+        int queryStart = requestUrl.indexOf('?');
+        if (queryStart == -1) {
+            return requestUrl;
+        }
+        String[] parameters = requestUrl.substring(queryStart + 1).split("&");
+        Arrays.sort(parameters);
+
+        StringBuilder key = new StringBuilder(requestUrl.length());
+        key.append(requestUrl, 0, queryStart).append('?');
+        for (int i = 0; i < parameters.length; i++) {
+            if (i > 0) {
+                key.append('&');
+            }
+            key.append(parameters[i]);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the parsed response for the given key if it is in memory and still fresh,
+     * or null otherwise.
+     */
+    public List<News> getFresh(String key) {
+        MemoryEntry entry = memoryCache.get(key);
+        if (entry == null || !isFresh(entry.fetchedAt)) {
+            return null;
+        }
+        return new ArrayList<>(entry.newsList);
+    }
+
+    /**
+     * Keeps the parsed response in memory.
+     */
+    public void put(String key, List<News> newsList, long fetchedAt) {
+        memoryCache.put(key, new MemoryEntry(Collections.unmodifiableList(new ArrayList<>(newsList)), fetchedAt));
+    }
+
+    /**
+     * Drops the parsed responses kept in memory, the disk tier still has them.
+     */
+    public void evictMemory() {
+        memoryCache.evictAll();
+    }
+
+    /**
+     * Returns the raw response stored on disk for the given key, fresh or not,
+     * or null if there is none.
+     */
+    public Snapshot getSnapshot(String key) {
+        String fileName = fileNameFor(key);
+        File body = new File(directory, fileName + BODY_SUFFIX);
+        File meta = new File(directory, fileName + META_SUFFIX);
+        if (!body.exists() || !meta.exists()) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(meta);
+            properties.load(in);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading the cache entry.", e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+        if (!key.equals(properties.getProperty(META_URL))) {
+            return null;
+        }
+
+        long fetchedAt;
+        try {
+            fetchedAt = Long.parseLong(properties.getProperty(META_FETCHED_AT, "0"));
+        } catch (NumberFormatException e) {
+            fetchedAt = 0;
+        }
+        return new Snapshot(key, body, meta, properties.getProperty(META_ETAG),
+                properties.getProperty(META_LAST_MODIFIED), fetchedAt);
+    }
+
+    /**
+     * Opens the body of the snapshot for reading and marks it as recently used.
+     */
+    public InputStream openBody(Snapshot snapshot) throws IOException {
+        long now = System.currentTimeMillis();
+        //noinspection ResultOfMethodCallIgnored
+        snapshot.body.setLastModified(now);
+        return new BufferedInputStream(new FileInputStream(snapshot.body));
+    }
+
+    /**
+     * Records that the server confirmed the snapshot is still valid (304 Not Modified).
+     */
+    public Snapshot revalidated(Snapshot snapshot) {
+        long now = System.currentTimeMillis();
+        try {
+            writeMeta(snapshot.meta, snapshot.key, snapshot.etag, snapshot.lastModified, now);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem updating the cache entry.", e);
+        }
+        return new Snapshot(snapshot.key, snapshot.body, snapshot.meta, snapshot.etag, snapshot.lastModified, now);
+    }
+
+    /**
+     * Starts writing a new response body for the given key. Nothing is visible to readers
+     * until {@link Editor#commit(String, String)} is called.
+     */
+    public Editor edit(String key) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create cache directory " + directory);
+        }
+        return new Editor(key, File.createTempFile("news", TEMP_SUFFIX, directory));
+    }
+
+    /**
+     * Returns whether a response fetched at the given time can still be served as is.
+     */
+    public boolean isFresh(long fetchedAt) {
+        long age = System.currentTimeMillis() - fetchedAt;
+        return age >= 0 && age < FRESH_MILLIS;
+    }
+
+    /**
+     * Deletes the least recently used bodies until the disk tier fits in its limit, and the
+     * temporary bodies left behind by a crash, the ones being written are left alone.
+     */
+    private synchronized void trimToSize() {
+        File[] bodies = directory.listFiles();
+        if (bodies == null) {
+            return;
+        }
+        long staleBefore = System.currentTimeMillis() - STALE_TEMP_MILLIS;
+        List<File> entries = new ArrayList<>();
+        long size = 0;
+        for (File file : bodies) {
+            if (file.getName().endsWith(BODY_SUFFIX)) {
+                entries.add(file);
+                size += file.length();
+            } else if (file.getName().endsWith(TEMP_SUFFIX) && file.lastModified() < staleBefore) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        if (size <= MAX_DISK_BYTES) {
+            return;
+        }
+
+        Collections.sort(entries, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long first = a.lastModified();
+                long second = b.lastModified();
+                return first < second ? -1 : (first == second ? 0 : 1);
+            }
+        });
+        for (File body : entries) {
+            if (size <= MAX_DISK_BYTES) {
+                break;
+            }
+            size -= body.length();
+            String name = body.getName();
+            File meta = new File(directory, name.substring(0, name.length() - BODY_SUFFIX.length()) + META_SUFFIX);
+            //noinspection ResultOfMethodCallIgnored
+            meta.delete();
+            //noinspection ResultOfMethodCallIgnored
+            body.delete();
+        }
+    }
+
+    private void writeMeta(File meta, String key, String etag, String lastModified, long fetchedAt) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(META_URL, key);
+        if (etag != null) {
+            properties.setProperty(META_ETAG, etag);
+        }
+        if (lastModified != null) {
+            properties.setProperty(META_LAST_MODIFIED, lastModified);
+        }
+        properties.setProperty(META_FETCHED_AT, String.valueOf(fetchedAt));
+
+        OutputStream out = new FileOutputStream(meta);
+        try {
+            properties.store(out, null);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Hash the key so any URL maps to a valid file name.
+     */
+    static String fileNameFor(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest(key.getBytes(Charset.forName("UTF-8")));
+            return String.format("%032x", new BigInteger(1, hash));
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // Nothing useful can be done about it
+            }
+        }
+    }
+
+    private static class MemoryEntry {
+        final List<News> newsList;
+        final long fetchedAt;
+
+        MemoryEntry(List<News> newsList, long fetchedAt) {
+            this.newsList = newsList;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    /**
+     * A response body stored on disk together with its validators.
+     */
+    public static final class Snapshot {
+        private final String key;
+        private final File body;
+        private final File meta;
+        private final String etag;
+        private final String lastModified;
+        private final long fetchedAt;
+
+        private Snapshot(String key, File body, File meta, String etag, String lastModified, long fetchedAt) {
+            this.key = key;
+            this.body = body;
+            this.meta = meta;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.fetchedAt = fetchedAt;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public long getFetchedAt() {
+            return fetchedAt;
+        }
+    }
+
+    /**
+     * Writes a response body to disk while it is being parsed.
+     */
+    public final class Editor {
+        private final String key;
+        private final File temp;
+        private OutputStream out;
+
+        private Editor(String key, File temp) throws IOException {
+            this.key = key;
+            this.temp = temp;
+            this.out = new FileOutputStream(temp);
+        }
+
+        /**
+         * Returns a stream that copies everything read from the given stream into the cache.
+         */
+        public InputStream tee(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1 && out != null) {
+                        out.write(b);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int count) throws IOException {
+                    int n = super.read(buffer, offset, count);
+                    if (n > 0 && out != null) {
+                        out.write(buffer, offset, n);
+                    }
+                    return n;
+                }
+            };
+        }
+
+        /**
+         * Publishes the body written so far with the given validators.
+         */
+        public void commit(String etag, String lastModified) throws IOException {
+            out.close();
+            out = null;
+
+            String fileName = fileNameFor(key);
+            File body = new File(directory, fileName + BODY_SUFFIX);
+            synchronized (NewsCache.this) {
+                if (!temp.renameTo(body)) {
+                    abort();
+                    throw new IOException("Cannot commit cache entry " + body);
+                }
+                writeMeta(new File(directory, fileName + META_SUFFIX), key, etag, lastModified,
+                        System.currentTimeMillis());
+            }
+            trimToSize();
+        }
+
+        /**
+         * Drops the body written so far.
+         */
+        public void abort() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                    // The file is deleted anyway
+                }
+                out = null;
+            }
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.dormitantis.newsapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the smallest set of removals, moves, insertions and changes that turns an old list
+ * of {@link News} into a new one. Two news are the same item when they have the same webUrl,
+ * and the same item is changed when its content is not {@link News#equals(Object) equal}.
+ * <p>
+ * Items that keep their relative order (the longest increasing subsequence of their new
+ * positions) stay where they are, every other kept item is moved once.
+ * The computation does not touch the lists, so it can safely run off the main thread.
+ */
+public final class NewsDiff {
+
+    /**
+     * Receives the updates of a diff, in the order they have to be applied.
+     */
+    public interface Callback {
+        void onRemoved(int position, int count);
+
+        void onMoved(int fromPosition, int toPosition);
+
+        void onInserted(int position, int count);
+
+        void onChanged(int position, int count);
+    }
+
+    private static final int REMOVE = 0;
+    private static final int MOVE = 1;
+    private static final int INSERT = 2;
+    private static final int CHANGE = 3;
+
+    private final List<News> newList;
+
+    /**
+     * Updates as {type, position, count or toPosition} triples.
+     */
+    private final int[] operations;
+    private final int operationCount;
+
+    private NewsDiff(List<News> newList, int[] operations, int operationCount) {
+        this.newList = newList;
+        this.operations = operations;
+        this.operationCount = operationCount;
+    }
+
+    /**
+     * Computes the updates that turn the old list into the new one.
+     */
+    public static NewsDiff calculate(List<News> oldList, List<News> newList) {
+        Operations ops = new Operations();
+        String[] oldKeys = keys(oldList);
+        String[] newKeys = keys(newList);
+
+        Map<String, Integer> newPositions = new HashMap<>(newKeys.length * 2);
+        for (int i = 0; i < newKeys.length; i++) {
+            newPositions.put(newKeys[i], i);
+        }
+
+        // Remove the items that are gone, from the end so the positions stay valid
+        int removed = 0;
+        for (int i = oldKeys.length - 1; i >= 0; i--) {
+            if (!newPositions.containsKey(oldKeys[i])) {
+                removed++;
+            } else if (removed > 0) {
+                ops.add(REMOVE, i + 1, removed);
+                removed = 0;
+            }
+        }
+        if (removed > 0) {
+            ops.add(REMOVE, 0, removed);
+        }
+
+        // New positions of the kept items, in their current order
+        int[] keptNewPositions = new int[oldKeys.length];
+        int keptCount = 0;
+        for (String key : oldKeys) {
+            Integer newPosition = newPositions.get(key);
+            if (newPosition != null) {
+                keptNewPositions[keptCount++] = newPosition;
+            }
+        }
+        keptNewPositions = Arrays.copyOf(keptNewPositions, keptCount);
+        boolean[] stable = longestIncreasingSubsequence(keptNewPositions);
+
+        // Move every kept item that is out of order right after the kept item preceding it
+        // in the new list, taken in their new order
+        List<Integer> current = new ArrayList<>(keptCount);
+        for (int newPosition : keptNewPositions) {
+            current.add(newPosition);
+        }
+        int[] sortedKept = keptNewPositions.clone();
+        Arrays.sort(sortedKept);
+        boolean[] isStable = new boolean[newKeys.length];
+        for (int i = 0; i < keptCount; i++) {
+            if (stable[i]) {
+                isStable[keptNewPositions[i]] = true;
+            }
+        }
+        for (int i = 0; i < keptCount; i++) {
+            int newPosition = sortedKept[i];
+            if (isStable[newPosition]) {
+                continue;
+            }
+            int from = current.indexOf(newPosition);
+            current.remove(from);
+            int to = i == 0 ? 0 : current.indexOf(sortedKept[i - 1]) + 1;
+            current.add(to, newPosition);
+            if (from != to) {
+                ops.add(MOVE, from, to);
+            }
+        }
+
+        // The kept items are now in their new order, insert the new ones in between
+        int insertStart = -1;
+        for (int i = 0; i <= newKeys.length; i++) {
+            boolean inserted = i < newKeys.length && Arrays.binarySearch(sortedKept, i) < 0;
+            if (inserted && insertStart == -1) {
+                insertStart = i;
+            } else if (!inserted && insertStart != -1) {
+                ops.add(INSERT, insertStart, i - insertStart);
+                insertStart = -1;
+            }
+        }
+
+        // Finally report the kept items whose content changed
+        Map<String, News> oldNews = new HashMap<>(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            oldNews.put(oldKeys[i], oldList.get(i));
+        }
+        int changeStart = -1;
+        for (int i = 0; i <= newKeys.length; i++) {
+            boolean changed = false;
+            if (i < newKeys.length) {
+                News old = oldNews.get(newKeys[i]);
+                changed = old != null && !old.equals(newList.get(i));
+            }
+            if (changed && changeStart == -1) {
+                changeStart = i;
+            } else if (!changed && changeStart != -1) {
+                ops.add(CHANGE, changeStart, i - changeStart);
+                changeStart = -1;
+            }
+        }
+
+        return new NewsDiff(newList, ops.values, ops.size);
+    }
+
+    /**
+     * Returns whether nothing changed between the two lists.
+     */
+    public boolean isEmpty() {
+        return operationCount == 0;
+    }
+
+    /**
+     * Applies the updates to the given list, which must hold the same news as the old list.
+     */
+    public void applyTo(List<News> list) {
+        for (int i = 0; i < operationCount; i += 3) {
+            int position = operations[i + 1];
+            int value = operations[i + 2];
+            switch (operations[i]) {
+                case REMOVE:
+                    list.subList(position, position + value).clear();
+                    break;
+                case MOVE:
+                    list.add(value, list.remove(position));
+                    break;
+                case INSERT:
+                    list.addAll(position, newList.subList(position, position + value));
+                    break;
+                case CHANGE:
+                    for (int j = position; j < position + value; j++) {
+                        list.set(j, newList.get(j));
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Reports the updates to the given callback, in the order they have to be applied.
+     */
+    public void dispatchUpdatesTo(Callback callback) {
+        for (int i = 0; i < operationCount; i += 3) {
+            int position = operations[i + 1];
+            int value = operations[i + 2];
+            switch (operations[i]) {
+                case REMOVE:
+                    callback.onRemoved(position, value);
+                    break;
+                case MOVE:
+                    callback.onMoved(position, value);
+                    break;
+                case INSERT:
+                    callback.onInserted(position, value);
+                    break;
+                case CHANGE:
+                    callback.onChanged(position, value);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Returns the identity of every news. A webUrl appearing several times in the same list
+     * gets a different identity for each occurrence.
+     */
+    private static String[] keys(List<News> newsList) {
+        String[] keys = new String[newsList.size()];
+        Map<String, Integer> occurrences = new HashMap<>(keys.length * 2);
+        for (int i = 0; i < keys.length; i++) {
+            String web = newsList.get(i).getWeb();
+            Integer seen = occurrences.put(web, 1);
+            if (seen == null) {
+                keys[i] = web;
+            } else {
+                occurrences.put(web, seen + 1);
+                keys[i] = web + '#' + seen;
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Marks the items of the longest strictly increasing subsequence of the given values.
+     */
+    private static boolean[] longestIncreasingSubsequence(int[] values) {
+        int n = values.length;
+        int[] tails = new int[n];
+        int[] previous = new int[n];
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (values[tails[middle]] < values[i]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+
+        boolean[] inSequence = new boolean[n];
+        for (int i = length > 0 ? tails[length - 1] : -1; i != -1; i = previous[i]) {
+            inSequence[i] = true;
+        }
+        return inSequence;
+    }
+
+    private static class Operations {
+        int[] values = new int[24];
+        int size;
+
+        void add(int type, int position, int value) {
+            if (size + 3 > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size++] = type;
+            values[size++] = position;
+            values[size++] = value;
+        }
+    }
+}
@@ -2,43 +2,267 @@ package com.example.dormitantis.newsapp;
 
 import android.content.AsyncTaskLoader;
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 
 import java.util.List;
 
-public class NewsLoader extends AsyncTaskLoader {
+/**
+ * Loads the news of a query in a stale-while-revalidate fashion: the first load delivers
+ * the news stored on the device for the query, if any, and immediately starts a second load
+ * that refreshes them from theguardian.
+ * <p>
+ * A feed of several queries is fetched by the {@link FanOutQueryEngine} of the repository,
+ * and the merged results are delivered every time one of them completes, not only once
+ * the slowest one did.
+ * <p>
+ * In progressive mode, when an {@link OnNewsBatchListener} is set, the news of a single query
+ * are also handed over in batches while the response is downloaded, see {@link NewsBatcher}.
+ */
+public class NewsLoader extends AsyncTaskLoader<List<News>> {
+
+    /**
+     * Receives the news of a response in batches as they are parsed, on the main thread.
+     * The whole list is still delivered to {@code onLoadFinished} at the end.
+     */
+    public interface OnNewsBatchListener {
+        /**
+         * @param onApplied to run once the batch is displayed, the next batch only comes after it
+         */
+        void onNewsBatch(NewsLoader loader, List<News> batch, Runnable onApplied);
+    }
 
     /**
      * Tag for log messages
      */
     private static final String LOG_TAG = NewsLoader.class.getName();
 
-    private String url;
+    /**
+     * How old the news may get before starting the loader fetches them again
+     */
+    private static final long REFRESH_INTERVAL_MILLIS = 5 * 60 * 1000;
+
+    /**
+     * Size of the first batch in progressive mode, about a screenful of rows,
+     * and of the largest following ones
+     */
+    private static final int FIRST_BATCH_SIZE = 10;
+    private static final int MAX_BATCH_SIZE = 40;
+
+    /**
+     * The first pages of the queries of the feed
+     */
+    private List<GuardianQuery> guardianQueries;
+
+    private String requestKey;
+
+    /**
+     * Delivers the results of the queries completed while the others still run
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private volatile OnNewsBatchListener newsBatchListener;
+
+    /**
+     * Source of the news shared by every loader
+     */
+    private NewsRepository repository;
+
+    /**
+     * The last news delivered
+     */
+    private List<News> newsList;
+
+    /**
+     * Whether the stored news were already looked up
+     */
+    private boolean storeChecked;
+
+    /**
+     * Whether the news being delivered came from the store and still need a refresh
+     */
+    private boolean refreshPending;
+
+    /**
+     * When the news were last fetched, 0 while only the stored ones were loaded
+     */
+    private volatile long fetchedAt;
+
+    /**
+     * Cancels the load running in background, if any
+     */
+    private volatile CancellationToken cancellationToken;
 
     /**
      * Constructs a new {@link NewsLoader}.
      *
-     * @param context of the activity
-     * @param url     to load data from
+     * @param context         of the activity
+     * @param guardianQueries the first pages of the queries of the feed
      */
-    public NewsLoader(Context context, String url) {
+    public NewsLoader(Context context, List<GuardianQuery> guardianQueries) {
         super(context);
-        this.url = url;
+        this.guardianQueries = guardianQueries;
+        this.requestKey = requestKeyOf(guardianQueries);
+        this.repository = NewsRepository.getInstance(context);
+    }
+
+    /**
+     * Returns a string identifying the feed of the given queries: the same queries give
+     * the same string, whatever order their parameters were set in.
+     */
+    public static String requestKeyOf(List<GuardianQuery> guardianQueries) {
+        StringBuilder key = new StringBuilder();
+        for (GuardianQuery guardianQuery : guardianQueries) {
+            if (key.length() > 0) {
+                key.append('\n');
+            }
+            key.append(guardianQuery.toUrl());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Turns the progressive mode on with the given listener, or off with null.
+     */
+    public void setOnNewsBatchListener(OnNewsBatchListener listener) {
+        newsBatchListener = listener;
+    }
+
+    /**
+     * Returns the queries this loader loads the first page of.
+     */
+    public List<GuardianQuery> getGuardianQueries() {
+        return guardianQueries;
+    }
+
+    /**
+     * Returns the string identifying the feed this loader loads, see {@link #requestKeyOf(List)}.
+     */
+    public String getRequestKey() {
+        return requestKey;
     }
 
     @Override
     protected void onStartLoading() {
-        forceLoad();
+        // Show what we already have
+        if (newsList != null) {
+            deliverResult(newsList);
+        }
+        // and only go to the network again when there is a reason to
+        boolean outdated = System.currentTimeMillis() - fetchedAt > REFRESH_INTERVAL_MILLIS;
+        if (takeContentChanged() || newsList == null || outdated) {
+            forceLoad();
+        }
     }
 
     /**
-     * This is on a background thread.
+     * Disconnects the request in flight and aborts its parsing.
+     */
+    @Override
+    public void cancelLoadInBackground() {
+        CancellationToken token = cancellationToken;
+        if (token != null) {
+            token.cancel();
+        }
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        newsList = null;
+    }
+
+    /**
+     * This is on a background thread. The first time, the news on the device matching the
+     * query are returned if there are any, otherwise the news are fetched. When they cannot be fetched,
+     * the ones stored for the query are returned instead.
      */
     @Override
     public List<News> loadInBackground() {
-        if (url == null) {
+        if (guardianQueries.isEmpty()) {
             return null;
         }
-        return QueryUtils.fetchNewsData(url);
+        if (!storeChecked) {
+            storeChecked = true;
+            List<News> storedNews = repository.loadLocal(guardianQueries);
+            if (!storedNews.isEmpty()) {
+                refreshPending = true;
+                return storedNews;
+            }
+        }
+        final CancellationToken token = new CancellationToken();
+        cancellationToken = token;
+        NewsBatcher newsBatcher = null;
+        if (newsBatchListener != null) {
+            newsBatcher = new NewsBatcher(FIRST_BATCH_SIZE, MAX_BATCH_SIZE, new NewsBatcher.Consumer() {
+                @Override
+                public void onBatch(NewsBatcher batcher, List<News> batch) {
+                    deliverBatch(batcher, batch, token);
+                }
+            });
+        }
+        List<News> fetchedNews = repository.fetchAll(guardianQueries, token, new FanOutQueryEngine.Listener() {
+            @Override
+            public void onResults(List<News> newsList, int completed, int queryCount) {
+                if (completed < queryCount && !newsList.isEmpty()) {
+                    deliverPartialResult(newsList, token);
+                }
+            }
+        }, newsBatcher);
+        if (!token.isCancelled()) {
+            fetchedAt = System.currentTimeMillis();
+        }
+        return fetchedNews;
+    }
+
+    /**
+     * Delivers the results of the queries completed so far from the main thread,
+     * unless the load was cancelled or the loader stopped meanwhile.
+     */
+    private void deliverPartialResult(final List<News> newsList, final CancellationToken token) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!token.isCancelled() && isStarted() && !isAbandoned()) {
+                    deliverResult(newsList);
+                }
+            }
+        });
+    }
+
+    /**
+     * Hands the given batch to the listener from the main thread, unless the load was cancelled
+     * or the loader stopped meanwhile. The next batch is only handed over once this one is applied.
+     */
+    private void deliverBatch(final NewsBatcher batcher, final List<News> batch, final CancellationToken token) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                OnNewsBatchListener listener = newsBatchListener;
+                if (listener != null && !token.isCancelled() && isStarted() && !isAbandoned()) {
+                    listener.onNewsBatch(NewsLoader.this, batch, new Runnable() {
+                        @Override
+                        public void run() {
+                            batcher.batchConsumed();
+                        }
+                    });
+                } else {
+                    batcher.batchConsumed();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void deliverResult(List<News> data) {
+        newsList = data;
+        super.deliverResult(data);
+
+        // The stored news are on screen, now fetch the fresh ones
+        if (refreshPending && isStarted()) {
+            refreshPending = false;
+            forceLoad();
+        }
     }
 
 }
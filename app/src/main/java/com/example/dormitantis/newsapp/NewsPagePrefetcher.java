@@ -0,0 +1,231 @@
+package com.example.dormitantis.newsapp;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the pages that follow the first one while the user scrolls towards the end of the list.
+ * <p>
+ * The next {@link #PREFETCH_PAGES} pages are requested at the same time on a small bounded pool,
+ * so reaching the end of the list never waits on a serial request per page. Pages complete in
+ * any order but are handed to the listener strictly in page order. All the bookkeeping happens
+ * on the main thread, only the requests themselves run on the pool.
+ */
+public class NewsPagePrefetcher {
+
+    /**
+     * Receives the loaded pages, in page order, on the main thread.
+     */
+    public interface OnPageLoadedListener {
+        void onPageLoaded(int page, List<News> newsList);
+    }
+
+    /**
+     * How many pages are requested ahead of the last delivered one.
+     */
+    private static final int PREFETCH_PAGES = 3;
+
+    /**
+     * How many requests may run at the same time.
+     */
+    private static final int MAX_CONCURRENT_REQUESTS = 3;
+
+    /**
+     * Prefetching starts when fewer rows than this are left below the visible ones.
+     */
+    private static final int PREFETCH_THRESHOLD = 10;
+
+    /**
+     * How long to wait before asking again for a page that failed to load.
+     */
+    private static final long RETRY_DELAY_MILLIS = 5000;
+
+    /**
+     * The first page is loaded by the {@link NewsLoader}.
+     */
+    private static final int FIRST_PREFETCHED_PAGE = 2;
+
+    private final ThreadPoolExecutor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final NewsRepository repository;
+    private final OnPageLoadedListener listener;
+
+    private final SparseArray<CancellationToken> pagesInFlight = new SparseArray<>();
+    private final SparseArray<List<News>> loadedPages = new SparseArray<>();
+
+    private GuardianQuery guardianQuery;
+    private String query;
+    private int pageSize;
+    private int generation;
+    private int nextPageToDeliver;
+    private boolean lastPageReached;
+    private long retryAt;
+
+    /**
+     * Constructs a new {@link NewsPagePrefetcher}.
+     *
+     * @param repository to fetch the pages from
+     * @param listener   to hand the loaded pages to
+     */
+    public NewsPagePrefetcher(NewsRepository repository, OnPageLoadedListener listener) {
+        this.repository = repository;
+        this.listener = listener;
+        this.executor = new ThreadPoolExecutor(MAX_CONCURRENT_REQUESTS, MAX_CONCURRENT_REQUESTS,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // The pages are only requested once the user visible requests went
+                        RequestGovernor.setCurrentPriority(RequestGovernor.Priority.PREFETCH);
+                        runnable.run();
+                    }
+                }, "NewsPagePrefetcher #" + count.incrementAndGet());
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Starts paging a new query whose first page has just been delivered, dropping whatever
+     * was loading for the previous one.
+     *
+     * @param guardianQuery     of the first page
+     * @param firstPageNewsSize the number of news of the first page
+     */
+    public void reset(GuardianQuery guardianQuery, int firstPageNewsSize) {
+        cancel();
+        this.guardianQuery = guardianQuery;
+        this.query = NewsRepository.localQueryOf(guardianQuery);
+        this.pageSize = guardianQuery.getPageSize();
+        this.lastPageReached = firstPageNewsSize < pageSize;
+    }
+
+    /**
+     * Cancels every page in flight, e.g. when the keyword changes. Their connections are
+     * closed and the pages still waiting for a thread are never requested.
+     */
+    public void cancel() {
+        generation++;
+        for (int i = 0; i < pagesInFlight.size(); i++) {
+            pagesInFlight.valueAt(i).cancel();
+        }
+        pagesInFlight.clear();
+        loadedPages.clear();
+        guardianQuery = null;
+        query = null;
+        nextPageToDeliver = FIRST_PREFETCHED_PAGE;
+        lastPageReached = true;
+        retryAt = 0;
+    }
+
+    /**
+     * Call from the list scroll listener so the next pages are requested before they are needed.
+     *
+     * @param lastVisiblePosition the position of the last visible row
+     * @param itemCount           the number of rows in the list
+     */
+    public void onScroll(int lastVisiblePosition, int itemCount) {
+        if (lastPageReached || itemCount == 0 || itemCount - lastVisiblePosition > PREFETCH_THRESHOLD) {
+            return;
+        }
+        if (SystemClock.elapsedRealtime() < retryAt) {
+            return;
+        }
+        for (int page = nextPageToDeliver; page < nextPageToDeliver + PREFETCH_PAGES; page++) {
+            prefetch(page);
+        }
+    }
+
+    /**
+     * Stops the pool, the prefetcher must not be used afterwards.
+     */
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private void prefetch(final int page) {
+        // Don't ask twice for the same page
+        if (pagesInFlight.get(page) != null || loadedPages.get(page) != null) {
+            return;
+        }
+
+        final int requestGeneration = generation;
+        final String pageQuery = query;
+        final int offset = (page - 1) * pageSize;
+        final String pageUrl = guardianQuery.withPage(page).toUrl();
+        final CancellationToken token = new CancellationToken();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (token.isCancelled()) {
+                    return;
+                }
+                final List<News> newsList = repository.fetch(pageUrl, pageQuery, offset, token);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageFetched(requestGeneration, page, newsList);
+                    }
+                });
+            }
+        });
+        pagesInFlight.put(page, token);
+    }
+
+    private void onPageFetched(int requestGeneration, int page, List<News> newsList) {
+        // The query changed while the page was loading
+        if (requestGeneration != generation) {
+            return;
+        }
+        pagesInFlight.remove(page);
+
+        if (newsList == null) {
+            // Leave the page out so it is asked again on a later scroll
+            retryAt = SystemClock.elapsedRealtime() + RETRY_DELAY_MILLIS;
+            return;
+        }
+        loadedPages.put(page, newsList);
+
+        // Hand over every page that is next in line
+        List<News> nextPage = loadedPages.get(nextPageToDeliver);
+        while (nextPage != null && !lastPageReached) {
+            int deliveredPage = nextPageToDeliver;
+            loadedPages.remove(deliveredPage);
+            nextPageToDeliver++;
+            if (nextPage.size() < pageSize) {
+                // A short page is the last one, whatever comes after it is empty. So is a page
+                // past the last one, which theguardian refuses when the last page was full.
+                lastPageReached = true;
+            }
+            if (!nextPage.isEmpty()) {
+                listener.onPageLoaded(deliveredPage, nextPage);
+            }
+            nextPage = loadedPages.get(nextPageToDeliver);
+        }
+
+        if (lastPageReached) {
+            // Pages past the last one are of no use
+            for (int i = 0; i < pagesInFlight.size(); i++) {
+                pagesInFlight.valueAt(i).cancel();
+            }
+            pagesInFlight.clear();
+            loadedPages.clear();
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.example.dormitantis.newsapp;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Single entry point for the news of a query, whether they come from theguardian
+ * or from the local {@link NewsStore}.
+ * <p>
+ * Everything fetched from the network goes through the {@link NewsCache} and is persisted
+ * in the store, so the last results of a query are still available offline. It is indexed
+ * in a {@link NewsIndex} too, so the news on the device matching a new keyword are found
+ * right away while the network query runs.
+ * <p>
+ * The feeds made of several queries are fetched by a {@link FanOutQueryEngine}. The first page
+ * of a query already on the device is refreshed by {@link DeltaSync} when its news come newest
+ * first, only downloading the news published since, and downloaded again as a whole from time
+ * to time only.
+ */
+public final class NewsRepository {
+
+    /**
+     * Maximum number of news returned from the local data
+     */
+    private static final int LOCAL_RESULTS_LIMIT = 100;
+
+    /**
+     * Number of queries of a feed fetched at the same time
+     */
+    private static final int MAX_CONCURRENT_QUERIES = 3;
+
+    /**
+     * How often the whole first page of a query is fetched again, to catch the updates
+     * of the news already on the device
+     */
+    private static final long FULL_SYNC_INTERVAL_MILLIS = 12 * 60 * 60 * 1000;
+
+    private static NewsRepository instance;
+
+    private final Context context;
+    private final NewsCache cache;
+    private final NewsStore store;
+    private final NewsIndex index = new NewsIndex(NewsIndex.DEFAULT_MAX_DOCUMENTS);
+    private final FanOutQueryEngine fanOutQueryEngine = new FanOutQueryEngine(new FanOutQueryEngine.Fetcher() {
+        @Override
+        public List<News> fetch(GuardianQuery query, CancellationToken token) {
+            return NewsRepository.this.fetch(query, token);
+        }
+    }, MAX_CONCURRENT_QUERIES);
+
+    /**
+     * Held while the articles of the store are added to the index, so no search runs on a
+     * half-built one
+     */
+    private final Object indexLock = new Object();
+
+    /**
+     * Whether the articles of the store were added to the index
+     */
+    private volatile boolean indexLoaded;
+
+    private NewsRepository(Context context) {
+        this.context = context;
+        this.cache = NewsCache.getInstance(context);
+        this.store = NewsStore.getInstance(context);
+        QueryUtils.init(context);
+    }
+
+    /**
+     * Returns the repository shared by the whole app.
+     */
+    public static synchronized NewsRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new NewsRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the key the results of the given query are stored under on the device,
+     * see {@link GuardianQuery#toKey()}. A keyword restricted to some sections is kept apart
+     * from the same keyword in every section.
+     */
+    public static String localQueryOf(GuardianQuery guardianQuery) {
+        return guardianQuery.toKey();
+    }
+
+    /**
+     * Returns the normalized text the news on the device are searched for when nothing is
+     * stored for the given query: its keyword, or the ids of its sections when it has none.
+     */
+    private static String searchTextOf(GuardianQuery guardianQuery) {
+        if (!guardianQuery.getKeyword().isEmpty() || guardianQuery.getSections().isEmpty()) {
+            return guardianQuery.getKeyword();
+        }
+        StringBuilder sections = new StringBuilder();
+        for (String section : guardianQuery.getSections()) {
+            sections.append(section).append(' ');
+        }
+        return QueryUtils.normalizeKeyword(sections.toString());
+    }
+
+    /**
+     * Fetches the news of all the given queries as one feed, see {@link FanOutQueryEngine}.
+     * A single query is fetched as is, in the order of the server. This is a blocking call.
+     *
+     * @param guardianQueries  the first pages of the queries
+     * @param token            to cancel the requests with, null is returned once it is cancelled
+     * @param listener         receives the merged results as the queries complete, when there are several
+     * @param progressListener receives the news of a single query as they are downloaded, may be null
+     */
+    public List<News> fetchAll(List<GuardianQuery> guardianQueries, CancellationToken token,
+                               FanOutQueryEngine.Listener listener,
+                               NewsJsonParser.OnNewsParsedListener progressListener) {
+        if (guardianQueries.size() == 1) {
+            return fetch(guardianQueries.get(0), token, progressListener);
+        }
+        return fanOutQueryEngine.run(guardianQueries, token, listener);
+    }
+
+    /**
+     * Fetches the news of the given query, see {@link #fetch(String, String, int, CancellationToken)}.
+     */
+    public List<News> fetch(GuardianQuery guardianQuery, CancellationToken token) {
+        return fetch(guardianQuery, token, null);
+    }
+
+    /**
+     * Fetches the news of the given query, see {@link #fetch(String, String, int, CancellationToken)}.
+     * The first page is only fetched as a whole when it cannot be brought up to date
+     * with the news published since it was stored. When it cannot be fetched at all,
+     * the news on the device are returned instead, see {@link #loadLocal(GuardianQuery)}.
+     *
+     * @param progressListener receives the news of a whole page as they are downloaded, may be null
+     */
+    public List<News> fetch(GuardianQuery guardianQuery, CancellationToken token,
+                            NewsJsonParser.OnNewsParsedListener progressListener) {
+        String query = localQueryOf(guardianQuery);
+        if (guardianQuery.getPage() == 1 && guardianQuery.isNewestFirst()) {
+            List<News> syncedNews = fetchNewer(guardianQuery, query, token);
+            if (token.isCancelled()) {
+                return null;
+            }
+            if (syncedNews != null) {
+                return syncedNews;
+            }
+        }
+        List<News> newsList = fetchPage(guardianQuery.toUrl(), query,
+                (guardianQuery.getPage() - 1) * guardianQuery.getPageSize(), token, progressListener);
+        if ((newsList == null || newsList.isEmpty()) && guardianQuery.getPage() == 1 && !token.isCancelled()) {
+            List<News> localNews = loadLocal(guardianQuery);
+            if (!localNews.isEmpty()) {
+                newsList = localNews;
+            }
+        }
+        return newsList;
+    }
+
+    /**
+     * Puts the news published since the stored results of the query were fetched on top of
+     * its first page. The pages stored after it are dropped, their positions are outdated.
+     *
+     * @return the first page brought up to date, or null if it has to be fetched as a whole
+     */
+    private List<News> fetchNewer(GuardianQuery guardianQuery, String query, CancellationToken token) {
+        NewsStore.SyncState syncState = store.loadSyncState(query);
+        if (syncState.getWatermark() == 0 || !isOnline()
+                || System.currentTimeMillis() - syncState.getFullSyncedAt() > FULL_SYNC_INTERVAL_MILLIS) {
+            return null;
+        }
+        List<News> storedNews = store.load(query);
+        if (storedNews.isEmpty()) {
+            return null;
+        }
+        int pageSize = guardianQuery.getPageSize();
+        if (storedNews.size() > pageSize) {
+            storedNews = new ArrayList<>(storedNews.subList(0, pageSize));
+        }
+
+        List<News> newerNews = DeltaSync.fetchNewer(guardianQuery, syncState.getWatermark(),
+                new DeltaSync.PageFetcher() {
+                    @Override
+                    public List<News> fetch(GuardianQuery deltaQuery, CancellationToken token) {
+                        return QueryUtils.fetchNewsData(deltaQuery.toUrl(), cache, token);
+                    }
+                }, token);
+        if (newerNews == null || newerNews.isEmpty()) {
+            return newerNews == null ? null : storedNews;
+        }
+
+        List<News> mergedNews = DeltaSync.merge(newerNews, storedNews, pageSize);
+        store.save(query, 0, mergedNews);
+        store.saveSyncState(query, new NewsStore.SyncState(
+                DeltaSync.watermarkOf(newerNews, syncState.getWatermark()), syncState.getFullSyncedAt()));
+        index.addAll(newerNews);
+        return mergedNews;
+    }
+
+    /**
+     * Fetches the news of the given request and stores them as the results of the query,
+     * starting at the given position. This is a blocking call.
+     * <p>
+     * When the first page cannot be fetched, the results stored for the query are returned
+     * instead. For the following pages null is returned so the caller can try again later.
+     *
+     * @param requestUrl the URL to fetch the news from
+     * @param query      the key of the query, see {@link #localQueryOf(GuardianQuery)}
+     * @param offset     the position of the first news of the request in the results of the query
+     * @param token      to cancel the request with, null is returned once it is cancelled
+     */
+    public List<News> fetch(String requestUrl, String query, int offset, CancellationToken token) {
+        return fetch(requestUrl, query, offset, token, null);
+    }
+
+    /**
+     * Fetches the news of the given request like {@link #fetch(String, String, int, CancellationToken)},
+     * handing the news downloaded to the given listener as soon as they are parsed.
+     */
+    public List<News> fetch(String requestUrl, String query, int offset, CancellationToken token,
+                            NewsJsonParser.OnNewsParsedListener progressListener) {
+        List<News> newsList = fetchPage(requestUrl, query, offset, token, progressListener);
+        if ((newsList == null || newsList.isEmpty()) && offset == 0 && !token.isCancelled()) {
+            List<News> storedNews = store.load(query);
+            if (!storedNews.isEmpty()) {
+                newsList = storedNews;
+            }
+        }
+        return newsList;
+    }
+
+    /**
+     * Fetches the news of the given request and stores them as the results of the query,
+     * without falling back on the news on the device.
+     */
+    private List<News> fetchPage(String requestUrl, String query, int offset, CancellationToken token,
+                                 NewsJsonParser.OnNewsParsedListener progressListener) {
+        List<News> newsList = null;
+        if (isOnline()) {
+            newsList = QueryUtils.fetchNewsData(requestUrl, cache, token, progressListener);
+        }
+        if (token.isCancelled()) {
+            return null;
+        }
+
+        if (newsList != null && !newsList.isEmpty()) {
+            store.save(query, offset, newsList);
+            index.addAll(newsList);
+            if (offset == 0) {
+                // The following refreshes only need what is published after these news
+                long watermark = store.loadSyncState(query).getWatermark();
+                store.saveSyncState(query, new NewsStore.SyncState(
+                        DeltaSync.watermarkOf(newsList, watermark), System.currentTimeMillis()));
+            }
+        }
+        return newsList;
+    }
+
+    /**
+     * Returns the news on the device for the given query: the results stored for it in their
+     * order, so the feed shown is the one the next refresh is compared with. Only a query
+     * that was never fetched is answered by the index, then by the stored articles matching it.
+     * This is a blocking call.
+     */
+    public List<News> loadLocal(GuardianQuery guardianQuery) {
+        List<News> newsList = store.load(localQueryOf(guardianQuery));
+        if (!newsList.isEmpty()) {
+            return newsList;
+        }
+        String searchText = searchTextOf(guardianQuery);
+        loadIndex();
+        newsList = index.search(searchText, LOCAL_RESULTS_LIMIT);
+        if (newsList.isEmpty()) {
+            newsList = store.search(searchText);
+        }
+        return newsList;
+    }
+
+    /**
+     * Returns the news on the device matching any of the given queries, see {@link #loadLocal(GuardianQuery)}.
+     * The news of several queries are merged like {@link FanOutQueryEngine} does.
+     */
+    public List<News> loadLocal(List<GuardianQuery> guardianQueries) {
+        if (guardianQueries.size() == 1) {
+            return loadLocal(guardianQueries.get(0));
+        }
+        List<List<News>> results = new ArrayList<>(guardianQueries.size());
+        for (GuardianQuery guardianQuery : guardianQueries) {
+            results.add(loadLocal(guardianQuery));
+        }
+        return FanOutQueryEngine.merge(results);
+    }
+
+    /**
+     * Returns the publication date of the newest news fetched for any of the given queries,
+     * 0 if none was fetched yet.
+     */
+    public long getWatermark(List<GuardianQuery> guardianQueries) {
+        long watermark = 0;
+        for (GuardianQuery guardianQuery : guardianQueries) {
+            watermark = Math.max(watermark, store.loadSyncState(localQueryOf(guardianQuery)).getWatermark());
+        }
+        return watermark;
+    }
+
+    /**
+     * Adds the most recent stored articles to the index, the first time only.
+     * The callers arriving meanwhile wait for it to be built.
+     */
+    private void loadIndex() {
+        if (indexLoaded) {
+            return;
+        }
+        synchronized (indexLock) {
+            if (indexLoaded) {
+                return;
+            }
+            List<News> recentNews = store.loadRecent(NewsIndex.DEFAULT_MAX_DOCUMENTS);
+            // Oldest first, so the most recent ones come first in the results
+            Collections.reverse(recentNews);
+            index.addAll(recentNews);
+            indexLoaded = true;
+        }
+    }
+
+    /**
+     * Returns whether there is a network connection.
+     */
+    public boolean isOnline() {
+        // Get a reference to the ConnectivityManager to check state of network connectivity
+        ConnectivityManager connMgr = (ConnectivityManager)
+                context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connMgr == null) {
+            return false;
+        }
+
+        // Get details on the currently active default data network
+        NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+}
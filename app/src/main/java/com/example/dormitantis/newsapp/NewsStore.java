@@ -0,0 +1,362 @@
+package com.example.dormitantis.newsapp;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local SQLite store of every {@link News} fetched from theguardian.
+ * <p>
+ * Articles are stored once per webUrl and updated in place when they are fetched again.
+ * The results of every query are remembered in order, so the same query can be answered
+ * without the network, and articles can be looked up by the words of their section, authors
+ * or title, like {@link NewsIndex} does. The articles no result refers to any more are
+ * evicted, the most recent ones excepted.
+ * The sync state of every query tells how much of it has to be fetched again, see {@link DeltaSync}.
+ */
+public final class NewsStore {
+
+    private static final String DATABASE_NAME = "news.db";
+    private static final int DATABASE_VERSION = 6;
+
+    private static final String TABLE_ARTICLES = "articles";
+    private static final String COLUMN_ID = "_id";
+    private static final String COLUMN_WEB_URL = "web_url";
+    private static final String COLUMN_TITLE = "title";
+    private static final String COLUMN_SECTION = "section";
+    private static final String COLUMN_AUTHORS = "authors";
+    private static final String COLUMN_THUMBNAIL = "thumbnail";
+    private static final String COLUMN_PUBLISHED_AT = "published_at";
+    private static final String COLUMN_UPDATED_AT = "updated_at";
+
+    private static final String TABLE_ARTICLE_WORDS = "article_words";
+    private static final String COLUMN_WORD = "word";
+    private static final String COLUMN_ARTICLE_ID = "article_id";
+
+    private static final String TABLE_QUERY_RESULTS = "query_results";
+    private static final String COLUMN_QUERY = "query";
+    private static final String COLUMN_POSITION = "position";
+
+    private static final String TABLE_SYNC_STATE = "sync_state";
+    private static final String COLUMN_WATERMARK = "watermark";
+    private static final String COLUMN_FULL_SYNCED_AT = "full_synced_at";
+
+    /**
+     * The columns {@link #readNews(Cursor)} reads, in order
+     */
+    private static final String[] ARTICLE_COLUMNS = {COLUMN_WEB_URL, COLUMN_TITLE, COLUMN_SECTION,
+            COLUMN_AUTHORS, COLUMN_THUMBNAIL, COLUMN_PUBLISHED_AT};
+
+    /**
+     * Maximum number of news returned by a search over the stored articles.
+     */
+    private static final int SEARCH_LIMIT = 100;
+
+    /**
+     * Number of articles kept when no stored result refers to them any more, as many as
+     * {@link NewsIndex} holds by default
+     */
+    private static final int MAX_UNREFERENCED_ARTICLES = NewsIndex.DEFAULT_MAX_DOCUMENTS;
+
+    private static NewsStore instance;
+
+    private final DbHelper dbHelper;
+
+    private NewsStore(Context context) {
+        dbHelper = new DbHelper(context);
+    }
+
+    /**
+     * Returns the store shared by the whole app.
+     */
+    public static synchronized NewsStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new NewsStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Stores the given news as the results of the query, starting at the given position.
+     * Results starting at position 0 replace whatever was stored for the query before,
+     * and the articles left without any result are evicted.
+     * Everything is written in a single transaction.
+     *
+     * @param query    the key of the query the news were fetched for
+     * @param offset   the position of the first news in the results of the query
+     * @param newsList the news to store
+     */
+    public void save(String query, int offset, List<News> newsList) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long now = System.currentTimeMillis();
+        db.beginTransaction();
+        try {
+            SQLiteStatement selectId = db.compileStatement("SELECT " + COLUMN_ID + " FROM " + TABLE_ARTICLES
+                    + " WHERE " + COLUMN_WEB_URL + " = ?");
+            SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_ARTICLES + " SET "
+                    + COLUMN_TITLE + " = ?, " + COLUMN_SECTION + " = ?, " + COLUMN_AUTHORS + " = ?, "
+                    + COLUMN_THUMBNAIL + " = ?, " + COLUMN_PUBLISHED_AT + " = ?, " + COLUMN_UPDATED_AT + " = ? "
+                    + "WHERE " + COLUMN_WEB_URL + " = ?");
+            SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_ARTICLES + " ("
+                    + COLUMN_TITLE + ", " + COLUMN_SECTION + ", " + COLUMN_AUTHORS + ", " + COLUMN_THUMBNAIL + ", "
+                    + COLUMN_PUBLISHED_AT + ", " + COLUMN_UPDATED_AT + ", " + COLUMN_WEB_URL
+                    + ") VALUES (?, ?, ?, ?, ?, ?, ?)");
+            SQLiteStatement deleteWords = db.compileStatement("DELETE FROM " + TABLE_ARTICLE_WORDS
+                    + " WHERE " + COLUMN_ARTICLE_ID + " = ?");
+            SQLiteStatement insertWord = db.compileStatement("INSERT INTO " + TABLE_ARTICLE_WORDS
+                    + " (" + COLUMN_WORD + ", " + COLUMN_ARTICLE_ID + ") VALUES (?, ?)");
+            SQLiteStatement insertResult = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_QUERY_RESULTS
+                    + " (" + COLUMN_QUERY + ", " + COLUMN_POSITION + ", " + COLUMN_WEB_URL + ") VALUES (?, ?, ?)");
+
+            if (offset == 0) {
+                db.delete(TABLE_QUERY_RESULTS, COLUMN_QUERY + " = ?", new String[]{query});
+            }
+
+            int position = offset;
+            for (News news : newsList) {
+                // Upsert by webUrl: update the stored article or insert it if there is none
+                long id;
+                selectId.bindString(1, news.getWeb());
+                try {
+                    id = selectId.simpleQueryForLong();
+                    bindArticle(update, news, now);
+                    update.executeUpdateDelete();
+                    deleteWords.bindLong(1, id);
+                    deleteWords.executeUpdateDelete();
+                } catch (SQLiteDoneException e) {
+                    bindArticle(insert, news, now);
+                    id = insert.executeInsert();
+                }
+                for (String word : NewsIndex.wordsOf(news)) {
+                    insertWord.bindString(1, word);
+                    insertWord.bindLong(2, id);
+                    insertWord.executeInsert();
+                }
+
+                insertResult.bindString(1, query);
+                insertResult.bindLong(2, position++);
+                insertResult.bindString(3, news.getWeb());
+                insertResult.executeInsert();
+            }
+
+            if (offset == 0) {
+                evict(db);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Returns the sync state of the query, with a 0 watermark if it was never synced.
+     *
+     * @param query the key of the query
+     */
+    public SyncState loadSyncState(String query) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_SYNC_STATE, new String[]{COLUMN_WATERMARK, COLUMN_FULL_SYNCED_AT},
+                COLUMN_QUERY + " = ?", new String[]{query}, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                return new SyncState(cursor.getLong(0), cursor.getLong(1));
+            }
+            return new SyncState(0, 0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Stores the sync state of the query.
+     *
+     * @param query the key of the query
+     */
+    public void saveSyncState(String query, SyncState syncState) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_QUERY, query);
+        values.put(COLUMN_WATERMARK, syncState.getWatermark());
+        values.put(COLUMN_FULL_SYNCED_AT, syncState.getFullSyncedAt());
+        dbHelper.getWritableDatabase().insertWithOnConflict(TABLE_SYNC_STATE, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Returns the stored results of the query in their original order.
+     *
+     * @param query the key of the query
+     */
+    public List<News> load(String query) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT a." + COLUMN_WEB_URL + ", a." + COLUMN_TITLE + ", a."
+                + COLUMN_SECTION + ", a." + COLUMN_AUTHORS + ", a." + COLUMN_THUMBNAIL + ", a." + COLUMN_PUBLISHED_AT
+                + " FROM " + TABLE_QUERY_RESULTS + " r JOIN " + TABLE_ARTICLES + " a"
+                + " ON a." + COLUMN_WEB_URL + " = r." + COLUMN_WEB_URL
+                + " WHERE r." + COLUMN_QUERY + " = ? ORDER BY r." + COLUMN_POSITION, new String[]{query});
+        return readNews(cursor);
+    }
+
+    /**
+     * Returns the stored articles matching a query that was never fetched, most recently
+     * fetched first. Like in {@link NewsIndex}, every word of the query has to start a word
+     * of the title, the section or an author of the article.
+     *
+     * @param query the normalized keyword
+     */
+    public List<News> search(String query) {
+        if (query.isEmpty()) {
+            return find(null);
+        }
+        String[] terms = query.split(" ");
+        StringBuilder selection = new StringBuilder();
+        String[] selectionArgs = new String[terms.length * 2];
+        for (int i = 0; i < terms.length; i++) {
+            if (i > 0) {
+                selection.append(" AND ");
+            }
+            // A range rather than a LIKE, so the index of the words is always used
+            selection.append(COLUMN_ID + " IN (SELECT " + COLUMN_ARTICLE_ID + " FROM " + TABLE_ARTICLE_WORDS
+                    + " WHERE " + COLUMN_WORD + " >= ? AND " + COLUMN_WORD + " < ?)");
+            selectionArgs[i * 2] = terms[i];
+            selectionArgs[i * 2 + 1] = terms[i] + Character.MAX_VALUE;
+        }
+        return find(selection.toString(), selectionArgs);
+    }
+
+    /**
+     * Returns the most recently fetched articles, most recent first.
+     *
+     * @param limit the maximum number of articles returned
+     */
+    public List<News> loadRecent(int limit) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_ARTICLES, ARTICLE_COLUMNS,
+                null, null, null, null, COLUMN_UPDATED_AT + " DESC", String.valueOf(limit));
+        return readNews(cursor);
+    }
+
+    private List<News> find(String selection, String... selectionArgs) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_ARTICLES, ARTICLE_COLUMNS, selection, selectionArgs,
+                null, null, COLUMN_UPDATED_AT + " DESC", String.valueOf(SEARCH_LIMIT));
+        return readNews(cursor);
+    }
+
+    /**
+     * Deletes the articles no stored result refers to, but the
+     * {@link #MAX_UNREFERENCED_ARTICLES} most recently fetched ones.
+     */
+    private static void evict(SQLiteDatabase db) {
+        String evicted = "SELECT " + COLUMN_ID + " FROM " + TABLE_ARTICLES
+                + " WHERE " + COLUMN_WEB_URL + " NOT IN (SELECT " + COLUMN_WEB_URL + " FROM " + TABLE_QUERY_RESULTS + ")"
+                + " ORDER BY " + COLUMN_UPDATED_AT + " DESC LIMIT -1 OFFSET " + MAX_UNREFERENCED_ARTICLES;
+        db.execSQL("DELETE FROM " + TABLE_ARTICLE_WORDS + " WHERE " + COLUMN_ARTICLE_ID + " IN (" + evicted + ")");
+        db.execSQL("DELETE FROM " + TABLE_ARTICLES + " WHERE " + COLUMN_ID + " IN (" + evicted + ")");
+    }
+
+    private static List<News> readNews(Cursor cursor) {
+        List<News> newsList = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                newsList.add(new News(cursor.getString(0), cursor.getString(1),
+                        cursor.getString(2), cursor.getString(3), cursor.getString(4), cursor.getLong(5)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return newsList;
+    }
+
+    private static void bindArticle(SQLiteStatement statement, News news, long now) {
+        statement.bindString(1, news.getTitle());
+        statement.bindString(2, news.getSection());
+        statement.bindString(3, news.getAuthorsText());
+        statement.bindString(4, news.getThumbnail());
+        statement.bindLong(5, news.getPublishedAt());
+        statement.bindLong(6, now);
+        statement.bindString(7, news.getWeb());
+    }
+
+    /**
+     * How up to date the stored results of a query are.
+     */
+    public static final class SyncState {
+        private final long watermark;
+        private final long fullSyncedAt;
+
+        /**
+         * @param watermark    the most recent publication date of the news seen for the query
+         * @param fullSyncedAt when the whole first page was last fetched
+         */
+        public SyncState(long watermark, long fullSyncedAt) {
+            this.watermark = watermark;
+            this.fullSyncedAt = fullSyncedAt;
+        }
+
+        public long getWatermark() {
+            return watermark;
+        }
+
+        public long getFullSyncedAt() {
+            return fullSyncedAt;
+        }
+    }
+
+    private static class DbHelper extends SQLiteOpenHelper {
+
+        DbHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_ARTICLES + " ("
+                    + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + COLUMN_WEB_URL + " TEXT NOT NULL UNIQUE, "
+                    + COLUMN_TITLE + " TEXT NOT NULL, "
+                    + COLUMN_SECTION + " TEXT NOT NULL, "
+                    + COLUMN_AUTHORS + " TEXT NOT NULL, "
+                    + COLUMN_THUMBNAIL + " TEXT NOT NULL DEFAULT '', "
+                    + COLUMN_PUBLISHED_AT + " INTEGER NOT NULL DEFAULT 0, "
+                    + COLUMN_UPDATED_AT + " INTEGER NOT NULL)");
+            db.execSQL("CREATE INDEX articles_updated_at ON " + TABLE_ARTICLES + " (" + COLUMN_UPDATED_AT + ")");
+
+            // The normalized words of every article, see NewsIndex#wordsOf(News)
+            db.execSQL("CREATE TABLE " + TABLE_ARTICLE_WORDS + " ("
+                    + COLUMN_WORD + " TEXT NOT NULL, "
+                    + COLUMN_ARTICLE_ID + " INTEGER NOT NULL)");
+            db.execSQL("CREATE INDEX article_words_word ON " + TABLE_ARTICLE_WORDS
+                    + " (" + COLUMN_WORD + ", " + COLUMN_ARTICLE_ID + ")");
+            db.execSQL("CREATE INDEX article_words_article_id ON " + TABLE_ARTICLE_WORDS
+                    + " (" + COLUMN_ARTICLE_ID + ")");
+
+            db.execSQL("CREATE TABLE " + TABLE_QUERY_RESULTS + " ("
+                    + COLUMN_QUERY + " TEXT NOT NULL, "
+                    + COLUMN_POSITION + " INTEGER NOT NULL, "
+                    + COLUMN_WEB_URL + " TEXT NOT NULL, "
+                    + "PRIMARY KEY (" + COLUMN_QUERY + ", " + COLUMN_POSITION + "))");
+
+            db.execSQL("CREATE TABLE " + TABLE_SYNC_STATE + " ("
+                    + COLUMN_QUERY + " TEXT PRIMARY KEY, "
+                    + COLUMN_WATERMARK + " INTEGER NOT NULL, "
+                    + COLUMN_FULL_SYNCED_AT + " INTEGER NOT NULL)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // The store is only a cache of theguardian data, so it can simply be rebuilt
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_SYNC_STATE);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_QUERY_RESULTS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_ARTICLE_WORDS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_ARTICLES);
+            onCreate(db);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.dormitantis.newsapp;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * Fetches the feed of the user in the background, so the news are already stored on the
+ * device when the app is opened.
+ * <p>
+ * The sync only runs on an unmetered network while the device charges, and not on a low
+ * battery, with all the queries of the feed fetched in the same run. A failed sync is retried
+ * with an exponential backoff, and the interval between two syncs follows how many news the
+ * previous ones found, see {@link SyncInterval}. JobScheduler only exists from Lollipop on,
+ * the older devices fetch in the foreground only.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class NewsSyncService extends JobService {
+
+    /**
+     * Tag for log messages
+     */
+    private static final String LOG_TAG = NewsSyncService.class.getName();
+
+    private static final int JOB_ID = 42;
+
+    /**
+     * Delay before retrying a failed sync, doubled on every failure by JobScheduler
+     */
+    private static final long INITIAL_BACKOFF_MILLIS = 60 * 1000;
+
+    private static final String PREFS_NAME = "news_sync";
+    private static final String PREF_INTERVAL = "interval";
+
+    /**
+     * Cancels the sync running, if any
+     */
+    private CancellationToken token;
+
+    /**
+     * Schedules the periodic sync, unless it already is.
+     */
+    public static void schedule(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+        long interval = context.getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                .getLong(PREF_INTERVAL, SyncInterval.DEFAULT_INTERVAL_MILLIS);
+        schedule(context, interval, false);
+    }
+
+    /**
+     * Schedules the periodic sync with the given interval.
+     *
+     * @param replace whether to replace the job already scheduled with the same interval,
+     *                which starts its period over
+     */
+    private static void schedule(Context context, long interval, boolean replace) {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(JOB_SCHEDULER_SERVICE);
+        if (jobScheduler == null) {
+            return;
+        }
+        if (!replace) {
+            for (JobInfo pendingJob : jobScheduler.getAllPendingJobs()) {
+                if (pendingJob.getId() == JOB_ID && pendingJob.getIntervalMillis() == interval) {
+                    return;
+                }
+            }
+        }
+
+        JobInfo.Builder builder = new JobInfo.Builder(JOB_ID, new ComponentName(context, NewsSyncService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresCharging(true)
+                .setPeriodic(interval)
+                .setBackoffCriteria(INITIAL_BACKOFF_MILLIS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                .setPersisted(true);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            builder.setRequiresBatteryNotLow(true);
+        }
+        jobScheduler.schedule(builder.build());
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final CancellationToken jobToken = new CancellationToken();
+        token = jobToken;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                RequestGovernor.setCurrentPriority(RequestGovernor.Priority.BACKGROUND);
+                boolean synced = sync(jobToken);
+                if (!jobToken.isCancelled()) {
+                    // A failed sync is retried with a backoff
+                    jobFinished(params, !synced);
+                }
+            }
+        }, "NewsSync").start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The constraints are not met anymore, try again once they are
+        token.cancel();
+        return true;
+    }
+
+    /**
+     * Fetches the queries of the feed and adapts the interval to the news found.
+     * This is a blocking call.
+     *
+     * @return whether the feed could be fetched
+     */
+    private boolean sync(CancellationToken token) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+        List<GuardianQuery> guardianQueries = NewsActivity.buildQueries(this, prefs);
+        NewsRepository repository = NewsRepository.getInstance(this);
+
+        long watermark = repository.getWatermark(guardianQueries);
+        List<News> newsList = repository.fetchAll(guardianQueries, token, null, null);
+        if (newsList == null || token.isCancelled()) {
+            return false;
+        }
+
+        int newNewsCount = 0;
+        for (News news : newsList) {
+            if (news.getPublishedAt() > watermark) {
+                newNewsCount++;
+            }
+        }
+
+        SharedPreferences syncPrefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        long interval = syncPrefs.getLong(PREF_INTERVAL, SyncInterval.DEFAULT_INTERVAL_MILLIS);
+        long nextInterval = SyncInterval.next(interval, newNewsCount);
+        Log.i(LOG_TAG, "Synced " + newNewsCount + " new news, next sync in " + nextInterval / 60000 + " min");
+        if (nextInterval != interval) {
+            syncPrefs.edit().putLong(PREF_INTERVAL, nextInterval).apply();
+            // Replacing the job stops this run, which is over anyway
+            schedule(this, nextInterval, true);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.dormitantis.newsapp;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Decides when a keyword edit actually starts a new query.
+ * <p>
+ * Edits are debounced, so several changes in a row only start a query for the last one,
+ * and they are coalesced, so an edit that gives the query already running or
+ * already pending does not start anything. Must be used from the main thread.
+ */
+public class QueryScheduler {
+
+    /**
+     * Receives the queries to run, on the main thread.
+     */
+    public interface OnQueryListener {
+        void onQuery(String query);
+    }
+
+    /**
+     * How long the keyword has to stay unchanged before its query starts
+     */
+    private static final long DEBOUNCE_MILLIS = 400;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final OnQueryListener listener;
+
+    /**
+     * The query last handed to the listener
+     */
+    private String currentQuery;
+
+    /**
+     * The query waiting for the debounce delay, if any
+     */
+    private String pendingQuery;
+
+    private final Runnable dispatch = new Runnable() {
+        @Override
+        public void run() {
+            String query = pendingQuery;
+            pendingQuery = null;
+            if (query != null && !query.equals(currentQuery)) {
+                currentQuery = query;
+                listener.onQuery(query);
+            }
+        }
+    };
+
+    /**
+     * Constructs a new {@link QueryScheduler}.
+     *
+     * @param listener to hand the queries to
+     */
+    public QueryScheduler(OnQueryListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Records the query that is running without going through the scheduler,
+     * e.g. the one the loader was created with.
+     *
+     * @param query the query in its canonical form
+     */
+    public void setCurrentQuery(String query) {
+        currentQuery = query;
+    }
+
+    /**
+     * Schedules the given query, replacing the one still waiting if any.
+     *
+     * @param query the query in its canonical form, the same for all the edits giving the same results
+     */
+    public void submit(String query) {
+        if (query.equals(pendingQuery)) {
+            // Same query already waiting, keep its original deadline
+            return;
+        }
+        handler.removeCallbacks(dispatch);
+        if (query.equals(currentQuery)) {
+            // Back to the query already running, nothing to do
+            pendingQuery = null;
+            return;
+        }
+        pendingQuery = query;
+        handler.postDelayed(dispatch, DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * Drops the query still waiting, if any.
+     */
+    public void cancel() {
+        handler.removeCallbacks(dispatch);
+        pendingQuery = null;
+    }
+}
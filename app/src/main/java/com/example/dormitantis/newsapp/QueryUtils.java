@@ -1,22 +1,23 @@
 package com.example.dormitantis.newsapp;
 
-import android.text.TextUtils;
+import android.content.Context;
+import android.content.SharedPreferences;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public final class QueryUtils {
     /**
@@ -24,26 +25,167 @@ public final class QueryUtils {
      */
     private static final String LOG_TAG = QueryUtils.class.getSimpleName();
 
+    private static final String QUOTA_PREFS_NAME = "request_quota";
+
+    /**
+     * Keeps the requests of every caller within the quotas of the API key
+     */
+    private static volatile RequestGovernor governor = new RequestGovernor();
+
+    /**
+     * Performs the requests, keeping the connections alive between them
+     */
+    private static volatile GovernedTransport transport = new GovernedTransport(createDefaultTransport(), governor);
+
+    private static boolean quotaStoreSet;
+
     private QueryUtils() {
     }
 
+    /**
+     * Counts the calls of the day in the preferences of the app, so the quota of the API key
+     * still holds when the process is restarted, e.g. for every background sync.
+     * Call before the first request; the following calls do nothing.
+     */
+    public static synchronized void init(Context context) {
+        if (quotaStoreSet) {
+            return;
+        }
+        quotaStoreSet = true;
+        governor.setQuotaStore(new PreferencesQuotaStore(
+                context.getApplicationContext().getSharedPreferences(QUOTA_PREFS_NAME, Context.MODE_PRIVATE)));
+    }
+
+    private static HttpTransport createDefaultTransport() {
+        // The GovernedTransport retries, so that every attempt is counted
+        UrlConnectionTransport urlConnectionTransport = new UrlConnectionTransport(
+                UrlConnectionTransport.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                UrlConnectionTransport.DEFAULT_READ_TIMEOUT_MILLIS, 0,
+                UrlConnectionTransport.DEFAULT_BASE_BACKOFF_MILLIS);
+        urlConnectionTransport.setMetricsListener(new RequestMetrics.Listener() {
+            @Override
+            public void onRequestCompleted(RequestMetrics metrics) {
+                Log.d(LOG_TAG, "Request completed: " + metrics);
+            }
+        });
+        return urlConnectionTransport;
+    }
+
+    /**
+     * Replaces the transport the requests go through, e.g. with one speaking HTTP/2.
+     * Its requests are still governed and retried, so it should not retry by itself.
+     */
+    public static void setTransport(HttpTransport httpTransport) {
+        transport = new GovernedTransport(httpTransport, governor);
+    }
+
+    /**
+     * Replaces the transport and the governor of the requests, e.g. with a local server and
+     * quotas of its own for a load test. The quota store of the governor, if any, is kept:
+     * {@link #init} does not replace it anymore.
+     */
+    static synchronized void setTransport(GovernedTransport governedTransport) {
+        quotaStoreSet = true;
+        governor = governedTransport.getGovernor();
+        transport = governedTransport;
+    }
+
+    /**
+     * Returns the transport the requests go through, to put it back after a test.
+     */
+    static GovernedTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Returns the governor of the requests, to show its quota usage.
+     */
+    public static RequestGovernor getRequestGovernor() {
+        return governor;
+    }
+
+    /**
+     * Remove the punctuation from the given text, lower case it and collapse the spaces,
+     * so the same keyword always produces the same query whatever way it was typed.
+     * This is also how {@link NewsIndex} normalizes the words it indexes.
+     */
+    public static String normalizeKeyword(String keyword) {
+        return NewsIndex.normalize(keyword);
+    }
+
     /**
      * Query theguardian data-set and return a list of {@link News} objects.
      */
     public static List<News> fetchNewsData(String requestUrl) {
+        return fetchNewsData(requestUrl, null, null);
+    }
+
+    /**
+     * Query theguardian data-set and return a list of {@link News} objects, going through
+     * the given {@link NewsCache} first. Fresh responses are served without touching the network,
+     * stale ones are revalidated with a conditional GET, and if the request fails the stale
+     * response is still better than nothing.
+     * <p>
+     * Cancelling the given token from another thread disconnects the request and aborts
+     * the parsing, in which case null is returned.
+     */
+    public static List<News> fetchNewsData(String requestUrl, NewsCache cache, CancellationToken token) {
+        return fetchNewsData(requestUrl, cache, token, null);
+    }
+
+    /**
+     * Query theguardian data-set like {@link #fetchNewsData(String, NewsCache, CancellationToken)},
+     * also handing every {@link News} of a response downloaded from the network to the given
+     * listener as soon as it is parsed, e.g. a {@link NewsBatcher}.
+     */
+    public static List<News> fetchNewsData(String requestUrl, NewsCache cache, CancellationToken token,
+                                           NewsJsonParser.OnNewsParsedListener progressListener) {
+        if (token == null) {
+            token = new CancellationToken();
+        }
+
+        String key = null;
+        NewsCache.Snapshot snapshot = null;
+        if (cache != null) {
+            key = NewsCache.keyFor(requestUrl);
+            List<News> cachedNews = cache.getFresh(key);
+            if (cachedNews != null) {
+                PipelineTracer.recordCacheLookup(true);
+                return cachedNews;
+            }
+            snapshot = cache.getSnapshot(key);
+            if (snapshot != null && cache.isFresh(snapshot.getFetchedAt())) {
+                List<News> snapshotNews = readSnapshot(cache, key, snapshot);
+                if (snapshotNews != null) {
+                    PipelineTracer.recordCacheLookup(true);
+                    return snapshotNews;
+                }
+                // The cached body cannot be read to the end, fetch it again
+                snapshot = null;
+            }
+        }
+
         // Create URL object
         URL url = createUrl(requestUrl);
 
-        // Perform HTTP request to the URL and receive a JSON response back
-        String jsonResponse = null;
+        // Perform HTTP request to the URL and parse the JSON response straight off the stream
+        List<News> newsList = null;
         try {
-            jsonResponse = makeHttpRequest(url);
+            newsList = makeHttpRequest(url, cache, key, snapshot, token, progressListener);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Problem making the HTTP request.", e);
         }
 
-        // Extract relevant fields from the JSON response and create a list of {@link News}
-        List<News> newsList = extractFeatureFromJson(jsonResponse);
+        // Nobody wants the news of a cancelled request
+        if (token.isCancelled()) {
+            return null;
+        }
+
+        // Fall back to the stale response if the server could not be reached
+        if (newsList == null && snapshot != null) {
+            newsList = readSnapshot(cache, key, snapshot);
+        }
+
         // Return the list of {@link News}
         return newsList;
     }
@@ -62,138 +204,289 @@ public final class QueryUtils {
     }
 
     /**
-     * Make an HTTP request to the given URL and return a String as the response.
+     * Query the given URL, one of a {@link GuardianQuery} showing the bodies, and return
+     * the bodies by webUrl, or null if the request failed. The response is not cached,
+     * {@link ArticleBodyStore} keeps the bodies.
      */
-    private static String makeHttpRequest(URL url) throws IOException {
-        String jsonResponse = "";
+    public static Map<String, String> fetchArticleBodies(String requestUrl, CancellationToken token) {
+        HttpTransport.Response response = null;
+        try {
+            response = transport.get(requestUrl, Collections.<String, String>emptyMap(), token);
+            if (response.getCode() != HttpURLConnection.HTTP_OK) {
+                Log.e(LOG_TAG, "Error response code: " + response.getCode());
+                return null;
+            }
+            Reader reader = new InputStreamReader(token.wrap(response.getBody()), Charset.forName("UTF-8"));
+            Map<String, String> bodies = NewsJsonParser.parseBodies(reader);
+            return token.isCancelled() ? null : bodies;
+        } catch (IOException | IllegalStateException e) {
+            if (!token.isCancelled()) {
+                Log.e(LOG_TAG, "Problem retrieving the article bodies.", e);
+            }
+            return null;
+        } finally {
+            if (response != null) {
+                try {
+                    response.close();
+                } catch (IOException ignored) {
+                    // The bodies were read already
+                }
+            }
+        }
+    }
+
+    /**
+     * Make an HTTP request to the given URL and return the list of {@link News}
+     * parsed from the response, or null if the request failed.
+     * <p>
+     * A response cut short or malformed halfway through is a failure as well: the news parsed
+     * until then were handed to the progress listener to be shown, but they are not returned
+     * so they are never taken for the whole page.
+     * <p>
+     * If a cache is given, the request is made conditional on the snapshot validators and
+     * the body of a successful response is written to the cache while it is parsed.
+     */
+    private static List<News> makeHttpRequest(URL url, NewsCache cache, String key, NewsCache.Snapshot snapshot,
+                                              CancellationToken token,
+                                              NewsJsonParser.OnNewsParsedListener progressListener) throws IOException {
+        List<News> newsList = null;
 
         // If the URL is null, then return early.
         if (url == null) {
-            return jsonResponse;
+            return newsList;
         }
 
-        HttpURLConnection urlConnection = null;
-        InputStream inputStream = null;
+        Map<String, String> headers = new HashMap<>();
+        if (snapshot != null) {
+            if (snapshot.getEtag() != null) {
+                headers.put("If-None-Match", snapshot.getEtag());
+            }
+            if (snapshot.getLastModified() != null) {
+                headers.put("If-Modified-Since", snapshot.getLastModified());
+            }
+        }
+
+        HttpTransport.Response response = null;
+        NewsCache.Editor editor = null;
         try {
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setReadTimeout(10000 /* milliseconds */);
-            urlConnection.setConnectTimeout(15000 /* milliseconds */);
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // If the request was successful (response code 200), then read the input stream and parse the response.
-            if (urlConnection.getResponseCode() == 200) {
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
+            response = transport.get(url.toString(), headers, token);
+
+            int responseCode = response.getCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && snapshot != null) {
+                // The cached response is still valid, so no body was sent.
+                PipelineTracer.recordCacheLookup(true);
+                newsList = readSnapshot(cache, key, cache.revalidated(snapshot));
+            } else if (responseCode == HttpURLConnection.HTTP_OK) {
+                // If the request was successful (response code 200), then parse the input stream.
+                if (cache != null) {
+                    PipelineTracer.recordCacheLookup(false);
+                }
+                InputStream inputStream = token.wrap(response.getBody());
+                if (cache != null) {
+                    editor = cache.edit(key);
+                    inputStream = editor.tee(inputStream);
+                }
+                newsList = new ArrayList<>();
+                boolean complete = parseTimed(inputStream, newsList, progressListener);
+                if (!complete || token.isCancelled()) {
+                    newsList = null;
+                }
+                if (editor != null) {
+                    if (complete && !token.isCancelled()) {
+                        editor.commit(response.getHeader("ETag"), response.getHeader("Last-Modified"));
+                        cache.put(key, newsList, System.currentTimeMillis());
+                    } else {
+                        editor.abort();
+                    }
+                    editor = null;
+                }
+            } else if (responseCode == HttpURLConnection.HTTP_BAD_REQUEST && isFollowingPage(url)) {
+                // theguardian refuses the pages past the last one, e.g. when the number of
+                // results is a multiple of the page size: there is simply nothing more
+                newsList = new ArrayList<>();
             } else {
-                Log.e(LOG_TAG, "Error response code: " + urlConnection.getResponseCode());
+                Log.e(LOG_TAG, "Error response code: " + responseCode);
             }
         } catch (IOException e) {
-            Log.e(LOG_TAG, "Problem retrieving JSON results.", e);
+            if (!token.isCancelled()) {
+                Log.e(LOG_TAG, "Problem retrieving JSON results.", e);
+            }
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
+            if (editor != null) {
+                editor.abort();
             }
-            if (inputStream != null) {
-                // Closing the input stream could throw an IOException, which is why
-                // the makeHttpRequest(URL url) method signature specifies than an IOException
-                // could be thrown.
-                inputStream.close();
+            if (response != null) {
+                // Closing the response rather than disconnecting it lets the transport
+                // keep the connection alive for the next request
+                response.close();
             }
         }
-        return jsonResponse;
+        return newsList;
     }
 
     /**
-     * Return a list of {@link News} objects that has been built up from
-     * parsing the given JSON response.
+     * Returns whether the given URL asks for a page of results after the first one.
      */
-    private static List<News> extractFeatureFromJson(String newsJSON) {
-        // If the JSON string is empty or null, then return early.
-        if (TextUtils.isEmpty(newsJSON)) {
-            return null;
+    private static boolean isFollowingPage(URL url) {
+        String query = url.getQuery();
+        if (query == null) {
+            return false;
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith("page=")) {
+                return !parameter.equals("page=1");
+            }
         }
+        return false;
+    }
 
-        // Create an empty ArrayList for adding news
+    /**
+     * Parse the response body stored in the cache and keep the result in memory.
+     *
+     * @return the news of the body, or null if it cannot be read to the end
+     */
+    private static List<News> readSnapshot(NewsCache cache, String key, NewsCache.Snapshot snapshot) {
         List<News> newsList = new ArrayList<>();
+        InputStream inputStream = null;
+        try {
+            inputStream = cache.openBody(snapshot);
+            if (parseTimed(inputStream, newsList, null)) {
+                cache.put(key, newsList, snapshot.getFetchedAt());
+            } else {
+                newsList = null;
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading the cached JSON results.", e);
+            newsList = null;
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem closing the cached JSON results.", e);
+                }
+            }
+        }
+        return newsList;
+    }
 
-        // Try to parse the JSON response string. If there's a problem with the way the JSON
-        // is formatted, a JSONException exception object will be thrown.
-        // Catch the exception so the app doesn't crash, and print the error message to the logs.
+    /**
+     * Parse the given JSON response stream like {@link #extractFeatureFromJson},
+     * timing the reads of the stream apart from the parsing itself.
+     */
+    private static boolean parseTimed(InputStream inputStream, List<News> newsList,
+                                      NewsJsonParser.OnNewsParsedListener progressListener) {
+        if (inputStream == null) {
+            return false;
+        }
+        TimedInputStream timedInputStream = new TimedInputStream(inputStream);
+        long parseStart = PipelineTracer.begin(PipelineTracer.Stage.PARSE);
         try {
-            // Create a JSONObject from the JSON string.
-            JSONObject baseJsonRoot = new JSONObject(newsJSON);
+            return extractFeatureFromJson(timedInputStream, newsList, progressListener);
+        } finally {
+            long readNanos = timedInputStream.getReadNanos();
+            PipelineTracer.end(PipelineTracer.Stage.PARSE, parseStart, readNanos);
+            PipelineTracer.record(PipelineTracer.Stage.BODY_READ, readNanos);
+        }
+    }
 
-            // Create JSONArray representing the list of news associated with the key called "results" by extracting it
-            // from a JSONObject associated with the key called "response"
-            JSONArray newsArray = baseJsonRoot.getJSONObject("response").getJSONArray("results");
+    /**
+     * Parse the given JSON response stream and add the {@link News} objects
+     * it contains to the given list, handing them to the progress listener as well if any.
+     * <p>
+     * The stream is parsed incrementally by {@link NewsJsonParser}, so the response is never
+     * buffered as a whole. If the JSON turns out to be malformed halfway through, the news
+     * parsed up to that point are still added.
+     *
+     * @return true if the whole response was parsed
+     */
+    private static boolean extractFeatureFromJson(InputStream inputStream, final List<News> newsList,
+                                                  final NewsJsonParser.OnNewsParsedListener progressListener) {
+        // If there is no stream, then return early.
+        if (inputStream == null) {
+            return false;
+        }
 
-            // For each news in the newsArray, create an {@link News} object
-            for (int i = 0; i < newsArray.length(); i++) {
+        // Try to parse the JSON response stream. If there's a problem with the way the JSON
+        // is formatted, an exception will be thrown.
+        // Catch the exception so the app doesn't crash, and print the error message to the logs.
+        try {
+            Reader reader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
+            NewsJsonParser.parse(reader, new NewsJsonParser.OnNewsParsedListener() {
+                @Override
+                public void onNewsParsed(News news) {
+                    // Add the new {@link News} to the list of news
+                    newsList.add(news);
+                    if (progressListener != null) {
+                        progressListener.onNewsParsed(news);
+                    }
+                }
+            });
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            Log.e(LOG_TAG, "Problem parsing the news JSON results", e);
+            return false;
+        }
+    }
 
-                // Get news at position i within the list of news
-                JSONObject currentNews = newsArray.getJSONObject(i);
+    /**
+     * Keeps the calls of the day in {@link SharedPreferences}.
+     */
+    private static final class PreferencesQuotaStore implements RequestGovernor.QuotaStore {
+        private static final String PREF_DAY = "day";
+        private static final String PREF_REQUESTS = "requests";
 
-                // Extract the value for the key called "webUrl" for getting web
-                String web = currentNews.getString("webUrl");
+        private final SharedPreferences prefs;
 
-                // Extract the value for the key called "webTitle" for getting the title
-                String title = currentNews.getString("webTitle");
+        PreferencesQuotaStore(SharedPreferences prefs) {
+            this.prefs = prefs;
+        }
 
-                // Extract the value for the key called "sectionName" for getting section
-                String section = currentNews.getString("sectionName");
+        @Override
+        public int load(long day) {
+            return prefs.getLong(PREF_DAY, -1) == day ? prefs.getInt(PREF_REQUESTS, 0) : 0;
+        }
 
-                // Make empty string default for author
-                String authors = "";
+        @Override
+        public void save(long day, int requests) {
+            // Written to disk in the background, the count in memory is the one checked
+            prefs.edit().putLong(PREF_DAY, day).putInt(PREF_REQUESTS, requests).apply();
+        }
+    }
 
-                // Extract the JSONArray for the key called "tags" followed by extracting author name from the string "webTitle"
-                JSONArray tagsArray = currentNews.getJSONArray("tags");
-                if (tagsArray.length() > 0) {
-                    for (int j = 0; j < tagsArray.length(); j++) {
-                        JSONObject currentTag = tagsArray.optJSONObject(j);
+    /**
+     * Adds up the time spent waiting for the stream: the network, the decompression
+     * and the copy to the cache, as opposed to the parsing.
+     */
+    private static final class TimedInputStream extends FilterInputStream {
+        private long readNanos;
 
-                        //Extract info about author from the value for the key called "webTitle"
-                        String currentAuthor = currentTag.getString("webTitle");
-                        //If there are several authors, separate them with comma
-                        if (!authors.isEmpty()) {
-                            authors = authors + ",\n";
-                        }
-                        authors = authors + currentAuthor;
-                    }
-                }
-                // Create a new {@link News} object with its parameters
-                // and url from the JSON response.
-                News news = new News(web, title, section, authors);
+        TimedInputStream(InputStream in) {
+            super(in);
+        }
 
-                // Add the new {@link News} to the list of news
-                newsList.add(news);
-            }
+        long getReadNanos() {
+            return readNanos;
+        }
 
-        } catch (JSONException e) {
-            // If an error is thrown when executing any of the above statements in the "try" block,
-            // catch the exception here, so the app doesn't crash. Print a log message
-            // with the message from the exception.
-            Log.e("QueryUtils", "Problem parsing the news JSON results", e);
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read();
+            } finally {
+                readNanos += System.nanoTime() - start;
+            }
         }
-        // Return the list of news
-        return newsList;
-    }
 
-    /**
-     * Convert the {@link InputStream} into a String which contains the
-     * whole JSON response from the server.
-     */
-    private static String readFromStream(InputStream inputStream) throws IOException {
-        StringBuilder output = new StringBuilder();
-        if (inputStream != null) {
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
-            BufferedReader reader = new BufferedReader(inputStreamReader);
-            String line = reader.readLine();
-            while (line != null) {
-                output.append(line);
-                line = reader.readLine();
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read(buffer, offset, length);
+            } finally {
+                readNanos += System.nanoTime() - start;
             }
         }
-        return output.toString();
     }
 }
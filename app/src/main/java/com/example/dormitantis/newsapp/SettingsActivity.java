@@ -2,11 +2,15 @@ package com.example.dormitantis.newsapp;
 
 import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.preference.MultiSelectListPreference;
 import android.preference.Preference;
 import android.preference.PreferenceFragment;
 import android.preference.PreferenceManager;
 import android.support.v7.app.AppCompatActivity;
 
+import java.util.Collections;
+import java.util.Set;
+
 public class SettingsActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -22,15 +26,45 @@ public class SettingsActivity extends AppCompatActivity {
 
             Preference keyword = findPreference(getString(R.string.settings_keyword_key));
             bindPreferenceSummaryToValue(keyword);
+
+            MultiSelectListPreference sections =
+                    (MultiSelectListPreference) findPreference(getString(R.string.settings_sections_key));
+            sections.setOnPreferenceChangeListener(this);
+            onPreferenceChange(sections, sections.getSharedPreferences().getStringSet(sections.getKey(),
+                    Collections.<String>emptySet()));
         }
 
         @Override
         public boolean onPreferenceChange(Preference preference, Object value) {
+            if (preference instanceof MultiSelectListPreference) {
+                preference.setSummary(getSectionsSummary((MultiSelectListPreference) preference, (Set<?>) value));
+                return true;
+            }
             String stringValue = value.toString();
             preference.setSummary(stringValue);
             return true;
         }
 
+        /**
+         * Returns the names of the chosen sections, in the order of the list.
+         */
+        private String getSectionsSummary(MultiSelectListPreference preference, Set<?> values) {
+            if (values.isEmpty()) {
+                return getString(R.string.settings_sections_all);
+            }
+            StringBuilder summary = new StringBuilder();
+            CharSequence[] entryValues = preference.getEntryValues();
+            for (int i = 0; i < entryValues.length; i++) {
+                if (values.contains(entryValues[i].toString())) {
+                    if (summary.length() > 0) {
+                        summary.append(", ");
+                    }
+                    summary.append(preference.getEntries()[i]);
+                }
+            }
+            return summary.toString();
+        }
+
         private void bindPreferenceSummaryToValue(Preference preference) {
             preference.setOnPreferenceChangeListener(this);
             SharedPreferences preferences =
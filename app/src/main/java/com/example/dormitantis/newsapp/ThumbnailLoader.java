@@ -0,0 +1,478 @@
+package com.example.dormitantis.newsapp;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the thumbnails of the news into the rows of the list.
+ * <p>
+ * Thumbnails are downloaded once into a disk cache, decoded on a couple of background threads,
+ * downsampled to the size of the thumbnail view, and kept in a memory cache sized from the heap,
+ * so a row scrolled back into view gets its thumbnail right away. The most recent requests are
+ * served first, the request of a recycled row is cancelled, and the bitmaps dropped from the
+ * memory cache are decoded into again instead of allocating new ones.
+ * Must be used from the main thread.
+ */
+public final class ThumbnailLoader {
+
+    private static final String LOG_TAG = ThumbnailLoader.class.getSimpleName();
+
+    /**
+     * Threads downloading and decoding the thumbnails, few enough to leave the CPU to the UI
+     */
+    private static final int THREAD_COUNT = 2;
+
+    /**
+     * Requests waiting for a thread, the oldest are dropped beyond it: their rows are long gone
+     */
+    private static final int MAX_QUEUED_REQUESTS = 24;
+
+    private static final long MAX_DISK_BYTES = 10 * 1024 * 1024;
+
+    /**
+     * Downloads between two trims of the disk cache
+     */
+    private static final int TRIM_INTERVAL = 16;
+
+    /**
+     * Age after which a temporary file is one a crashed download left behind
+     */
+    private static final long STALE_TEMP_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final int MAX_REUSABLE_BITMAPS = 8;
+
+    private static ThumbnailLoader instance;
+
+    private final File directory;
+    private final int targetWidth;
+    private final int targetHeight;
+    private final LruCache<String, Bitmap> memoryCache;
+    private final ThreadPoolExecutor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final HttpTransport transport = new UrlConnectionTransport(
+            UrlConnectionTransport.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+            UrlConnectionTransport.DEFAULT_READ_TIMEOUT_MILLIS, 1,
+            UrlConnectionTransport.DEFAULT_BASE_BACKOFF_MILLIS);
+
+    /**
+     * The request of every view, and the bitmap it displays, touched on the main thread only
+     */
+    private final Map<ImageView, Request> requests = new WeakHashMap<>();
+    private final Map<ImageView, Bitmap> displayedBitmaps = new WeakHashMap<>();
+
+    /**
+     * Bitmaps dropped from the memory cache and displayed nowhere, to decode into
+     */
+    private final List<SoftReference<Bitmap>> reusableBitmaps = new LinkedList<>();
+
+    private int downloadCount;
+
+    private ThumbnailLoader(Context context) {
+        directory = new File(context.getCacheDir(), "thumbnails");
+        Resources resources = context.getResources();
+        targetWidth = resources.getDimensionPixelSize(R.dimen.thumbnail_width);
+        targetHeight = resources.getDimensionPixelSize(R.dimen.thumbnail_height);
+
+        // An eighth of the heap, dozens of screens of thumbnails
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+        memoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String url, Bitmap bitmap) {
+                return byteCountOf(bitmap);
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String url, Bitmap oldBitmap, Bitmap newBitmap) {
+                if (evicted && oldBitmap.isMutable() && !displayedBitmaps.containsValue(oldBitmap)) {
+                    addReusableBitmap(oldBitmap);
+                }
+            }
+        };
+
+        BlockingQueue<Runnable> queue = new LinkedBlockingDeque<Runnable>(MAX_QUEUED_REQUESTS) {
+            @Override
+            public boolean offer(Runnable runnable) {
+                // Last in, first out: the rows bound last are the ones on screen
+                return offerFirst(runnable);
+            }
+        };
+        executor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 0, TimeUnit.MILLISECONDS, queue,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                runnable.run();
+                            }
+                        }, "ThumbnailLoader");
+                    }
+                },
+                new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                        LinkedBlockingDeque<Runnable> deque = (LinkedBlockingDeque<Runnable>) executor.getQueue();
+                        Runnable oldest = deque.pollLast();
+                        if (oldest != null) {
+                            ((Request) oldest).token.cancel();
+                        }
+                        executor.execute(runnable);
+                    }
+                });
+    }
+
+    /**
+     * Returns the loader shared by the whole app.
+     */
+    public static synchronized ThumbnailLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new ThumbnailLoader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Displays the thumbnail at the given URL in the given view, right away if it is in memory,
+     * otherwise once it is loaded. The view is left empty if the URL is.
+     */
+    public void load(String url, ImageView view) {
+        Request current = requests.get(view);
+        if (current != null && current.url.equals(url) && !current.token.isCancelled()) {
+            return;
+        }
+        cancel(view);
+        if (url.isEmpty()) {
+            return;
+        }
+
+        Bitmap bitmap = memoryCache.get(url);
+        Request request = new Request(url, view);
+        requests.put(view, request);
+        if (bitmap != null) {
+            display(view, bitmap);
+        } else {
+            executor.execute(request);
+        }
+    }
+
+    /**
+     * Cancels the loading of the thumbnail of the given view and empties it,
+     * e.g. when its row is recycled.
+     */
+    public void cancel(ImageView view) {
+        Request request = requests.remove(view);
+        if (request != null) {
+            request.token.cancel();
+            executor.remove(request);
+        }
+        displayedBitmaps.remove(view);
+        view.setImageDrawable(null);
+    }
+
+    /**
+     * Releases memory on the given {@link ComponentCallbacks2} trim level, from the main thread.
+     * The bitmaps kept for reuse go first, then the whole memory cache once memory runs low,
+     * the thumbnails are decoded again from the disk cache as they are displayed.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            memoryCache.evictAll();
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            // Also drops the bitmaps the memory cache just evicted
+            synchronized (reusableBitmaps) {
+                reusableBitmaps.clear();
+            }
+        }
+    }
+
+    private void display(ImageView view, Bitmap bitmap) {
+        displayedBitmaps.put(view, bitmap);
+        view.setImageBitmap(bitmap);
+    }
+
+    /**
+     * Returns the file of the given thumbnail in the disk cache.
+     */
+    private File fileFor(String url) {
+        return new File(directory, NewsCache.fileNameFor(url));
+    }
+
+    /**
+     * Downloads the given thumbnail into the disk cache. This is a blocking call.
+     *
+     * @return true if the thumbnail is in the disk cache
+     */
+    private boolean download(String url, File file, CancellationToken token) throws IOException {
+        HttpTransport.Response response = transport.get(url, Collections.<String, String>emptyMap(), token);
+        try {
+            if (response.getCode() != HttpURLConnection.HTTP_OK) {
+                Log.e(LOG_TAG, "Error response code " + response.getCode() + " for " + url);
+                return false;
+            }
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            // A file of its own, the same thumbnail may be downloaded twice at once
+            File temp = File.createTempFile("thumbnail", ".tmp", directory);
+            boolean written = false;
+            try {
+                InputStream in = token.wrap(response.getBody());
+                OutputStream out = new FileOutputStream(temp);
+                try {
+                    byte[] buffer = new byte[8192];
+                    int n;
+                    while ((n = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, n);
+                    }
+                } finally {
+                    out.close();
+                }
+                written = temp.renameTo(file);
+                if (!written) {
+                    throw new IOException("Cannot write " + file);
+                }
+            } finally {
+                if (!written) {
+                    //noinspection ResultOfMethodCallIgnored
+                    temp.delete();
+                }
+            }
+        } finally {
+            response.close();
+        }
+
+        boolean trim;
+        synchronized (this) {
+            trim = ++downloadCount % TRIM_INTERVAL == 0;
+        }
+        if (trim) {
+            trimDiskCache();
+        }
+        return true;
+    }
+
+    /**
+     * Deletes the least recently used thumbnails until the disk cache fits its size. The
+     * downloads in flight are left alone, only the temporary files of crashed ones are deleted.
+     */
+    private synchronized void trimDiskCache() {
+        File[] listed = directory.listFiles();
+        if (listed == null) {
+            return;
+        }
+        long staleBefore = System.currentTimeMillis() - STALE_TEMP_MILLIS;
+        List<File> files = new ArrayList<>(listed.length);
+        long size = 0;
+        for (File file : listed) {
+            if (!file.getName().endsWith(".tmp")) {
+                files.add(file);
+                size += file.length();
+            } else if (file.lastModified() < staleBefore) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        if (size <= MAX_DISK_BYTES) {
+            return;
+        }
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long first = a.lastModified();
+                long second = b.lastModified();
+                return first < second ? -1 : (first == second ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (size <= MAX_DISK_BYTES) {
+                break;
+            }
+            size -= file.length();
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    /**
+     * Decodes the given file downsampled to the size of the thumbnail view,
+     * into a reusable bitmap if there is one that fits.
+     */
+    private Bitmap decode(File file) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight);
+        // Thumbnails are opaque photos, 2 bytes per pixel are enough
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inMutable = true;
+        options.inBitmap = takeReusableBitmap(options);
+        try {
+            return BitmapFactory.decodeFile(file.getPath(), options);
+        } catch (IllegalArgumentException e) {
+            // The bitmap could not be reused after all
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile(file.getPath(), options);
+        }
+    }
+
+    /**
+     * Returns the largest power of two the image can be divided by
+     * while still covering the thumbnail view.
+     */
+    private int sampleSize(int width, int height) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private void addReusableBitmap(Bitmap bitmap) {
+        synchronized (reusableBitmaps) {
+            if (reusableBitmaps.size() >= MAX_REUSABLE_BITMAPS) {
+                reusableBitmaps.remove(0);
+            }
+            reusableBitmaps.add(new SoftReference<>(bitmap));
+        }
+    }
+
+    /**
+     * Returns a bitmap the image described by the given options can be decoded into,
+     * or null if there is none.
+     */
+    private Bitmap takeReusableBitmap(BitmapFactory.Options options) {
+        synchronized (reusableBitmaps) {
+            Iterator<SoftReference<Bitmap>> iterator = reusableBitmaps.iterator();
+            while (iterator.hasNext()) {
+                Bitmap bitmap = iterator.next().get();
+                if (bitmap == null || bitmap.isRecycled()) {
+                    iterator.remove();
+                } else if (canDecodeInto(bitmap, options)) {
+                    iterator.remove();
+                    return bitmap;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the memory taken by the given bitmap, which may be more than its pixels
+     * when it was decoded into a bigger bitmap.
+     */
+    private static int byteCountOf(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    private static boolean canDecodeInto(Bitmap bitmap, BitmapFactory.Options options) {
+        if (bitmap.getConfig() != options.inPreferredConfig) {
+            return false;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            // Any bitmap at least as big will do
+            int width = (options.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+            int height = (options.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+            return width * height * 2 <= bitmap.getAllocationByteCount();
+        }
+        // Before KitKat the bitmap has to be the exact size of an image decoded without sampling
+        return options.inSampleSize == 1
+                && bitmap.getWidth() == options.outWidth && bitmap.getHeight() == options.outHeight;
+    }
+
+    /**
+     * Loads a thumbnail from the disk cache or the network and hands it to its view.
+     */
+    private final class Request implements Runnable {
+        final String url;
+        final ImageView view;
+        final CancellationToken token = new CancellationToken();
+
+        Request(String url, ImageView view) {
+            this.url = url;
+            this.view = view;
+        }
+
+        @Override
+        public void run() {
+            if (token.isCancelled()) {
+                return;
+            }
+            final Bitmap bitmap;
+            try {
+                File file = fileFor(url);
+                if (file.exists()) {
+                    // Keep it at the end of the disk LRU
+                    //noinspection ResultOfMethodCallIgnored
+                    file.setLastModified(System.currentTimeMillis());
+                } else if (!download(url, file, token)) {
+                    return;
+                }
+                if (token.isCancelled()) {
+                    return;
+                }
+                bitmap = decode(file);
+            } catch (IOException e) {
+                if (!token.isCancelled()) {
+                    Log.e(LOG_TAG, "Problem loading the thumbnail " + url, e);
+                }
+                return;
+            }
+            if (bitmap == null) {
+                return;
+            }
+
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    // Cached even if the row moved on, it may well come back
+                    memoryCache.put(url, bitmap);
+                    if (!token.isCancelled() && requests.get(view) == Request.this) {
+                        display(view, bitmap);
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.dormitantis.newsapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link NewsDiff}.
+ */
+public class NewsDiffTest {
+
+    @Test
+    public void calculate_sameList() {
+        List<News> newsList = newsList("a", "b", "c");
+        assertTrue(NewsDiff.calculate(newsList, newsList("a", "b", "c")).isEmpty());
+    }
+
+    @Test
+    public void calculate_singleMove() {
+        final List<String> updates = new ArrayList<>();
+        NewsDiff diff = NewsDiff.calculate(newsList("a", "b", "c", "d"), newsList("b", "c", "d", "a"));
+        diff.dispatchUpdatesTo(new RecordingCallback(updates));
+
+        assertEquals(Collections.singletonList("move 0 3"), updates);
+    }
+
+    @Test
+    public void calculate_insertAndRemoveRanges() {
+        List<String> updates = new ArrayList<>();
+        NewsDiff diff = NewsDiff.calculate(newsList("a", "b", "c", "d"), newsList("x", "y", "a", "d"));
+        diff.dispatchUpdatesTo(new RecordingCallback(updates));
+
+        assertEquals(Arrays.asList("remove 1 2", "insert 0 2"), updates);
+    }
+
+    @Test
+    public void calculate_changedContent() {
+        List<String> updates = new ArrayList<>();
+        List<News> newList = newsList("a", "b");
+        newList.set(1, new News("b", "Updated title", "Section", "Author"));
+        NewsDiff.calculate(newsList("a", "b"), newList).dispatchUpdatesTo(new RecordingCallback(updates));
+
+        assertEquals(Collections.singletonList("change 1 1"), updates);
+    }
+
+    @Test
+    public void applyTo_randomLists() {
+        Random random = new Random(42);
+        for (int trial = 0; trial < 500; trial++) {
+            List<News> oldList = randomList(random);
+            List<News> newList = randomList(random);
+
+            List<News> list = new ArrayList<>(oldList);
+            NewsDiff.calculate(oldList, newList).applyTo(list);
+
+            assertEquals(newList, list);
+        }
+    }
+
+    private static List<News> randomList(Random random) {
+        List<News> newsList = new ArrayList<>();
+        int size = random.nextInt(30);
+        for (int i = 0; i < size; i++) {
+            // Few distinct urls so there are moves and duplicates, and a title that sometimes changes
+            String web = "https://www.theguardian.com/" + random.nextInt(40);
+            newsList.add(new News(web, "Title " + random.nextInt(2), "Section", "Author"));
+        }
+        return newsList;
+    }
+
+    private static List<News> newsList(String... webs) {
+        List<News> newsList = new ArrayList<>();
+        for (String web : webs) {
+            newsList.add(new News(web, "Title", "Section", "Author"));
+        }
+        return newsList;
+    }
+
+    private static class RecordingCallback implements NewsDiff.Callback {
+        private final List<String> updates;
+
+        RecordingCallback(List<String> updates) {
+            this.updates = updates;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            updates.add("remove " + position + " " + count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            updates.add("move " + fromPosition + " " + toPosition);
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            updates.add("insert " + position + " " + count);
+        }
+
+        @Override
+        public void onChanged(int position, int count) {
+            updates.add("change " + position + " " + count);
+        }
+    }
+}
@@ -0,0 +1,618 @@
+package com.example.dormitantis.newsapp;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stands in for theguardian search endpoint on the loopback interface, so the fetch pipeline
+ * can be tested and loaded without a network. Built with {@link Builder}.
+ * <p>
+ * The responses are synthetic: every keyword gets its own results, newest first, paged by
+ * {@code page} and {@code page-size} like the real endpoint, a page past the last one being
+ * a 400. The {@code ids} parameter returns the given articles, with their body when
+ * {@code show-fields} asks for it. The latency, the share of failed and throttled responses
+ * and the size of the results are configured, the random choices being seeded so a run can
+ * be repeated. Connections are kept alive, the responses gzipped when the client accepts it
+ * and revalidated with their ETag.
+ * <p>
+ * It only understands what the app sends: GET requests without a body.
+ */
+public final class MockGuardianServer implements Closeable {
+
+    /**
+     * Results of every keyword, 20 pages of 100
+     */
+    public static final int DEFAULT_TOTAL_RESULTS = 2000;
+
+    /**
+     * Size of the body of an article, when it is asked for
+     */
+    public static final int DEFAULT_BODY_BYTES = 4096;
+
+    /**
+     * Wait asked by a throttled response, in seconds
+     */
+    public static final int RETRY_AFTER_SECONDS = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final int MAX_LINE_LENGTH = 8192;
+
+    /**
+     * Publication date of the newest result, the others follow every {@link #PUBLICATION_SPACING_MILLIS}
+     */
+    private static final long NEWEST_PUBLICATION_MILLIS = 1538992800000L;
+    private static final long PUBLICATION_SPACING_MILLIS = 7 * 60 * 1000L;
+
+    private static final String[][] SECTIONS = {
+            {"world", "World news"},
+            {"technology", "Technology"},
+            {"football", "Football"},
+            {"commentisfree", "Opinion"},
+            {"business", "Business"}
+    };
+
+    private static final int AUTHOR_COUNT = 40;
+
+    private static final String BODY_SENTENCE =
+            "<p>Synthetic paragraph of a mock article, long enough to look like the real thing.</p>";
+
+    private final int totalResults;
+    private final long latencyMillis;
+    private final long latencyJitterMillis;
+    private final double errorRate;
+    private final double throttleRate;
+    private final int bodyBytes;
+    private final int paddingBytes;
+    private final boolean gzip;
+    private final Random random;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "MockGuardianServer-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final Set<Socket> connections = Collections.synchronizedSet(new HashSet<Socket>());
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger failedCount = new AtomicInteger();
+    private final AtomicInteger throttledCount = new AtomicInteger();
+    private final AtomicLong bytesServed = new AtomicLong();
+
+    private volatile ServerSocket serverSocket;
+
+    private MockGuardianServer(Builder builder) {
+        this.totalResults = builder.totalResults;
+        this.latencyMillis = builder.latencyMillis;
+        this.latencyJitterMillis = builder.latencyJitterMillis;
+        this.errorRate = builder.errorRate;
+        this.throttleRate = builder.throttleRate;
+        this.bodyBytes = builder.bodyBytes;
+        this.paddingBytes = builder.paddingBytes;
+        this.gzip = builder.gzip;
+        this.random = new Random(builder.seed);
+    }
+
+    /**
+     * Starts listening on a free port of the loopback interface.
+     */
+    public void start() throws IOException {
+        if (serverSocket != null) {
+            throw new IllegalStateException("Already started");
+        }
+        final ServerSocket socket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        serverSocket = socket;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                while (!socket.isClosed()) {
+                    final Socket connection;
+                    try {
+                        connection = socket.accept();
+                    } catch (IOException e) {
+                        // Closed
+                        return;
+                    }
+                    connections.add(connection);
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            serve(connection);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the URL of the search endpoint, in place of {@code GuardianQuery.SEARCH_URL}.
+     */
+    public String getSearchUrl() {
+        return getBaseUrl() + "/search";
+    }
+
+    /**
+     * Returns the given theguardian URL pointed at this server, keeping its path and query.
+     */
+    public String urlFor(String url) {
+        int pathStart = url.indexOf('/', url.indexOf("//") + 2);
+        return getBaseUrl() + (pathStart == -1 ? "/" : url.substring(pathStart));
+    }
+
+    /**
+     * Returns the number of requests received.
+     */
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns the number of requests answered with a 500 on purpose.
+     */
+    public int getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Returns the number of requests answered with a 429.
+     */
+    public int getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    /**
+     * Returns the number of bytes sent, headers included.
+     */
+    public long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    /**
+     * Stops listening and closes the connections.
+     */
+    @Override
+    public void close() throws IOException {
+        ServerSocket socket = serverSocket;
+        if (socket != null) {
+            socket.close();
+        }
+        synchronized (connections) {
+            for (Socket connection : connections) {
+                closeQuietly(connection);
+            }
+            connections.clear();
+        }
+        executor.shutdownNow();
+    }
+
+    private String getBaseUrl() {
+        ServerSocket socket = serverSocket;
+        if (socket == null) {
+            throw new IllegalStateException("Not started");
+        }
+        return "http://127.0.0.1:" + socket.getLocalPort();
+    }
+
+    /**
+     * Answers the requests of a connection until the client closes it.
+     */
+    private void serve(Socket connection) {
+        try {
+            // Otherwise the response waits for the delayed ACK of the request
+            connection.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(connection.getInputStream());
+            OutputStream out = connection.getOutputStream();
+            while (true) {
+                String requestLine = readLine(in);
+                if (requestLine == null) {
+                    return;
+                }
+                if (requestLine.isEmpty()) {
+                    continue;
+                }
+                Map<String, String> headers = new HashMap<>();
+                String line;
+                while ((line = readLine(in)) != null && !line.isEmpty()) {
+                    int colon = line.indexOf(':');
+                    if (colon > 0) {
+                        headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                                line.substring(colon + 1).trim());
+                    }
+                }
+                respond(requestLine, headers, out);
+                if ("close".equalsIgnoreCase(headers.get("connection"))) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // The client went away
+        } finally {
+            connections.remove(connection);
+            closeQuietly(connection);
+        }
+    }
+
+    private void respond(String requestLine, Map<String, String> headers, OutputStream out) throws IOException {
+        requestCount.incrementAndGet();
+        String[] parts = requestLine.split(" ");
+        if (parts.length < 2 || !parts[0].equals("GET")) {
+            write(out, headers, 405, error("only GET is supported"));
+            return;
+        }
+        String target = parts[1];
+        int queryStart = target.indexOf('?');
+        String path = queryStart == -1 ? target : target.substring(0, queryStart);
+        Map<String, String> parameters = parseQuery(queryStart == -1 ? "" : target.substring(queryStart + 1));
+
+        sleep(latencyMillis + (latencyJitterMillis > 0 ? (long) (random.nextDouble() * latencyJitterMillis) : 0));
+
+        if (!path.equals("/search")) {
+            write(out, headers, 404, error("unknown path " + path));
+        } else if (random.nextDouble() < throttleRate) {
+            throttledCount.incrementAndGet();
+            write(out, headers, 429, error("rate limit exceeded"));
+        } else if (random.nextDouble() < errorRate) {
+            failedCount.incrementAndGet();
+            write(out, headers, 500, error("internal error"));
+        } else {
+            search(parameters, headers, out);
+        }
+    }
+
+    private void search(Map<String, String> parameters, Map<String, String> headers, OutputStream out)
+            throws IOException {
+        int page;
+        int pageSize;
+        try {
+            page = parameters.containsKey("page") ? Integer.parseInt(parameters.get("page")) : 1;
+            pageSize = parameters.containsKey("page-size") ? Integer.parseInt(parameters.get("page-size")) : 10;
+        } catch (NumberFormatException e) {
+            write(out, headers, 400, error("invalid page or page-size"));
+            return;
+        }
+        if (pageSize < 1 || pageSize > 200) {
+            write(out, headers, 400, error("page-size must be between 1 and 200"));
+            return;
+        }
+
+        String keyword = parameters.containsKey("q") ? parameters.get("q") : "";
+        List<String> ids = parameters.containsKey("ids")
+                ? Arrays.asList(parameters.get("ids").split(",")) : Collections.<String>emptyList();
+        boolean showBody = parameters.containsKey("show-fields")
+                && Arrays.asList(parameters.get("show-fields").split(",")).contains("body");
+
+        int total = ids.isEmpty() ? totalResults : ids.size();
+        int pages = (total + pageSize - 1) / pageSize;
+        if (page < 1 || (page > pages && total > 0)) {
+            write(out, headers, 400, error("requested page is beyond the number of available pages"));
+            return;
+        }
+
+        int start = (page - 1) * pageSize;
+        int end = Math.min(total, start + pageSize);
+        StringBuilder json = new StringBuilder(256 + (end - start) * (700 + paddingBytes + (showBody ? bodyBytes : 0)));
+        json.append("{\"response\":{\"status\":\"ok\",\"userTier\":\"developer\",\"total\":").append(total)
+                .append(",\"startIndex\":").append(start + 1)
+                .append(",\"pageSize\":").append(pageSize)
+                .append(",\"currentPage\":").append(page)
+                .append(",\"pages\":").append(pages)
+                .append(",\"orderBy\":\"newest\",\"results\":[");
+        SimpleDateFormat pathDate = new SimpleDateFormat("yyyy/MMM/dd", Locale.US);
+        SimpleDateFormat publicationDate = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        pathDate.setTimeZone(TimeZone.getTimeZone("UTC"));
+        publicationDate.setTimeZone(TimeZone.getTimeZone("UTC"));
+        for (int i = start; i < end; i++) {
+            if (i > start) {
+                json.append(',');
+            }
+            Date publishedAt = new Date(NEWEST_PUBLICATION_MILLIS - i * PUBLICATION_SPACING_MILLIS);
+            String[] section = SECTIONS[i % SECTIONS.length];
+            String id = ids.isEmpty()
+                    ? section[0] + "/" + pathDate.format(publishedAt).toLowerCase(Locale.US) + "/"
+                    + slugOf(keyword) + "-" + i
+                    : ids.get(i);
+            appendResult(json, i, id, keyword, section[1], publicationDate.format(publishedAt), showBody);
+        }
+        json.append("]}}");
+        write(out, headers, 200, json.toString().getBytes(UTF_8));
+    }
+
+    private void appendResult(StringBuilder json, int index, String id, String keyword, String sectionName,
+                              String publicationDate, boolean showBody) {
+        String title = "Synthetic headline " + index + (keyword.isEmpty() ? "" : " about " + keyword);
+        json.append("{\"id\":\"").append(escape(id))
+                .append("\",\"type\":\"article\",\"sectionName\":\"").append(sectionName)
+                .append("\",\"webPublicationDate\":\"").append(publicationDate)
+                .append("\",\"webTitle\":\"").append(escape(title))
+                .append("\",\"webUrl\":\"https://www.theguardian.com/").append(escape(id))
+                .append("\",\"apiUrl\":\"https://content.guardianapis.com/").append(escape(id))
+                .append("\",\"fields\":{\"thumbnail\":\"https://media.guim.co.uk/mock/").append(index)
+                .append("/500.jpg\"");
+        if (paddingBytes > 0) {
+            // A field the app does not read, which its parser has to skip
+            json.append(",\"trailText\":\"");
+            repeat(json, "Padding. ", paddingBytes);
+            json.append('"');
+        }
+        if (showBody) {
+            json.append(",\"body\":\"");
+            repeat(json, BODY_SENTENCE, bodyBytes);
+            json.append('"');
+        }
+        json.append("},\"tags\":[");
+        int authors = index % 3 == 0 ? 2 : 1;
+        for (int a = 0; a < authors; a++) {
+            int author = (index + a * 7) % AUTHOR_COUNT;
+            if (a > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"profile/mock-author-").append(author)
+                    .append("\",\"type\":\"contributor\",\"webTitle\":\"Author ").append(author).append("\"}");
+        }
+        json.append("],\"isHosted\":false,\"pillarName\":\"News\"}");
+    }
+
+    /**
+     * Writes a whole response in one go. A 200 comes with an ETag and is answered with a 304
+     * if the client already has it.
+     */
+    private void write(OutputStream out, Map<String, String> requestHeaders, int code, byte[] body)
+            throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json; charset=utf-8");
+        if (code == 200) {
+            String etag = "\"" + Integer.toHexString(Arrays.hashCode(body)) + "\"";
+            headers.put("ETag", etag);
+            if (etag.equals(requestHeaders.get("if-none-match"))) {
+                code = 304;
+                body = new byte[0];
+            }
+        } else if (code == 429) {
+            headers.put("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+        }
+        String acceptEncoding = requestHeaders.get("accept-encoding");
+        if (gzip && body.length > 0 && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream gzipped = new ByteArrayOutputStream(body.length / 4);
+            GZIPOutputStream gzipOut = new GZIPOutputStream(gzipped);
+            gzipOut.write(body);
+            gzipOut.close();
+            body = gzipped.toByteArray();
+            headers.put("Content-Encoding", "gzip");
+        }
+        headers.put("Content-Length", String.valueOf(body.length));
+
+        StringBuilder head = new StringBuilder(256);
+        head.append("HTTP/1.1 ").append(code).append(' ').append(reasonOf(code)).append("\r\n");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        head.append("\r\n");
+        ByteArrayOutputStream response = new ByteArrayOutputStream(head.length() + body.length);
+        response.write(head.toString().getBytes(ISO_8859_1));
+        response.write(body);
+        response.writeTo(out);
+        out.flush();
+        bytesServed.addAndGet(response.size());
+    }
+
+    private static byte[] error(String message) {
+        return ("{\"response\":{\"status\":\"error\",\"message\":\"" + escape(message) + "\"}}").getBytes(UTF_8);
+    }
+
+    private static String reasonOf(int code) {
+        switch (code) {
+            case 200:
+                return "OK";
+            case 304:
+                return "Not Modified";
+            case 400:
+                return "Bad Request";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 429:
+                return "Too Many Requests";
+            default:
+                return "Internal Server Error";
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        for (String parameter : query.split("&")) {
+            if (parameter.isEmpty()) {
+                continue;
+            }
+            int equals = parameter.indexOf('=');
+            String name = equals == -1 ? parameter : parameter.substring(0, equals);
+            String value = equals == -1 ? "" : parameter.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return parameters;
+    }
+
+    /**
+     * Reads a line of the request head, without its line break, or null at the end of the stream.
+     */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (line.size() >= MAX_LINE_LENGTH) {
+                throw new IOException("Request line too long");
+            }
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        String text = new String(line.toByteArray(), ISO_8859_1);
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    private static String slugOf(String keyword) {
+        String slug = keyword.toLowerCase(Locale.US).replaceAll("[^a-z0-9]+", "-").replaceAll("^-|-$", "");
+        return slug.isEmpty() ? "news" : slug;
+    }
+
+    private static void repeat(StringBuilder json, String text, int length) {
+        int end = json.length() + length;
+        while (json.length() < end) {
+            json.append(text, 0, Math.min(text.length(), end - json.length()));
+        }
+    }
+
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Nothing useful can be done about it
+        }
+    }
+
+    /**
+     * Builds a {@link MockGuardianServer}, by default a fast and reliable one.
+     */
+    public static final class Builder {
+        private int totalResults = DEFAULT_TOTAL_RESULTS;
+        private long latencyMillis;
+        private long latencyJitterMillis;
+        private double errorRate;
+        private double throttleRate;
+        private int bodyBytes = DEFAULT_BODY_BYTES;
+        private int paddingBytes;
+        private boolean gzip = true;
+        private long seed = 42;
+
+        /**
+         * Sets the number of results of every keyword, which gives the number of pages.
+         */
+        public Builder totalResults(int totalResults) {
+            this.totalResults = totalResults;
+            return this;
+        }
+
+        /**
+         * Delays every response by the given time plus up to the given jitter.
+         */
+        public Builder latency(long millis, long jitterMillis) {
+            this.latencyMillis = millis;
+            this.latencyJitterMillis = jitterMillis;
+            return this;
+        }
+
+        /**
+         * Sets the share of the requests answered with a 500, from 0 to 1.
+         */
+        public Builder errorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        /**
+         * Sets the share of the requests answered with a 429 and a Retry-After of
+         * {@link #RETRY_AFTER_SECONDS}, from 0 to 1.
+         */
+        public Builder throttleRate(double throttleRate) {
+            this.throttleRate = throttleRate;
+            return this;
+        }
+
+        /**
+         * Sets the size in characters of the body of the articles, when it is asked for.
+         */
+        public Builder bodyBytes(int bodyBytes) {
+            this.bodyBytes = bodyBytes;
+            return this;
+        }
+
+        /**
+         * Adds the given number of characters to every result, in a field the app does not read.
+         */
+        public Builder paddingBytes(int paddingBytes) {
+            this.paddingBytes = paddingBytes;
+            return this;
+        }
+
+        /**
+         * Turns the compression of the responses on or off, it is on by default.
+         */
+        public Builder gzip(boolean gzip) {
+            this.gzip = gzip;
+            return this;
+        }
+
+        /**
+         * Sets the seed of the latency jitter and of the failures.
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public MockGuardianServer build() {
+            return new MockGuardianServer(this);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.dormitantis.newsapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Fetching and parsing of theguardian search responses through {@link UrlConnectionTransport},
+ * from a server on the loopback interface serving them gzipped over a kept alive connection.
+ * Measures what the transport adds on top of {@link NewsJsonParserBenchmark}, without the
+ * noise of a real network.
+ */
+@State(Scope.Benchmark)
+public class FetchBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Param({"42", "200", "1000"})
+    public int results;
+
+    private HttpServer server;
+    private HttpTransport transport;
+    private String url;
+
+    @Setup
+    public void setUp() throws IOException {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(gzipped);
+        out.write(RecordedResponses.page(results));
+        out.close();
+        final byte[] body = gzipped.toByteArray();
+
+        // Otherwise the headers and the body written separately wait for the delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/search", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        server.start();
+
+        transport = new UrlConnectionTransport();
+        url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/search";
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public List<News> fetchThroughput() throws IOException {
+        return fetch();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<News> fetchLatency() throws IOException {
+        return fetch();
+    }
+
+    private List<News> fetch() throws IOException {
+        HttpTransport.Response response = transport.get(url, Collections.<String, String>emptyMap(),
+                new CancellationToken());
+        try {
+            return NewsJsonParser.parse(new InputStreamReader(response.getBody(), UTF_8));
+        } finally {
+            response.close();
+        }
+    }
+}
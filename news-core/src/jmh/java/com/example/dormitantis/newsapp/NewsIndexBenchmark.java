@@ -0,0 +1,78 @@
+package com.example.dormitantis.newsapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches of a full {@link NewsIndex}, holding news with titles drawn from a vocabulary
+ * of a few thousand words, a few dozen sections and a few hundred authors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NewsIndexBenchmark {
+
+    private static final int VOCABULARY_SIZE = 4000;
+    private static final int SECTION_COUNT = 40;
+    private static final int AUTHOR_COUNT = 400;
+
+    /**
+     * A short prefix matching many words, a word, and two words
+     */
+    @Param({"a", "climate", "climate wor"})
+    public String query;
+
+    private NewsIndex index;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        String[] vocabulary = new String[VOCABULARY_SIZE];
+        vocabulary[0] = "climate";
+        vocabulary[1] = "world";
+        for (int i = 2; i < vocabulary.length; i++) {
+            vocabulary[i] = randomWord(random);
+        }
+
+        List<News> newsList = new ArrayList<>(NewsIndex.DEFAULT_MAX_DOCUMENTS);
+        for (int i = 0; i < NewsIndex.DEFAULT_MAX_DOCUMENTS; i++) {
+            StringBuilder title = new StringBuilder();
+            int words = 8 + random.nextInt(8);
+            for (int j = 0; j < words; j++) {
+                // Zipf-like: the first words of the vocabulary come up far more often
+                int word = (int) (Math.pow(random.nextDouble(), 3) * vocabulary.length);
+                title.append(vocabulary[word]).append(' ');
+            }
+            newsList.add(new News("https://www.theguardian.com/" + i, title.toString().trim(),
+                    "Section " + random.nextInt(SECTION_COUNT),
+                    Collections.singletonList("Author " + random.nextInt(AUTHOR_COUNT)), ""));
+        }
+        index = new NewsIndex(NewsIndex.DEFAULT_MAX_DOCUMENTS);
+        index.addAll(newsList);
+    }
+
+    @Benchmark
+    public List<News> search() {
+        return index.search(query, 100);
+    }
+
+    private static String randomWord(Random random) {
+        char[] word = new char[3 + random.nextInt(8)];
+        for (int i = 0; i < word.length; i++) {
+            word[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(word);
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.dormitantis.newsapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of theguardian search responses by {@link NewsJsonParser}, from the bytes of the body
+ * to the list of {@link News}, the way {@code QueryUtils} does it.
+ * <p>
+ * The throughput benchmark gives the ops/sec, the sample time one the latency percentiles,
+ * and the gc profiler of the build adds the allocation rate of both.
+ */
+@State(Scope.Benchmark)
+public class NewsJsonParserBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Results per response: a page of the app, a big page and the largest page theguardian serves
+     */
+    @Param({"42", "200", "1000"})
+    public int results;
+
+    private byte[] response;
+
+    @Setup
+    public void setUp() {
+        response = RecordedResponses.page(results);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public List<News> parseThroughput() throws IOException {
+        return parse();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<News> parseLatency() throws IOException {
+        return parse();
+    }
+
+    private List<News> parse() throws IOException {
+        return NewsJsonParser.parse(new InputStreamReader(new ByteArrayInputStream(response), UTF_8));
+    }
+}
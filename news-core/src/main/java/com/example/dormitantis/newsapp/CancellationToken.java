@@ -0,0 +1,136 @@
+package com.example.dormitantis.newsapp;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lets another thread abort a request: cancelling the token disconnects its connection,
+ * which unblocks a pending read, and makes any further read of the response fail so the
+ * parser stops right away instead of going through the rest of the body.
+ */
+public final class CancellationToken {
+
+    private volatile boolean cancelled;
+    private HttpURLConnection connection;
+    private List<CancellationToken> children;
+
+    /**
+     * Returns whether the request was cancelled.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Cancels the request. Can be called from any thread, any number of times.
+     */
+    public void cancel() {
+        HttpURLConnection current;
+        List<CancellationToken> currentChildren;
+        synchronized (this) {
+            cancelled = true;
+            current = connection;
+            connection = null;
+            currentChildren = children;
+            children = null;
+            notifyAll();
+        }
+        if (current != null) {
+            current.disconnect();
+        }
+        if (currentChildren != null) {
+            for (CancellationToken child : currentChildren) {
+                child.cancel();
+            }
+        }
+    }
+
+    /**
+     * Returns a new token for a request made on behalf of this one: it is cancelled along
+     * with this token, but can also be cancelled on its own.
+     */
+    public CancellationToken newChild() {
+        CancellationToken child = new CancellationToken();
+        synchronized (this) {
+            if (!cancelled) {
+                if (children == null) {
+                    children = new ArrayList<>();
+                }
+                children.add(child);
+                return child;
+            }
+        }
+        child.cancel();
+        return child;
+    }
+
+    /**
+     * Throws if the request was cancelled.
+     */
+    public void throwIfCancelled() throws InterruptedIOException {
+        if (cancelled) {
+            throw new InterruptedIOException("Request cancelled");
+        }
+    }
+
+    /**
+     * Waits for the given time, or less if the request is cancelled in the meantime.
+     *
+     * @throws InterruptedIOException if the request was cancelled
+     */
+    void sleep(long millis) throws InterruptedIOException {
+        long deadline = System.currentTimeMillis() + millis;
+        synchronized (this) {
+            long remaining = millis;
+            while (!cancelled && remaining > 0) {
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting");
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+        throwIfCancelled();
+    }
+
+    /**
+     * Registers the connection to disconnect on cancel, or disconnects it right away
+     * if the request was already cancelled.
+     */
+    void setConnection(HttpURLConnection connection) throws InterruptedIOException {
+        synchronized (this) {
+            if (!cancelled) {
+                this.connection = connection;
+                return;
+            }
+        }
+        connection.disconnect();
+        throwIfCancelled();
+    }
+
+    /**
+     * Returns a stream that fails as soon as the request is cancelled.
+     */
+    public InputStream wrap(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                throwIfCancelled();
+                return super.read();
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int count) throws IOException {
+                throwIfCancelled();
+                return super.read(buffer, offset, count);
+            }
+        };
+    }
+}
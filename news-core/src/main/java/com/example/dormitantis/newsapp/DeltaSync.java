@@ -0,0 +1,122 @@
+package com.example.dormitantis.newsapp;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Refreshes the results of a query by only downloading the news published since the newest
+ * one already on the device, its watermark.
+ * <p>
+ * The news are asked for newest first, from the day of the watermark on, in small pages,
+ * until a page reaches the watermark or is the last one. When more than a few pages changed,
+ * downloading the whole first page again is cheaper and {@link #fetchNewer} gives up.
+ * <p>
+ * Only the results of a query ordered {@link GuardianQuery#isNewestFirst() newest first} can
+ * be refreshed this way, the new news would not belong on top of the others in any other order.
+ */
+public final class DeltaSync {
+
+    /**
+     * Performs the request of one page, returning null if it failed.
+     */
+    public interface PageFetcher {
+        List<News> fetch(GuardianQuery query, CancellationToken token);
+    }
+
+    /**
+     * Number of news per page of a delta, most refreshes fit in the first one
+     */
+    public static final int PAGE_SIZE = 10;
+
+    /**
+     * Number of pages requested before giving up on the delta
+     */
+    public static final int MAX_PAGES = 5;
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private DeltaSync() {
+    }
+
+    /**
+     * Returns the query of the given page of the news published since the given watermark.
+     * theguardian only filters by day, so the news of the day of the watermark come back as well.
+     */
+    public static GuardianQuery deltaQuery(GuardianQuery guardianQuery, long watermark, int page) {
+        Calendar calendar = Calendar.getInstance(UTC);
+        calendar.setTimeInMillis(watermark);
+        return guardianQuery.buildUpon()
+                .orderBy(GuardianQuery.OrderBy.NEWEST)
+                .fromDate(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1,
+                        calendar.get(Calendar.DAY_OF_MONTH))
+                .pageSize(PAGE_SIZE)
+                .page(page)
+                .build();
+    }
+
+    /**
+     * Fetches the news of the query published after the watermark. This is a blocking call.
+     *
+     * @return the new news, newest first, or null if a page could not be fetched,
+     * the token was cancelled or there were too many of them
+     */
+    public static List<News> fetchNewer(GuardianQuery guardianQuery, long watermark, PageFetcher fetcher,
+                                        CancellationToken token) {
+        List<News> newer = new ArrayList<>();
+        for (int page = 1; page <= MAX_PAGES; page++) {
+            List<News> newsList = fetcher.fetch(deltaQuery(guardianQuery, watermark, page), token);
+            if (newsList == null || token.isCancelled()) {
+                return null;
+            }
+            for (News news : newsList) {
+                if (news.getPublishedAt() <= watermark) {
+                    // Everything from here on is already on the device
+                    return newer;
+                }
+                newer.add(news);
+            }
+            if (newsList.size() < PAGE_SIZE) {
+                return newer;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Puts the new news on top of the ones on the device, replacing the older copies
+     * of the ones that were updated.
+     *
+     * @param limit the number of news of the page the result stands for, the oldest
+     *              ones pushed past it are left out
+     */
+    public static List<News> merge(List<News> newer, List<News> existing, int limit) {
+        List<News> merged = new ArrayList<>(Math.min(limit, newer.size() + existing.size()));
+        Set<String> webs = new HashSet<>();
+        for (News news : newer) {
+            if (merged.size() < limit && webs.add(news.getWeb())) {
+                merged.add(news);
+            }
+        }
+        for (News news : existing) {
+            if (merged.size() < limit && webs.add(news.getWeb())) {
+                merged.add(news);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the watermark after the given news were seen: the most recent of their
+     * publication dates and the given watermark.
+     */
+    public static long watermarkOf(List<News> newsList, long watermark) {
+        for (News news : newsList) {
+            watermark = Math.max(watermark, news.getPublishedAt());
+        }
+        return watermark;
+    }
+}
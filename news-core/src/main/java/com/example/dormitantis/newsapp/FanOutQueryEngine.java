@@ -0,0 +1,194 @@
+package com.example.dormitantis.newsapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs several queries at once and merges their results into one feed, most recently
+ * published first, with every webUrl only once.
+ * <p>
+ * At most a fixed number of queries run at the same time, the others wait for a thread.
+ * The merged feed is handed to the listener every time a query completes, so the results
+ * of the fast queries show up without waiting for the slowest one. The queries are requested
+ * with the {@link RequestGovernor.Priority} of the thread running them all.
+ */
+public final class FanOutQueryEngine {
+
+    /**
+     * Performs one query, on a thread of the engine.
+     */
+    public interface Fetcher {
+        /**
+         * Returns the news of the query, or null if they could not be fetched.
+         */
+        List<News> fetch(GuardianQuery query, CancellationToken token);
+    }
+
+    /**
+     * Receives the merged feed as the queries complete, one call at a time.
+     */
+    public interface Listener {
+        /**
+         * @param newsList     the results of the queries completed so far, merged
+         * @param completed    the number of queries completed, failed ones included
+         * @param queryCount   the number of queries run
+         */
+        void onResults(List<News> newsList, int completed, int queryCount);
+    }
+
+    /**
+     * Most recently published first, the news without a date last
+     */
+    private static final Comparator<News> MOST_RECENT_FIRST = new Comparator<News>() {
+        @Override
+        public int compare(News a, News b) {
+            long publishedA = a.getPublishedAt();
+            long publishedB = b.getPublishedAt();
+            return publishedA < publishedB ? 1 : (publishedA == publishedB ? 0 : -1);
+        }
+    };
+
+    private final Fetcher fetcher;
+    private final ExecutorService executor;
+
+    /**
+     * Constructs a new {@link FanOutQueryEngine}.
+     *
+     * @param fetcher        performs the queries
+     * @param maxConcurrency the number of queries run at the same time
+     */
+    public FanOutQueryEngine(Fetcher fetcher, int maxConcurrency) {
+        this.fetcher = fetcher;
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "FanOutQuery #" + count.incrementAndGet());
+            }
+        });
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        this.executor = threadPoolExecutor;
+    }
+
+    /**
+     * Runs the given queries and waits for all of them. This is a blocking call.
+     *
+     * @param queries  the queries to run
+     * @param token    cancels every query still running, null is returned once it is cancelled
+     * @param listener receives the merged results as the queries complete, may be null
+     * @return the merged results, or null if no query could be fetched
+     */
+    public List<News> run(List<GuardianQuery> queries, final CancellationToken token, final Listener listener) {
+        final int queryCount = queries.size();
+        final Merge merge = new Merge(queryCount);
+        final RequestGovernor.Priority priority = RequestGovernor.getCurrentPriority();
+        for (int i = 0; i < queryCount; i++) {
+            final int index = i;
+            final GuardianQuery query = queries.get(i);
+            final CancellationToken queryToken = token.newChild();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    RequestGovernor.setCurrentPriority(priority);
+                    List<News> newsList = null;
+                    try {
+                        if (!queryToken.isCancelled()) {
+                            newsList = fetcher.fetch(query, queryToken);
+                        }
+                    } finally {
+                        merge.complete(index, newsList, token.isCancelled() ? null : listener);
+                    }
+                }
+            });
+        }
+
+        merge.await(token);
+        if (token.isCancelled()) {
+            return null;
+        }
+        return merge.result();
+    }
+
+    /**
+     * Stops the threads, the engine must not be used afterwards.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Merges the given results into one feed: most recently published first, the ties
+     * and the news without a date in query order, and every webUrl only once.
+     */
+    public static List<News> merge(List<List<News>> results) {
+        Map<String, News> newsByWeb = new LinkedHashMap<>();
+        for (List<News> newsList : results) {
+            if (newsList == null) {
+                continue;
+            }
+            for (News news : newsList) {
+                if (!newsByWeb.containsKey(news.getWeb())) {
+                    newsByWeb.put(news.getWeb(), news);
+                }
+            }
+        }
+        List<News> merged = new ArrayList<>(newsByWeb.values());
+        // The sort is stable, so the order of the queries breaks the ties
+        Collections.sort(merged, MOST_RECENT_FIRST);
+        return merged;
+    }
+
+    /**
+     * The results of the queries of one run, in query order.
+     */
+    private static final class Merge {
+        private final List<List<News>> results;
+        private int completed;
+        private boolean anyFetched;
+
+        Merge(int queryCount) {
+            results = new ArrayList<>(Collections.<List<News>>nCopies(queryCount, null));
+        }
+
+        synchronized void complete(int index, List<News> newsList, Listener listener) {
+            results.set(index, newsList);
+            anyFetched |= newsList != null;
+            completed++;
+            if (listener != null) {
+                listener.onResults(merge(results), completed, results.size());
+            }
+            notifyAll();
+        }
+
+        /**
+         * Waits for every query to complete, or for the token to be cancelled.
+         */
+        synchronized void await(CancellationToken token) {
+            while (completed < results.size() && !token.isCancelled()) {
+                try {
+                    // The token does not wake this thread up, so check it from time to time
+                    wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    token.cancel();
+                }
+            }
+        }
+
+        synchronized List<News> result() {
+            return anyFetched ? merge(results) : null;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.dormitantis.newsapp;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Makes the requests of another {@link HttpTransport} wait for the permission of a
+ * {@link RequestGovernor}, with the priority of the calling thread.
+ * <p>
+ * A throttled response (429) pauses the governor for as long as its Retry-After says and
+ * the request is made again, so the callers get the response instead of an error as long
+ * as the quota of the day allows.
+ * <p>
+ * Requests that time out or get a 5xx response are retried here too, with the backoff of
+ * {@link UrlConnectionTransport}, so every attempt takes a permit of its own. The delegate
+ * should not retry by itself: its retries would reach the server without the governor
+ * counting them.
+ */
+public final class GovernedTransport implements HttpTransport {
+
+    /**
+     * HTTP Status-Code 429: Too Many Requests
+     */
+    static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * Number of times a throttled request is made before its response is returned as is
+     */
+    private static final int MAX_THROTTLED_ATTEMPTS = 3;
+
+    private final HttpTransport delegate;
+    private final RequestGovernor governor;
+    private final int maxRetries;
+    private final long baseBackoffMillis;
+    private final Random random = new Random();
+
+    /**
+     * Constructs a new {@link GovernedTransport} with the default retries of
+     * {@link UrlConnectionTransport}.
+     *
+     * @param delegate performs the requests, without retrying them
+     * @param governor grants the permission to make them
+     */
+    public GovernedTransport(HttpTransport delegate, RequestGovernor governor) {
+        this(delegate, governor, UrlConnectionTransport.DEFAULT_MAX_RETRIES,
+                UrlConnectionTransport.DEFAULT_BASE_BACKOFF_MILLIS);
+    }
+
+    /**
+     * Constructs a new {@link GovernedTransport}.
+     *
+     * @param delegate          performs the requests, without retrying them
+     * @param governor          grants the permission to make them
+     * @param maxRetries        number of times a request that timed out or got a 5xx response
+     *                          is retried after the first attempt
+     * @param baseBackoffMillis wait before the first retry, doubled on every following one
+     */
+    public GovernedTransport(HttpTransport delegate, RequestGovernor governor, int maxRetries,
+                             long baseBackoffMillis) {
+        this.delegate = delegate;
+        this.governor = governor;
+        this.maxRetries = maxRetries;
+        this.baseBackoffMillis = baseBackoffMillis;
+    }
+
+    public RequestGovernor getGovernor() {
+        return governor;
+    }
+
+    @Override
+    public Response get(String url, Map<String, String> headers, CancellationToken token) throws IOException {
+        RequestGovernor.Priority priority = RequestGovernor.getCurrentPriority();
+        int throttled = 0;
+        int retries = 0;
+        while (true) {
+            governor.acquire(priority, token);
+            Response response;
+            try {
+                response = delegate.get(url, headers, token);
+            } catch (SocketTimeoutException e) {
+                if (retries == maxRetries || token.isCancelled()) {
+                    throw e;
+                }
+                retries++;
+                token.sleep(UrlConnectionTransport.backoffMillis(baseBackoffMillis, retries, random));
+                continue;
+            }
+            int code = response.getCode();
+            if (code == HTTP_TOO_MANY_REQUESTS && ++throttled < MAX_THROTTLED_ATTEMPTS) {
+                governor.onThrottled(RequestGovernor.parseRetryAfter(response.getHeader("Retry-After"),
+                        System.currentTimeMillis()));
+                response.close();
+                continue;
+            }
+            if (code >= HttpURLConnection.HTTP_INTERNAL_ERROR && retries < maxRetries) {
+                response.close();
+                retries++;
+                token.sleep(UrlConnectionTransport.backoffMillis(baseBackoffMillis, retries, random));
+                continue;
+            }
+            return response;
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package com.example.dormitantis.newsapp;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A search of theguardian content API, built with {@link Builder}.
+ * <p>
+ * Only the fields and tags {@link NewsJsonParser} reads are asked for, and the filters are
+ * applied by the server. {@link #toUrl()} always gives the same URL for the same query,
+ * whatever order the builder was called in, so the URL can be used as a cache key.
+ */
+public final class GuardianQuery {
+
+    public static final String SEARCH_URL = "https://content.guardianapis.com/search";
+
+    /**
+     * Largest page theguardian serves
+     */
+    public static final int MAX_PAGE_SIZE = 200;
+
+    /**
+     * Order of the results, the server defaults to relevance when there is a keyword
+     * and to newest otherwise.
+     */
+    public enum OrderBy {
+        NEWEST("newest"),
+        OLDEST("oldest"),
+        RELEVANCE("relevance");
+
+        private final String value;
+
+        OrderBy(String value) {
+            this.value = value;
+        }
+    }
+
+    private final String apiKey;
+    private final String keyword;
+    private final List<String> sections;
+    private final String tag;
+    private final List<String> ids;
+    private final boolean showBody;
+    private final String fromDate;
+    private final String toDate;
+    private final OrderBy orderBy;
+    private final int page;
+    private final int pageSize;
+
+    private GuardianQuery(Builder builder) {
+        this.apiKey = builder.apiKey;
+        this.keyword = builder.keyword;
+        this.sections = Collections.unmodifiableList(new ArrayList<>(builder.sections));
+        this.tag = builder.tag;
+        this.ids = Collections.unmodifiableList(new ArrayList<>(builder.ids));
+        this.showBody = builder.showBody;
+        this.fromDate = builder.fromDate;
+        this.toDate = builder.toDate;
+        this.orderBy = builder.orderBy;
+        this.page = builder.page;
+        this.pageSize = builder.pageSize;
+    }
+
+    /**
+     * Returns the keyword searched, empty when there is none.
+     */
+    public String getKeyword() {
+        return keyword;
+    }
+
+    /**
+     * Returns the ids of the sections the results are restricted to, sorted, empty for all of them.
+     */
+    public List<String> getSections() {
+        return sections;
+    }
+
+    /**
+     * Returns whether the results come newest first, as the server orders them by default
+     * when there is no keyword.
+     */
+    public boolean isNewestFirst() {
+        return orderBy == OrderBy.NEWEST || (orderBy == null && keyword.isEmpty());
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Returns the same query for the given page.
+     */
+    public GuardianQuery withPage(int page) {
+        return buildUpon().page(page).build();
+    }
+
+    /**
+     * Returns a builder holding this query, to derive another one from it.
+     */
+    public Builder buildUpon() {
+        Builder builder = new Builder();
+        builder.apiKey = apiKey;
+        builder.keyword = keyword;
+        builder.sections.addAll(sections);
+        builder.tag = tag;
+        builder.ids.addAll(ids);
+        builder.showBody = showBody;
+        builder.fromDate = fromDate;
+        builder.toDate = toDate;
+        builder.orderBy = orderBy;
+        builder.page = page;
+        builder.pageSize = pageSize;
+        return builder;
+    }
+
+    /**
+     * Returns the URL of the query: the parameters are sorted by name, the unset ones and
+     * the defaults of the server left out, and the values percent encoded once.
+     */
+    public String toUrl() {
+        return toUrl(true);
+    }
+
+    /**
+     * Returns a key identifying the results of the query whatever their page: its URL without
+     * the API key and the page. Two queries only share a key when they ask for the same results.
+     */
+    public String toKey() {
+        return toUrl(false);
+    }
+
+    private String toUrl(boolean paged) {
+        Map<String, String> parameters = new TreeMap<>();
+        if (paged) {
+            parameters.put("api-key", apiKey);
+        }
+        parameters.put("format", "json");
+        parameters.put("show-fields", showBody
+                ? NewsJsonParser.SHOWN_FIELDS + "," + NewsJsonParser.BODY_FIELD : NewsJsonParser.SHOWN_FIELDS);
+        parameters.put("show-tags", NewsJsonParser.SHOWN_TAGS);
+        parameters.put("page-size", String.valueOf(pageSize));
+        if (!keyword.isEmpty()) {
+            parameters.put("q", keyword);
+        }
+        if (!sections.isEmpty()) {
+            StringBuilder section = new StringBuilder();
+            for (String id : sections) {
+                if (section.length() > 0) {
+                    // theguardian reads a "|" as OR
+                    section.append('|');
+                }
+                section.append(id);
+            }
+            parameters.put("section", section.toString());
+        }
+        if (tag != null) {
+            parameters.put("tag", tag);
+        }
+        if (!ids.isEmpty()) {
+            StringBuilder idList = new StringBuilder();
+            for (String id : ids) {
+                if (idList.length() > 0) {
+                    idList.append(',');
+                }
+                idList.append(id);
+            }
+            parameters.put("ids", idList.toString());
+        }
+        if (fromDate != null) {
+            parameters.put("from-date", fromDate);
+        }
+        if (toDate != null) {
+            parameters.put("to-date", toDate);
+        }
+        if (orderBy != null) {
+            parameters.put("order-by", orderBy.value);
+        }
+        if (paged && page > 1) {
+            parameters.put("page", String.valueOf(page));
+        }
+
+        StringBuilder url = new StringBuilder(SEARCH_URL);
+        char separator = '?';
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            url.append(separator).append(parameter.getKey()).append('=').append(encode(parameter.getValue()));
+            separator = '&';
+        }
+        return url.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof GuardianQuery && toUrl().equals(((GuardianQuery) o).toUrl());
+    }
+
+    @Override
+    public int hashCode() {
+        return toUrl().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return toUrl();
+    }
+
+    /**
+     * Returns the content id of the given webUrl, its path without the leading slash,
+     * or null if it is not a URL of theguardian website.
+     */
+    public static String idOf(String webUrl) {
+        int schemeEnd = webUrl.indexOf("://");
+        int pathStart = schemeEnd == -1 ? -1 : webUrl.indexOf('/', schemeEnd + 3);
+        if (pathStart == -1 || !webUrl.substring(schemeEnd + 3, pathStart).endsWith("theguardian.com")) {
+            return null;
+        }
+        int pathEnd = webUrl.length();
+        for (char c : new char[]{'?', '#'}) {
+            int index = webUrl.indexOf(c, pathStart);
+            if (index != -1) {
+                pathEnd = Math.min(pathEnd, index);
+            }
+        }
+        return pathEnd > pathStart + 1 ? webUrl.substring(pathStart + 1, pathEnd) : null;
+    }
+
+    private static String encode(String value) {
+        try {
+            // URLEncoder encodes forms, where spaces are "+"
+            return URLEncoder.encode(value, "UTF-8").replace("+", "%20").replace("*", "%2A").replace("%7E", "~");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Builds a {@link GuardianQuery}, only the API key is required.
+     */
+    public static final class Builder {
+        private String apiKey;
+        private String keyword = "";
+        private final TreeSet<String> sections = new TreeSet<>();
+        private String tag;
+        private final TreeSet<String> ids = new TreeSet<>();
+        private boolean showBody;
+        private String fromDate;
+        private String toDate;
+        private OrderBy orderBy;
+        private int page = 1;
+        private int pageSize = 10;
+
+        public Builder apiKey(String apiKey) {
+            this.apiKey = apiKey;
+            return this;
+        }
+
+        /**
+         * Sets the keyword searched, null or empty to search everything.
+         */
+        public Builder keyword(String keyword) {
+            this.keyword = keyword == null ? "" : keyword.trim();
+            return this;
+        }
+
+        /**
+         * Restricts the results to a section id, e.g. "world", null for every section.
+         */
+        public Builder section(String section) {
+            this.sections.clear();
+            if (section != null) {
+                this.sections.add(section);
+            }
+            return this;
+        }
+
+        /**
+         * Restricts the results to any of the given section ids, empty for every section.
+         */
+        public Builder sections(Collection<String> sections) {
+            this.sections.clear();
+            this.sections.addAll(sections);
+            return this;
+        }
+
+        /**
+         * Restricts the results to a tag id, e.g. "environment/climate-change", null for any tag.
+         */
+        public Builder tag(String tag) {
+            this.tag = tag;
+            return this;
+        }
+
+        /**
+         * Restricts the results to the given content ids, e.g. "world/2018/oct/17/some-news",
+         * empty for any content. See {@link #idOf(String)}.
+         */
+        public Builder ids(Collection<String> ids) {
+            this.ids.clear();
+            this.ids.addAll(ids);
+            return this;
+        }
+
+        /**
+         * Sets whether the results come with the HTML body of the articles,
+         * read with {@link NewsJsonParser#parseBodies(java.io.Reader)}.
+         */
+        public Builder showBody(boolean showBody) {
+            this.showBody = showBody;
+            return this;
+        }
+
+        /**
+         * Only returns the content published from the given day on.
+         *
+         * @param month from 1 to 12
+         */
+        public Builder fromDate(int year, int month, int dayOfMonth) {
+            this.fromDate = formatDate(year, month, dayOfMonth);
+            return this;
+        }
+
+        /**
+         * Only returns the content published until the given day included.
+         *
+         * @param month from 1 to 12
+         */
+        public Builder toDate(int year, int month, int dayOfMonth) {
+            this.toDate = formatDate(year, month, dayOfMonth);
+            return this;
+        }
+
+        /**
+         * Sets the order of the results, null for the default of the server.
+         */
+        public Builder orderBy(OrderBy orderBy) {
+            this.orderBy = orderBy;
+            return this;
+        }
+
+        /**
+         * Sets the page, starting at 1.
+         */
+        public Builder page(int page) {
+            if (page < 1) {
+                throw new IllegalArgumentException("page " + page + " < 1");
+            }
+            this.page = page;
+            return this;
+        }
+
+        public Builder pageSize(int pageSize) {
+            if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("page size " + pageSize + " not in [1, " + MAX_PAGE_SIZE + "]");
+            }
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * @throws IllegalStateException if the API key is missing or the date range is empty
+         */
+        public GuardianQuery build() {
+            if (apiKey == null || apiKey.isEmpty()) {
+                throw new IllegalStateException("The API key is required");
+            }
+            // The dates are formatted yyyy-MM-dd so they compare like strings
+            if (fromDate != null && toDate != null && fromDate.compareTo(toDate) > 0) {
+                throw new IllegalStateException("from-date " + fromDate + " is after to-date " + toDate);
+            }
+            return new GuardianQuery(this);
+        }
+
+        private static String formatDate(int year, int month, int dayOfMonth) {
+            if (year < 1000 || year > 9999 || month < 1 || month > 12 || dayOfMonth < 1 || dayOfMonth > 31) {
+                throw new IllegalArgumentException("Invalid date " + year + "-" + month + "-" + dayOfMonth);
+            }
+            return String.format(Locale.US, "%04d-%02d-%02d", year, month, dayOfMonth);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.dormitantis.newsapp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Performs the HTTP requests of the app.
+ * <p>
+ * {@link UrlConnectionTransport} is the default implementation. Another HTTP client, e.g. one
+ * speaking HTTP/2, can be plugged in by implementing this interface and handing it to
+ * {@code QueryUtils.setTransport} of the app.
+ */
+public interface HttpTransport {
+
+    /**
+     * Performs a GET request. This is a blocking call.
+     * <p>
+     * The returned response must be closed, which gives its connection back for reuse.
+     *
+     * @param url     the URL to request
+     * @param headers the request headers, may be empty
+     * @param token   to cancel the request with from another thread
+     * @throws IOException if no response could be received
+     */
+    Response get(String url, Map<String, String> headers, CancellationToken token) throws IOException;
+
+    /**
+     * A response whose body has not been read yet.
+     */
+    interface Response extends Closeable {
+
+        /**
+         * Returns the status code of the response.
+         */
+        int getCode();
+
+        /**
+         * Returns the value of the given header, or null if the response does not have it.
+         */
+        String getHeader(String name);
+
+        /**
+         * Returns the decoded body of the response.
+         */
+        InputStream getBody() throws IOException;
+    }
+}
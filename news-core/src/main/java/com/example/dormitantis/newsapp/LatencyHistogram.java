@@ -0,0 +1,123 @@
+package com.example.dormitantis.newsapp;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations, cheap enough to record every stage of every load.
+ * <p>
+ * Durations are counted in microseconds in log-linear buckets: exact up to 16µs, then
+ * 16 buckets per power of two, so a percentile is off by less than 1/16 of its value.
+ * Recording is a couple of atomic increments without any lock or allocation, and can happen
+ * from any thread while the percentiles are being read.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Buckets per power of two, as a number of bits
+     */
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Longest duration told apart from the longer ones, about 19 hours
+     */
+    private static final long MAX_MICROS = (1L << 36) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(indexOf(MAX_MICROS) + 1);
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Records a duration given in nanoseconds, negative ones count as 0.
+     */
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    /**
+     * Records a duration given in microseconds, negative ones count as 0.
+     */
+    public void recordMicros(long micros) {
+        micros = Math.max(0, Math.min(micros, MAX_MICROS));
+        counts.incrementAndGet(indexOf(micros));
+        totalMicros.addAndGet(micros);
+        long max = maxMicros.get();
+        while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get();
+        }
+    }
+
+    /**
+     * Returns the number of durations recorded.
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the mean of the durations recorded, 0 if there are none.
+     */
+    public long getMeanMicros() {
+        long count = getCount();
+        return count == 0 ? 0 : totalMicros.get() / count;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * Returns the duration the given percentage of the recorded ones do not exceed,
+     * rounded up to the top of its bucket, 0 if nothing was recorded.
+     *
+     * @param percentile from 0 to 100
+     */
+    public long getPercentileMicros(double percentile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestMicrosOf(i), maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    /**
+     * Forgets everything recorded so far. The durations recorded meanwhile may be partly lost.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        totalMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (micros >> shift) - SUB_BUCKETS;
+    }
+
+    static long highestMicrosOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.dormitantis.newsapp;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link News} object contains information related to each news.
+ * <p>
+ * Thousands of news are held at once, so a news is kept compact: the section and the
+ * authors are shared with the other news through {@link StringPool}, the authors are kept
+ * as a plain array, and the text displaying them is only built when it is first asked for.
+ */
+public class News {
+
+    /**
+     * Separates the authors in the displayed text
+     */
+    private static final String AUTHOR_SEPARATOR = ",\n";
+
+    private static final String[] NO_AUTHORS = new String[0];
+
+    private final String web;
+    private final String title;
+    private final String section;
+    private final String[] authors;
+    private final String thumbnail;
+
+    /**
+     * Milliseconds since the epoch, 0 when unknown
+     */
+    private final long publishedAt;
+
+    /**
+     * The authors as displayed, built on first use
+     */
+    private String authorsText;
+
+    /**
+     * Constructs a new {@link News} object.
+     *
+     * @param web       is the webUrl of the news
+     * @param title     is the headline of the news
+     * @param section   is the section the news refers to
+     * @param authors   is the list of the names of the authors
+     * @param thumbnail is the URL of the thumbnail of the news, empty if it has none
+     */
+    public News(String web, String title, String section, List<String> authors, String thumbnail) {
+        this(web, title, section, authors, thumbnail, 0);
+    }
+
+    /**
+     * Constructs a new {@link News} object.
+     *
+     * @param web         is the webUrl of the news
+     * @param title       is the headline of the news
+     * @param section     is the section the news refers to
+     * @param authors     is the list of the names of the authors
+     * @param thumbnail   is the URL of the thumbnail of the news, empty if it has none
+     * @param publishedAt is when the news was published in milliseconds since the epoch, 0 if unknown
+     */
+    public News(String web, String title, String section, List<String> authors, String thumbnail,
+                long publishedAt) {
+        this.web = web;
+        this.thumbnail = thumbnail;
+        this.publishedAt = publishedAt;
+        this.title = title;
+        this.section = StringPool.intern(section);
+        if (authors.isEmpty()) {
+            this.authors = NO_AUTHORS;
+        } else {
+            this.authors = new String[authors.size()];
+            for (int i = 0; i < this.authors.length; i++) {
+                this.authors[i] = StringPool.intern(authors.get(i));
+            }
+        }
+    }
+
+    /**
+     * Constructs a new {@link News} object.
+     *
+     * @param web     is the webUrl of the news
+     * @param title   is the headline of the news
+     * @param section is the section the news refers to
+     * @param authors is the string containing names of all authors as displayed,
+     *                see {@link #getAuthorsText()}
+     */
+    public News(String web, String title, String section, String authors) {
+        this(web, title, section, authors, "");
+    }
+
+    /**
+     * Constructs a new {@link News} object.
+     *
+     * @param web       is the webUrl of the news
+     * @param title     is the headline of the news
+     * @param section   is the section the news refers to
+     * @param authors   is the string containing names of all authors as displayed,
+     *                  see {@link #getAuthorsText()}
+     * @param thumbnail is the URL of the thumbnail of the news, empty if it has none
+     */
+    public News(String web, String title, String section, String authors, String thumbnail) {
+        this(web, title, section, authors, thumbnail, 0);
+    }
+
+    /**
+     * Constructs a new {@link News} object.
+     *
+     * @param web         is the webUrl of the news
+     * @param title       is the headline of the news
+     * @param section     is the section the news refers to
+     * @param authors     is the string containing names of all authors as displayed,
+     *                    see {@link #getAuthorsText()}
+     * @param thumbnail   is the URL of the thumbnail of the news, empty if it has none
+     * @param publishedAt is when the news was published in milliseconds since the epoch, 0 if unknown
+     */
+    public News(String web, String title, String section, String authors, String thumbnail, long publishedAt) {
+        this(web, title, section, authors.isEmpty()
+                        ? Collections.<String>emptyList() : Arrays.asList(authors.split(AUTHOR_SEPARATOR)),
+                thumbnail, publishedAt);
+    }
+
+    public String getWeb() {
+        return web;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getSection() {
+        return section;
+    }
+
+    /**
+     * Returns the URL of the thumbnail of the news, empty if it has none.
+     */
+    public String getThumbnail() {
+        return thumbnail;
+    }
+
+    /**
+     * Returns when the news was published in milliseconds since the epoch, 0 if unknown.
+     */
+    public long getPublishedAt() {
+        return publishedAt;
+    }
+
+    /**
+     * Returns the names of the authors, in byline order.
+     */
+    public List<String> getAuthors() {
+        return Collections.unmodifiableList(Arrays.asList(authors));
+    }
+
+    /**
+     * Returns the names of all authors separated by comma, one per line.
+     */
+    public String getAuthorsText() {
+        String text = authorsText;
+        if (text == null) {
+            if (authors.length == 1) {
+                text = authors[0];
+            } else {
+                StringBuilder builder = new StringBuilder();
+                for (String author : authors) {
+                    if (builder.length() > 0) {
+                        builder.append(AUTHOR_SEPARATOR);
+                    }
+                    builder.append(author);
+                }
+                text = builder.toString();
+            }
+            authorsText = text;
+        }
+        return text;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        News news = (News) o;
+        return web.equals(news.web) && title.equals(news.title)
+                && section.equals(news.section) && Arrays.equals(authors, news.authors)
+                && thumbnail.equals(news.thumbnail) && publishedAt == news.publishedAt;
+    }
+
+    @Override
+    public int hashCode() {
+        return web.hashCode();
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.dormitantis.newsapp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Groups the news handed by {@link NewsJsonParser} into batches for a consumer running on
+ * another thread, typically the main thread, so the first news show while the rest of the
+ * response is still being downloaded.
+ * <p>
+ * The first batch is small so it comes early, the following ones grow up to a maximum.
+ * Only one batch is handed over at a time: until the consumer calls {@link #batchConsumed()},
+ * the news keep piling up into the next batch instead of flooding it. Whatever is left when
+ * the response ends is never handed over, the caller delivers the whole list anyway.
+ */
+public final class NewsBatcher implements NewsJsonParser.OnNewsParsedListener {
+
+    /**
+     * Receives the batches, on the parsing thread.
+     */
+    public interface Consumer {
+        /**
+         * Takes over the given batch. {@link NewsBatcher#batchConsumed()} must be called
+         * once it was applied, from any thread, for the next batch to come.
+         */
+        void onBatch(NewsBatcher batcher, List<News> batch);
+    }
+
+    private final Consumer consumer;
+    private final int maxBatchSize;
+    private final AtomicBoolean batchInFlight = new AtomicBoolean();
+
+    private int batchSize;
+    private List<News> pending = new ArrayList<>();
+
+    /**
+     * Constructs a new {@link NewsBatcher}.
+     *
+     * @param firstBatchSize the number of news of the first batch, e.g. a screenful
+     * @param maxBatchSize   the number of news the batches grow up to
+     * @param consumer       to hand the batches to
+     */
+    public NewsBatcher(int firstBatchSize, int maxBatchSize, Consumer consumer) {
+        this.batchSize = firstBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.consumer = consumer;
+    }
+
+    @Override
+    public void onNewsParsed(News news) {
+        pending.add(news);
+        if (pending.size() >= batchSize && batchInFlight.compareAndSet(false, true)) {
+            List<News> batch = pending;
+            pending = new ArrayList<>();
+            batchSize = Math.min(batchSize * 2, maxBatchSize);
+            consumer.onBatch(this, batch);
+        }
+    }
+
+    /**
+     * Lets the next batch be handed over.
+     */
+    public void batchConsumed() {
+        batchInFlight.set(false);
+    }
+}
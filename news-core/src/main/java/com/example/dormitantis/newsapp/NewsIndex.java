@@ -0,0 +1,265 @@
+package com.example.dormitantis.newsapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * In-memory inverted index of the words of the title, section and authors of {@link News},
+ * so the news already on the device matching a keyword are found without the network.
+ * <p>
+ * Words go through the same {@link #normalize(String)} as the queries sent to theguardian.
+ * A query matches the news having, for each of its words, a word starting with it.
+ * News are added as they arrive and the oldest ones are dropped once the index is full.
+ * All the methods are thread safe.
+ */
+public final class NewsIndex {
+
+    /**
+     * Number of news kept by default, a few dozen queries worth of pages
+     */
+    public static final int DEFAULT_MAX_DOCUMENTS = 5000;
+
+    private final int maxDocuments;
+
+    /**
+     * The indexed news by id, null once removed. Ids grow as news are added,
+     * so the most recent news have the highest ones.
+     */
+    private final List<News> documents = new ArrayList<>();
+
+    private final Map<String, Integer> idsByWeb = new HashMap<>();
+
+    /**
+     * The sorted ids of the news having each word, sorted by word for the prefix lookups
+     */
+    private final TreeMap<String, Postings> postings = new TreeMap<>();
+
+    private int documentCount;
+
+    /**
+     * Lowest id that may still be in use
+     */
+    private int oldestId;
+
+    /**
+     * Constructs a new {@link NewsIndex}.
+     *
+     * @param maxDocuments number of news kept, the oldest ones are dropped beyond it
+     */
+    public NewsIndex(int maxDocuments) {
+        this.maxDocuments = maxDocuments;
+    }
+
+    /**
+     * Remove the punctuation from the given text, lower case it and collapse the spaces,
+     * so the same keyword always produces the same query whatever way it was typed.
+     */
+    public static String normalize(String text) {
+        return text.replaceAll("[^a-zA-Z0-9 ]", " ").toLowerCase().replaceAll(" +", " ").trim();
+    }
+
+    /**
+     * Indexes the given news, replacing the ones with the same webUrl.
+     */
+    public synchronized void addAll(List<News> newsList) {
+        for (News news : newsList) {
+            add(news);
+        }
+    }
+
+    /**
+     * Returns the number of news in the index.
+     */
+    public synchronized int size() {
+        return documentCount;
+    }
+
+    /**
+     * Returns the indexed news matching the given query, most recently added first.
+     * An empty query matches nothing.
+     *
+     * @param query the keyword as typed or normalized
+     * @param limit the maximum number of news returned
+     */
+    public synchronized List<News> search(String query, int limit) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        BitSet matches = null;
+        for (String term : normalized.split(" ")) {
+            BitSet termMatches = new BitSet(documents.size());
+            for (Postings termPostings : postings.subMap(term, term + Character.MAX_VALUE).values()) {
+                termPostings.addTo(termMatches);
+            }
+            if (matches == null) {
+                matches = termMatches;
+            } else {
+                matches.and(termMatches);
+            }
+            if (matches.isEmpty()) {
+                return Collections.emptyList();
+            }
+        }
+
+        int[] ids = new int[matches.cardinality()];
+        int count = 0;
+        for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+            ids[count++] = id;
+        }
+        List<News> results = new ArrayList<>(Math.min(limit, count));
+        for (int i = count - 1; i >= 0 && results.size() < limit; i--) {
+            results.add(documents.get(ids[i]));
+        }
+        return results;
+    }
+
+    private void add(News news) {
+        Integer existingId = idsByWeb.get(news.getWeb());
+        if (existingId != null) {
+            News existing = documents.get(existingId);
+            if (!existing.equals(news)) {
+                unindex(existingId, existing);
+                documents.set(existingId, news);
+                index(existingId, news);
+            }
+            return;
+        }
+
+        if (documents.size() >= maxDocuments * 2) {
+            compact();
+        }
+        int id = documents.size();
+        documents.add(news);
+        idsByWeb.put(news.getWeb(), id);
+        documentCount++;
+        index(id, news);
+
+        while (documentCount > maxDocuments) {
+            removeOldest();
+        }
+    }
+
+    private void removeOldest() {
+        while (documents.get(oldestId) == null) {
+            oldestId++;
+        }
+        News news = documents.get(oldestId);
+        unindex(oldestId, news);
+        documents.set(oldestId, null);
+        idsByWeb.remove(news.getWeb());
+        documentCount--;
+    }
+
+    /**
+     * Gives new ids to the news left, so the removed ones stop taking room.
+     */
+    private void compact() {
+        List<News> remaining = new ArrayList<>(documentCount);
+        for (int id = oldestId; id < documents.size(); id++) {
+            if (documents.get(id) != null) {
+                remaining.add(documents.get(id));
+            }
+        }
+        documents.clear();
+        idsByWeb.clear();
+        postings.clear();
+        documentCount = 0;
+        oldestId = 0;
+        for (News news : remaining) {
+            add(news);
+        }
+    }
+
+    private void index(int id, News news) {
+        for (String word : wordsOf(news)) {
+            Postings wordPostings = postings.get(word);
+            if (wordPostings == null) {
+                wordPostings = new Postings();
+                postings.put(word, wordPostings);
+            }
+            wordPostings.add(id);
+        }
+    }
+
+    private void unindex(int id, News news) {
+        for (String word : wordsOf(news)) {
+            Postings wordPostings = postings.get(word);
+            if (wordPostings != null && wordPostings.remove(id) && wordPostings.isEmpty()) {
+                postings.remove(word);
+            }
+        }
+    }
+
+    /**
+     * Returns the normalized words the given news is found by: those of its title,
+     * its section and every one of its authors.
+     */
+    public static Set<String> wordsOf(News news) {
+        Set<String> words = new LinkedHashSet<>();
+        addWords(words, news.getTitle());
+        addWords(words, news.getSection());
+        for (String author : news.getAuthors()) {
+            addWords(words, author);
+        }
+        return words;
+    }
+
+    private static void addWords(Set<String> words, String text) {
+        String normalized = normalize(text);
+        if (!normalized.isEmpty()) {
+            words.addAll(Arrays.asList(normalized.split(" ")));
+        }
+    }
+
+    /**
+     * Sorted list of ids, backed by a growing array.
+     */
+    private static final class Postings {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            ids[index] = id;
+            size++;
+        }
+
+        boolean remove(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void addTo(BitSet bits) {
+            for (int i = 0; i < size; i++) {
+                bits.set(ids[i]);
+            }
+        }
+    }
+}
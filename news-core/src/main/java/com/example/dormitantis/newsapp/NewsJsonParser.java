@@ -0,0 +1,294 @@
+package com.example.dormitantis.newsapp;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming parser for theguardian search responses.
+ * <p>
+ * The parser walks {@code response.results[]} token by token and hands every {@link News}
+ * to the listener as soon as it is complete, so neither the whole body nor a JSON tree
+ * is ever held in memory. Fields the app does not display are skipped without being read.
+ */
+public final class NewsJsonParser {
+
+    /**
+     * The only field read out of "fields", what the requests should ask for with show-fields
+     */
+    public static final String SHOWN_FIELDS = "thumbnail";
+
+    /**
+     * The field holding the HTML body of an article, see {@link #parseBodies(Reader)}
+     */
+    public static final String BODY_FIELD = "body";
+
+    /**
+     * The only tags read, what the requests should ask for with show-tags
+     */
+    public static final String SHOWN_TAGS = "contributor";
+
+    /**
+     * Receives every {@link News} object as soon as it has been parsed.
+     */
+    public interface OnNewsParsedListener {
+        void onNewsParsed(News news);
+    }
+
+    private NewsJsonParser() {
+    }
+
+    /**
+     * Parse the whole response and return the list of {@link News} objects it contains.
+     */
+    public static List<News> parse(Reader in) throws IOException {
+        final List<News> newsList = new ArrayList<>();
+        parse(in, new OnNewsParsedListener() {
+            @Override
+            public void onNewsParsed(News news) {
+                newsList.add(news);
+            }
+        });
+        return newsList;
+    }
+
+    /**
+     * Parse the response and pass each {@link News} to the given listener one at a time.
+     *
+     * @throws IOException           if the stream could not be read or is not valid JSON
+     * @throws IllegalStateException if the JSON does not have the expected structure
+     */
+    public static void parse(Reader in, OnNewsParsedListener listener) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("response")) {
+                    readResponse(reader, listener);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Parse the response of a query showing the bodies and return them by webUrl.
+     * The results without a body are left out.
+     *
+     * @throws IOException           if the stream could not be read or is not valid JSON
+     * @throws IllegalStateException if the JSON does not have the expected structure
+     */
+    public static Map<String, String> parseBodies(Reader in) throws IOException {
+        Map<String, String> bodies = new HashMap<>();
+        JsonReader reader = new JsonReader(in);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("response")) {
+                    readBodies(reader, bodies);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+        return bodies;
+    }
+
+    private static void readBodies(JsonReader reader, Map<String, String> bodies) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("results")) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String web = "";
+                String body = "";
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (name.equals("webUrl")) {
+                        web = nextString(reader);
+                    } else if (name.equals("fields")) {
+                        body = readField(reader, BODY_FIELD);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                if (!web.isEmpty() && !body.isEmpty()) {
+                    bodies.put(web, body);
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+
+    private static void readResponse(JsonReader reader, OnNewsParsedListener listener) throws IOException {
+        // The authors of every news are collected in the same list, News keeps its own copy
+        List<String> authors = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("results")) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    listener.onNewsParsed(readNews(reader, authors));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static News readNews(JsonReader reader, List<String> authors) throws IOException {
+        String web = "";
+        String title = "";
+        String section = "";
+        String thumbnail = "";
+        long publishedAt = 0;
+        authors.clear();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "webUrl":
+                    web = nextString(reader);
+                    break;
+                case "webTitle":
+                    title = nextString(reader);
+                    break;
+                case "sectionName":
+                    section = nextString(reader);
+                    break;
+                case "webPublicationDate":
+                    publishedAt = parseTimestamp(nextString(reader));
+                    break;
+                case "tags":
+                    readAuthors(reader, authors);
+                    break;
+                case "fields":
+                    thumbnail = readField(reader, "thumbnail");
+                    break;
+                default:
+                    // "apiUrl", "pillarName" and the like are not displayed,
+                    // so they are skipped without building any strings.
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return new News(web, title, section, authors, thumbnail, publishedAt);
+    }
+
+    /**
+     * Parse a UTC timestamp the way theguardian writes them, e.g. "2018-10-17T05:00:08Z",
+     * into milliseconds since the epoch. Returns 0 if it is in any other format.
+     */
+    static long parseTimestamp(String timestamp) {
+        if (timestamp.length() != 20 || timestamp.charAt(4) != '-' || timestamp.charAt(7) != '-'
+                || timestamp.charAt(10) != 'T' || timestamp.charAt(13) != ':' || timestamp.charAt(16) != ':'
+                || timestamp.charAt(19) != 'Z') {
+            return 0;
+        }
+        int year = digits(timestamp, 0, 4);
+        int month = digits(timestamp, 5, 7);
+        int day = digits(timestamp, 8, 10);
+        int hours = digits(timestamp, 11, 13);
+        int minutes = digits(timestamp, 14, 16);
+        int seconds = digits(timestamp, 17, 19);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31
+                || hours < 0 || hours > 23 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 60) {
+            return 0;
+        }
+        // Days from the civil date, counting years from March so the leap day comes last
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = era * 146097L + dayOfEra - 719468;
+        return ((days * 24 + hours) * 60 + minutes) * 60000L + seconds * 1000L;
+    }
+
+    /**
+     * Returns the number written in the given part of the string, -1 if it is not only digits.
+     */
+    private static int digits(String string, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = string.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    /**
+     * Read the given field out of the fields, skipping the other ones. Returns an empty
+     * string if it is missing.
+     */
+    private static String readField(JsonReader reader, String field) throws IOException {
+        String value = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(field)) {
+                value = nextString(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return value;
+    }
+
+    /**
+     * Read the contributor tags and add their names to the given list, in byline order.
+     */
+    private static void readAuthors(JsonReader reader, List<String> authors) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String currentAuthor = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("webTitle")) {
+                    currentAuthor = nextString(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (currentAuthor != null && !currentAuthor.isEmpty()) {
+                authors.add(currentAuthor);
+            }
+        }
+        reader.endArray();
+    }
+
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return "";
+        }
+        return reader.nextString();
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.dormitantis.newsapp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps news on disk, so they do not have to stay on the heap.
+ * <p>
+ * The news are appended one after the other to a single file, each as its length followed by
+ * its fields, and read back from the offset returned when they were written. A news is never
+ * rewritten in place: a replaced news is simply appended again and the older copy is left
+ * behind until the file is cleared.
+ * <p>
+ * Every news is written with a single call, and read through a buffer of the file, so reading
+ * back the news spilled one after the other only takes a call every few dozens of them.
+ * All the methods are thread safe.
+ */
+public final class NewsPageFile {
+
+    /**
+     * Size of the read buffer, a few dozens of news
+     */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final File file;
+    private RandomAccessFile data;
+    private boolean closed;
+
+    /**
+     * Size of the file, so it does not have to be asked for
+     */
+    private long end;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * Offset in the file of the first byte of the buffer
+     */
+    private long bufferStart;
+
+    /**
+     * Number of bytes of the file in the buffer
+     */
+    private int bufferLength;
+
+    /**
+     * Constructs a new {@link NewsPageFile}, the file is only created when the first news is written.
+     */
+    public NewsPageFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Writes the given news at the end of the file.
+     *
+     * @return the offset to read the news back from
+     */
+    public synchronized long append(News news) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        // Room for the length, filled in below
+        out.writeInt(0);
+        out.writeUTF(news.getWeb());
+        out.writeUTF(news.getTitle());
+        out.writeUTF(news.getSection());
+        out.writeUTF(news.getThumbnail());
+        out.writeLong(news.getPublishedAt());
+        List<String> authors = news.getAuthors();
+        out.writeShort(authors.size());
+        for (String author : authors) {
+            out.writeUTF(author);
+        }
+        out.flush();
+        byte[] record = bytes.toByteArray();
+        int length = record.length - 4;
+        record[0] = (byte) (length >>> 24);
+        record[1] = (byte) (length >>> 16);
+        record[2] = (byte) (length >>> 8);
+        record[3] = (byte) length;
+
+        RandomAccessFile data = open();
+        long offset = end;
+        data.seek(offset);
+        data.write(record);
+        end += record.length;
+        return offset;
+    }
+
+    /**
+     * Reads the news written at the given offset.
+     */
+    public synchronized News read(long offset) throws IOException {
+        if (offset < 0 || offset + 4 > end) {
+            throw new IOException("No news at " + offset);
+        }
+        int start = buffer(offset, 4);
+        int length = ((buffer[start] & 0xff) << 24) | ((buffer[start + 1] & 0xff) << 16)
+                | ((buffer[start + 2] & 0xff) << 8) | (buffer[start + 3] & 0xff);
+        if (length < 0 || offset + 4 + length > end) {
+            throw new IOException("No news at " + offset);
+        }
+
+        InputStream record;
+        if (4 + length <= BUFFER_SIZE) {
+            start = buffer(offset, 4 + length);
+            record = new ByteArrayInputStream(buffer, start + 4, length);
+        } else {
+            // Larger than the buffer, read on its own
+            byte[] bytes = new byte[length];
+            data.seek(offset + 4);
+            data.readFully(bytes);
+            record = new ByteArrayInputStream(bytes);
+        }
+        DataInputStream in = new DataInputStream(record);
+        String web = in.readUTF();
+        String title = in.readUTF();
+        String section = in.readUTF();
+        String thumbnail = in.readUTF();
+        long publishedAt = in.readLong();
+        int authorCount = in.readUnsignedShort();
+        List<String> authors = new ArrayList<>(authorCount);
+        for (int i = 0; i < authorCount; i++) {
+            authors.add(in.readUTF());
+        }
+        return new News(web, title, section, authors, thumbnail, publishedAt);
+    }
+
+    /**
+     * Returns the size of the file in bytes.
+     */
+    public synchronized long length() {
+        return end;
+    }
+
+    /**
+     * Forgets every news written so far, the offsets returned before are no longer valid.
+     */
+    public synchronized void clear() throws IOException {
+        if (data != null) {
+            data.setLength(0);
+        }
+        end = 0;
+        bufferLength = 0;
+    }
+
+    /**
+     * Closes and deletes the file, nothing can be written or read afterwards.
+     */
+    public synchronized void close() throws IOException {
+        closed = true;
+        end = 0;
+        bufferLength = 0;
+        if (data != null) {
+            data.close();
+            data = null;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    /**
+     * Makes sure the given range of the file is in the buffer, filling it from the start
+     * of the range if it is not.
+     *
+     * @return the position of the range in the buffer
+     */
+    private int buffer(long offset, int length) throws IOException {
+        if (offset < bufferStart || offset + length > bufferStart + bufferLength) {
+            RandomAccessFile data = open();
+            bufferLength = 0;
+            bufferStart = offset;
+            data.seek(offset);
+            int count = (int) Math.min(BUFFER_SIZE, end - offset);
+            data.readFully(buffer, 0, count);
+            bufferLength = count;
+        }
+        return (int) (offset - bufferStart);
+    }
+
+    private RandomAccessFile open() throws IOException {
+        if (closed) {
+            throw new IOException("Closed");
+        }
+        if (data == null) {
+            File directory = file.getParentFile();
+            if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create the directory " + directory);
+            }
+            data = new RandomAccessFile(file, "rw");
+            // Whatever a previous run left is of no use
+            data.setLength(0);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.dormitantis.newsapp;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Times the stages of the loading of the news, from the URL being built to the first frame
+ * showing them, then the opening of an article, in one {@link LatencyHistogram} per stage. The bytes received and the lookups
+ * of the response cache are counted too.
+ * <p>
+ * A stage timed with {@link #begin(Stage)} and {@link #end(Stage, long)} is also reported
+ * to the {@link SectionListener}, so it shows up in systrace. All the methods are thread safe.
+ */
+public final class PipelineTracer {
+
+    /**
+     * The stages of a load, in the order they happen.
+     */
+    public enum Stage {
+        URL_BUILD("url build"),
+        CONNECT("connect"),
+        FIRST_BYTE("first byte"),
+        BODY_READ("body read"),
+        PARSE("json parse"),
+        BIND("adapter bind"),
+        FIRST_FRAME("first frame"),
+        READER_OPEN("reader open"),
+        BROWSER_WARM("browser warm"),
+        BROWSER_COLD("browser cold");
+
+        private final String label;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        Stage(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * Receives the beginning and end of the stages, on the thread running them.
+     */
+    public interface SectionListener {
+        void beginSection(String name);
+
+        void endSection();
+    }
+
+    private static final AtomicLong wireBytes = new AtomicLong();
+    private static final AtomicLong bodyBytes = new AtomicLong();
+    private static final AtomicLong responses = new AtomicLong();
+    private static final AtomicLong cacheHits = new AtomicLong();
+    private static final AtomicLong cacheMisses = new AtomicLong();
+
+    private static volatile SectionListener sectionListener;
+
+    private PipelineTracer() {
+    }
+
+    /**
+     * Sets the listener the stages are reported to, e.g. one emitting systrace sections.
+     */
+    public static void setSectionListener(SectionListener listener) {
+        sectionListener = listener;
+    }
+
+    /**
+     * Starts timing a stage on the current thread.
+     *
+     * @return the start of the stage, to hand to {@link #end(Stage, long)}
+     */
+    public static long begin(Stage stage) {
+        SectionListener listener = sectionListener;
+        if (listener != null) {
+            listener.beginSection(stage.label);
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the stage started at the given time, on the thread that started it.
+     */
+    public static void end(Stage stage, long startNanos) {
+        end(stage, startNanos, 0);
+    }
+
+    /**
+     * Records the stage started at the given time, minus the given time spent in another stage.
+     */
+    public static void end(Stage stage, long startNanos, long excludedNanos) {
+        stage.histogram.recordNanos(System.nanoTime() - startNanos - excludedNanos);
+        SectionListener listener = sectionListener;
+        if (listener != null) {
+            listener.endSection();
+        }
+    }
+
+    /**
+     * Records a stage timed by the caller, e.g. one spanning several threads or messages.
+     */
+    public static void record(Stage stage, long nanos) {
+        stage.histogram.recordNanos(nanos);
+    }
+
+    /**
+     * Counts the bytes of a response body.
+     *
+     * @param wire as received
+     * @param body once decompressed
+     */
+    public static void recordResponse(long wire, long body) {
+        responses.incrementAndGet();
+        wireBytes.addAndGet(wire);
+        bodyBytes.addAndGet(body);
+    }
+
+    /**
+     * Counts a lookup of the response cache. A response revalidated with a 304
+     * is a hit, since no body had to be downloaded.
+     */
+    public static void recordCacheLookup(boolean hit) {
+        (hit ? cacheHits : cacheMisses).incrementAndGet();
+    }
+
+    public static LatencyHistogram getHistogram(Stage stage) {
+        return stage.histogram;
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public static void reset() {
+        for (Stage stage : Stage.values()) {
+            stage.histogram.reset();
+        }
+        wireBytes.set(0);
+        bodyBytes.set(0);
+        responses.set(0);
+        cacheHits.set(0);
+        cacheMisses.set(0);
+    }
+
+    /**
+     * Returns a plain text table of the percentiles of every stage, in milliseconds,
+     * followed by the bytes and the cache hit rate.
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "%-13s%7s%9s%9s%9s%9s%n",
+                "stage (ms)", "count", "p50", "p95", "p99", "max"));
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = stage.histogram;
+            report.append(String.format(Locale.US, "%-13s%7d%9.2f%9.2f%9.2f%9.2f%n",
+                    stage.label, histogram.getCount(),
+                    histogram.getPercentileMicros(50) / 1000.0,
+                    histogram.getPercentileMicros(95) / 1000.0,
+                    histogram.getPercentileMicros(99) / 1000.0,
+                    histogram.getMaxMicros() / 1000.0));
+        }
+
+        long wire = wireBytes.get();
+        long body = bodyBytes.get();
+        report.append(String.format(Locale.US, "%nresponses    %7d%nwire bytes   %7d%nbody bytes   %7d%n",
+                responses.get(), wire, body));
+        if (body > 0) {
+            report.append(String.format(Locale.US, "compression  %6.1f%%%n", 100.0 * wire / body));
+        }
+
+        long hits = cacheHits.get();
+        long lookups = hits + cacheMisses.get();
+        report.append(String.format(Locale.US, "cache hits   %7d / %d", hits, lookups));
+        if (lookups > 0) {
+            report.append(String.format(Locale.US, " (%.1f%%)", 100.0 * hits / lookups));
+        }
+        report.append(String.format(Locale.US, "%n"));
+        return report.toString();
+    }
+}
@@ -0,0 +1,364 @@
+package com.example.dormitantis.newsapp;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.TimeZone;
+
+/**
+ * Keeps the requests of the app within the quotas of the API key: a number of calls
+ * per second and a number of calls per day.
+ * <p>
+ * The calls per second are spent from a token bucket. The requests waiting for a token are
+ * served by {@link Priority}, then in arrival order, so what the user waits for overtakes the
+ * prefetches. A throttled response pauses every request for as long as its Retry-After says.
+ * Once most of the day's calls are spent, the remaining ones are kept for the user visible
+ * requests. The calls of the day are counted in a {@link QuotaStore}, if one is set, so
+ * the quota holds across restarts of the process. All the methods are thread safe.
+ */
+public final class RequestGovernor {
+
+    /**
+     * How urgent a request is, most urgent first.
+     */
+    public enum Priority {
+        USER_VISIBLE,
+        PREFETCH,
+        BACKGROUND
+    }
+
+    /**
+     * Refused request, because the calls of the day are spent.
+     */
+    public static final class QuotaExceededException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        QuotaExceededException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Keeps the number of calls of the day when the process is gone.
+     */
+    public interface QuotaStore {
+        /**
+         * Returns the number of calls counted on the given day, 0 if none were.
+         *
+         * @param day the number of UTC days since the epoch
+         */
+        int load(long day);
+
+        /**
+         * Stores the number of calls counted so far on the given day.
+         */
+        void save(long day, int requests);
+    }
+
+    /**
+     * Source of the time, replaced in tests.
+     */
+    interface Clock {
+        long nanoTime();
+
+        long currentTimeMillis();
+    }
+
+    /**
+     * Calls per second of theguardian developer keys
+     */
+    public static final double DEFAULT_PERMITS_PER_SECOND = 1;
+
+    /**
+     * Calls per day of theguardian developer keys
+     */
+    public static final int DEFAULT_DAILY_QUOTA = 500;
+
+    /**
+     * Share of the calls of the day, in percent, only the user visible requests may spend
+     */
+    static final int RESERVED_PERCENT = 20;
+
+    /**
+     * Pause after a throttled response without a usable Retry-After
+     */
+    static final long DEFAULT_RETRY_AFTER_MILLIS = 1000;
+
+    /**
+     * How long a waiting request sleeps at most before checking its token again
+     */
+    private static final long MAX_WAIT_SLICE_MILLIS = 100;
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private static final ThreadLocal<Priority> currentPriority = new ThreadLocal<Priority>() {
+        @Override
+        protected Priority initialValue() {
+            return Priority.USER_VISIBLE;
+        }
+    };
+
+    private final double permitsPerSecond;
+    private final int burst;
+    private final int dailyQuota;
+    private final Clock clock;
+
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private long sequence;
+
+    private double tokens;
+    private long refilledAtNanos;
+    private long pausedUntilNanos;
+    private long day;
+    private int requestsToday;
+    private long throttled;
+    private long refused;
+    private QuotaStore quotaStore;
+
+    /**
+     * Constructs a {@link RequestGovernor} for theguardian developer keys.
+     */
+    public RequestGovernor() {
+        this(DEFAULT_PERMITS_PER_SECOND, 1, DEFAULT_DAILY_QUOTA);
+    }
+
+    /**
+     * Constructs a new {@link RequestGovernor}.
+     *
+     * @param permitsPerSecond the calls allowed per second
+     * @param burst            the calls that may go at once after a quiet period
+     * @param dailyQuota       the calls allowed per day, counted in UTC days
+     */
+    public RequestGovernor(double permitsPerSecond, int burst, int dailyQuota) {
+        this(permitsPerSecond, burst, dailyQuota, SYSTEM_CLOCK);
+    }
+
+    RequestGovernor(double permitsPerSecond, int burst, int dailyQuota, Clock clock) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.dailyQuota = dailyQuota;
+        this.clock = clock;
+        this.tokens = burst;
+        this.refilledAtNanos = clock.nanoTime();
+        this.day = clock.currentTimeMillis() / DAY_MILLIS;
+    }
+
+    /**
+     * Sets the priority of the requests made by the current thread, e.g. by the threads of
+     * a prefetcher. The threads that did not set any make user visible requests.
+     */
+    public static void setCurrentPriority(Priority priority) {
+        currentPriority.set(priority);
+    }
+
+    public static Priority getCurrentPriority() {
+        return currentPriority.get();
+    }
+
+    /**
+     * Counts the calls of the day in the given store from now on, on top of the ones it
+     * counted today already, e.g. before the process was restarted.
+     */
+    public synchronized void setQuotaStore(QuotaStore quotaStore) {
+        rollDay();
+        this.quotaStore = quotaStore;
+        requestsToday += quotaStore.load(day);
+    }
+
+    /**
+     * Waits for the permission to make one call. This is a blocking call.
+     *
+     * @throws QuotaExceededException if the calls of the day the request may spend are spent
+     * @throws IOException            if the token was cancelled meanwhile
+     */
+    public void acquire(Priority priority, CancellationToken token) throws IOException {
+        long start = clock.nanoTime();
+        synchronized (this) {
+            Waiter waiter = new Waiter(priority, sequence++);
+            waiters.add(waiter);
+            try {
+                while (true) {
+                    if (token.isCancelled()) {
+                        throw new IOException("Canceled");
+                    }
+                    checkQuota(priority);
+                    long waitNanos = waiters.peek() == waiter ? nanosUntilPermit() : Long.MAX_VALUE;
+                    if (waitNanos == 0) {
+                        tokens--;
+                        requestsToday++;
+                        if (quotaStore != null) {
+                            quotaStore.save(day, requestsToday);
+                        }
+                        break;
+                    }
+                    // The token does not wake this thread up, so check it from time to time
+                    wait(Math.max(1, Math.min(waitNanos / 1000000, MAX_WAIT_SLICE_MILLIS)));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", e);
+            } finally {
+                waiters.remove(waiter);
+                // The next one in line may go
+                notifyAll();
+            }
+        }
+        queueWait.recordNanos(clock.nanoTime() - start);
+    }
+
+    /**
+     * Pauses every request after a throttled response.
+     *
+     * @param retryAfterMillis how long the server asked to wait
+     */
+    public synchronized void onThrottled(long retryAfterMillis) {
+        throttled++;
+        tokens = 0;
+        pausedUntilNanos = Math.max(pausedUntilNanos, clock.nanoTime() + retryAfterMillis * 1000000);
+        // No token is earned during the pause
+        refilledAtNanos = pausedUntilNanos;
+    }
+
+    /**
+     * Returns the number of calls made today.
+     */
+    public synchronized int getRequestsToday() {
+        rollDay();
+        return requestsToday;
+    }
+
+    public int getDailyQuota() {
+        return dailyQuota;
+    }
+
+    /**
+     * Returns the number of throttled responses.
+     */
+    public synchronized long getThrottledCount() {
+        return throttled;
+    }
+
+    /**
+     * Returns the number of requests refused for lack of quota.
+     */
+    public synchronized long getRefusedCount() {
+        return refused;
+    }
+
+    /**
+     * Returns the time the requests waited for their permission.
+     */
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    /**
+     * Returns a plain text summary of the quota usage.
+     */
+    public String report() {
+        int requests = getRequestsToday();
+        return String.format(Locale.US,
+                "quota        %7d / %d today (%.1f%%)%nthrottled    %7d%nrefused      %7d%n"
+                        + "queue wait   p50 %.2f ms, p99 %.2f ms%n",
+                requests, dailyQuota, 100.0 * requests / dailyQuota, getThrottledCount(), getRefusedCount(),
+                queueWait.getPercentileMicros(50) / 1000.0, queueWait.getPercentileMicros(99) / 1000.0);
+    }
+
+    /**
+     * Returns how long to wait according to the given Retry-After header, either a number of
+     * seconds or an HTTP date, or {@link #DEFAULT_RETRY_AFTER_MILLIS} if it is missing or invalid.
+     *
+     * @param nowMillis the current time, to count an HTTP date from
+     */
+    public static long parseRetryAfter(String retryAfter, long nowMillis) {
+        if (retryAfter == null) {
+            return DEFAULT_RETRY_AFTER_MILLIS;
+        }
+        retryAfter = retryAfter.trim();
+        try {
+            long seconds = Long.parseLong(retryAfter);
+            return seconds >= 0 ? seconds * 1000 : DEFAULT_RETRY_AFTER_MILLIS;
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, so maybe a date
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return Math.max(0, format.parse(retryAfter).getTime() - nowMillis);
+        } catch (ParseException e) {
+            return DEFAULT_RETRY_AFTER_MILLIS;
+        }
+    }
+
+    private void checkQuota(Priority priority) throws QuotaExceededException {
+        rollDay();
+        int allowed = priority == Priority.USER_VISIBLE
+                ? dailyQuota : dailyQuota * (100 - RESERVED_PERCENT) / 100;
+        if (requestsToday >= allowed) {
+            refused++;
+            throw new QuotaExceededException(requestsToday + " of " + dailyQuota
+                    + " calls spent today, " + priority + " requests are refused");
+        }
+    }
+
+    private void rollDay() {
+        long today = clock.currentTimeMillis() / DAY_MILLIS;
+        if (today != day) {
+            day = today;
+            requestsToday = 0;
+        }
+    }
+
+    /**
+     * Returns how long until a call can be made, 0 if it can be right away.
+     */
+    private long nanosUntilPermit() {
+        long now = clock.nanoTime();
+        if (now < pausedUntilNanos) {
+            refilledAtNanos = pausedUntilNanos;
+            return pausedUntilNanos - now;
+        }
+        tokens = Math.min(burst, tokens + (now - refilledAtNanos) * permitsPerSecond / 1e9);
+        refilledAtNanos = now;
+        if (tokens >= 1) {
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / permitsPerSecond * 1e9);
+    }
+
+    /**
+     * A request waiting for its permission.
+     */
+    private static final class Waiter implements Comparable<Waiter> {
+        final Priority priority;
+        final long sequence;
+
+        Waiter(Priority priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            if (priority != other.priority) {
+                return priority.compareTo(other.priority);
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+}
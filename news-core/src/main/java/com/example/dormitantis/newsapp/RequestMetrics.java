@@ -0,0 +1,87 @@
+package com.example.dormitantis.newsapp;
+
+/**
+ * What one request cost: how long it took and how many bytes it moved.
+ * Reported by {@link UrlConnectionTransport} once the response is closed.
+ */
+public final class RequestMetrics {
+
+    /**
+     * Receives the metrics of the requests, on the thread that closed the response.
+     */
+    public interface Listener {
+        void onRequestCompleted(RequestMetrics metrics);
+    }
+
+    private final String url;
+    private final int responseCode;
+    private final int attempts;
+    private final long headersMillis;
+    private final long totalMillis;
+    private final long wireBytes;
+    private final long bodyBytes;
+
+    RequestMetrics(String url, int responseCode, int attempts, long headersMillis, long totalMillis,
+                   long wireBytes, long bodyBytes) {
+        this.url = url;
+        this.responseCode = responseCode;
+        this.attempts = attempts;
+        this.headersMillis = headersMillis;
+        this.totalMillis = totalMillis;
+        this.wireBytes = wireBytes;
+        this.bodyBytes = bodyBytes;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Returns the status code of the last attempt.
+     */
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    /**
+     * Returns the number of attempts made, 1 if the request was not retried.
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Returns the time from the start of the request, retries included,
+     * to the headers of the response.
+     */
+    public long getHeadersMillis() {
+        return headersMillis;
+    }
+
+    /**
+     * Returns the time from the start of the request to the response being closed.
+     */
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    /**
+     * Returns the number of body bytes received, as they came over the wire.
+     */
+    public long getWireBytes() {
+        return wireBytes;
+    }
+
+    /**
+     * Returns the number of body bytes read once decompressed.
+     */
+    public long getBodyBytes() {
+        return bodyBytes;
+    }
+
+    @Override
+    public String toString() {
+        return url + " " + responseCode + " attempts=" + attempts + " headers=" + headersMillis
+                + "ms total=" + totalMillis + "ms wire=" + wireBytes + "B body=" + bodyBytes + "B";
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.dormitantis.newsapp;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of the values that repeat from one news to the next, such as section and
+ * contributor names, so all the news refer to a single copy of each of them instead of
+ * holding their own.
+ * <p>
+ * Unlike {@link String#intern()}, the pool is bounded: once it is full it starts over,
+ * so a long session does not keep every name it ever saw.
+ */
+final class StringPool {
+
+    /**
+     * Far more than the sections of theguardian and the contributors of a few hundred news
+     */
+    private static final int MAX_SIZE = 4096;
+
+    private static final ConcurrentHashMap<String, String> POOL = new ConcurrentHashMap<>();
+
+    private StringPool() {
+    }
+
+    /**
+     * Returns the pooled copy of the given string, which becomes the pooled copy if there is none.
+     */
+    static String intern(String value) {
+        if (value.isEmpty()) {
+            return "";
+        }
+        String pooled = POOL.get(value);
+        if (pooled != null) {
+            return pooled;
+        }
+        if (POOL.size() >= MAX_SIZE) {
+            POOL.clear();
+        }
+        pooled = POOL.putIfAbsent(value, value);
+        return pooled != null ? pooled : value;
+    }
+}
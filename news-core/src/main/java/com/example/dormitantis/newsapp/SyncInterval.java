@@ -0,0 +1,47 @@
+package com.example.dormitantis.newsapp;
+
+/**
+ * Adapts how often the feed is synced in the background to how often news are actually
+ * published for it: twice as often after a sync that found plenty of news, half as often
+ * after one that found none.
+ */
+public final class SyncInterval {
+
+    /**
+     * Shortest interval, JobScheduler runs the periodic jobs every 15 minutes at most anyway
+     */
+    public static final long MIN_INTERVAL_MILLIS = 30 * 60 * 1000L;
+
+    /**
+     * Longest interval, so the feed of a quiet keyword is still at most a day old
+     */
+    public static final long MAX_INTERVAL_MILLIS = 24 * 60 * 60 * 1000L;
+
+    /**
+     * Interval until the first sync tells how busy the feed is
+     */
+    public static final long DEFAULT_INTERVAL_MILLIS = 3 * 60 * 60 * 1000L;
+
+    /**
+     * Number of new news from which the feed is synced more often, about a screenful
+     */
+    public static final int BUSY_NEWS_COUNT = 10;
+
+    private SyncInterval() {
+    }
+
+    /**
+     * Returns the interval following a sync.
+     *
+     * @param interval     the interval of the sync
+     * @param newNewsCount the number of news the sync found that were not on the device yet
+     */
+    public static long next(long interval, int newNewsCount) {
+        if (newNewsCount >= BUSY_NEWS_COUNT) {
+            interval /= 2;
+        } else if (newNewsCount == 0) {
+            interval *= 2;
+        }
+        return Math.max(MIN_INTERVAL_MILLIS, Math.min(interval, MAX_INTERVAL_MILLIS));
+    }
+}
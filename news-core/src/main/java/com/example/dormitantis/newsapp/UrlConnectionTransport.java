@@ -0,0 +1,301 @@
+package com.example.dormitantis.newsapp;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * {@link HttpTransport} on top of {@link HttpURLConnection}.
+ * <p>
+ * HttpURLConnection keeps idle connections alive in a pool shared by the whole process
+ * (5 per host by default, see the {@code http.maxConnections} system property), but only the
+ * connections whose response was read to the end and closed go back to it: a disconnected
+ * one is thrown away. So the responses are closed, never disconnected, and what is left of
+ * a body nobody read is drained first as long as it is small.
+ * <p>
+ * Responses are requested gzipped and decompressed here. Requests that time out or get a 5xx
+ * response are retried with an exponential backoff with jitter, and the latency and bytes of
+ * every request are reported to the {@link RequestMetrics.Listener}, if any. The connection
+ * and the wait for the headers are timed by the {@link PipelineTracer} as well.
+ */
+public class UrlConnectionTransport implements HttpTransport {
+
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 15000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 10000;
+    public static final int DEFAULT_MAX_RETRIES = 2;
+    public static final long DEFAULT_BASE_BACKOFF_MILLIS = 500;
+
+    /**
+     * Upper bound of the wait between two attempts
+     */
+    private static final long MAX_BACKOFF_MILLIS = 8000;
+
+    /**
+     * Largest rest of a body read to keep its connection alive, a bigger one is not worth it
+     */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final int maxRetries;
+    private final long baseBackoffMillis;
+    private final Random random = new Random();
+
+    private volatile RequestMetrics.Listener metricsListener;
+
+    /**
+     * Constructs a new {@link UrlConnectionTransport} with the default timeouts and retries.
+     */
+    public UrlConnectionTransport() {
+        this(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS, DEFAULT_MAX_RETRIES,
+                DEFAULT_BASE_BACKOFF_MILLIS);
+    }
+
+    /**
+     * Constructs a new {@link UrlConnectionTransport}.
+     *
+     * @param connectTimeoutMillis timeout of the connection to the server
+     * @param readTimeoutMillis    timeout of every read from the server
+     * @param maxRetries           number of times a request is retried after the first attempt
+     * @param baseBackoffMillis    wait before the first retry, doubled on every following one
+     */
+    public UrlConnectionTransport(int connectTimeoutMillis, int readTimeoutMillis, int maxRetries,
+                                  long baseBackoffMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.maxRetries = maxRetries;
+        this.baseBackoffMillis = baseBackoffMillis;
+    }
+
+    /**
+     * Sets the listener the metrics of every request are reported to.
+     */
+    public void setMetricsListener(RequestMetrics.Listener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    @Override
+    public Response get(String url, Map<String, String> headers, CancellationToken token) throws IOException {
+        long startNanos = System.nanoTime();
+        int attempt = 0;
+        while (true) {
+            attempt++;
+            token.throwIfCancelled();
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            token.setConnection(connection);
+            connection.setConnectTimeout(connectTimeoutMillis);
+            connection.setReadTimeout(readTimeoutMillis);
+            connection.setRequestMethod("GET");
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            int code;
+            try {
+                long connectStart = PipelineTracer.begin(PipelineTracer.Stage.CONNECT);
+                try {
+                    // Nothing to do when a pooled connection is reused
+                    connection.connect();
+                } finally {
+                    PipelineTracer.end(PipelineTracer.Stage.CONNECT, connectStart);
+                }
+                long firstByteStart = PipelineTracer.begin(PipelineTracer.Stage.FIRST_BYTE);
+                try {
+                    code = connection.getResponseCode();
+                } finally {
+                    PipelineTracer.end(PipelineTracer.Stage.FIRST_BYTE, firstByteStart);
+                }
+            } catch (SocketTimeoutException e) {
+                connection.disconnect();
+                if (attempt > maxRetries || token.isCancelled()) {
+                    throw e;
+                }
+                token.sleep(backoffMillis(baseBackoffMillis, attempt, random));
+                continue;
+            }
+
+            if (code >= HttpURLConnection.HTTP_INTERNAL_ERROR && attempt <= maxRetries) {
+                new UrlConnectionResponse(url, connection, code, attempt, startNanos).discard();
+                token.sleep(backoffMillis(baseBackoffMillis, attempt, random));
+                continue;
+            }
+            return new UrlConnectionResponse(url, connection, code, attempt, startNanos);
+        }
+    }
+
+    /**
+     * Returns the wait before the retry following the given attempt: half of it grows
+     * exponentially, the other half is random so the clients failing together do not all
+     * retry at the same time.
+     */
+    static long backoffMillis(long baseBackoffMillis, int attempt, Random random) {
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, baseBackoffMillis << (attempt - 1));
+        long half = backoff / 2;
+        synchronized (random) {
+            return half + (long) (random.nextDouble() * (backoff - half));
+        }
+    }
+
+    private final class UrlConnectionResponse implements Response {
+        private final String url;
+        private final HttpURLConnection connection;
+        private final int code;
+        private final int attempts;
+        private final long startNanos;
+        private final long headersNanos;
+
+        private CountingInputStream wire;
+        private CountingInputStream body;
+        private boolean closed;
+
+        UrlConnectionResponse(String url, HttpURLConnection connection, int code, int attempts, long startNanos) {
+            this.url = url;
+            this.connection = connection;
+            this.code = code;
+            this.attempts = attempts;
+            this.startNanos = startNanos;
+            this.headersNanos = System.nanoTime();
+        }
+
+        @Override
+        public int getCode() {
+            return code;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                wire = new CountingInputStream(openRawBody());
+                InputStream in = wire;
+                if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+                    in = new GZIPInputStream(in);
+                }
+                body = new CountingInputStream(in);
+            }
+            return body;
+        }
+
+        /**
+         * Closes the response without reporting it, for an attempt that is retried.
+         */
+        void discard() {
+            release();
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            release();
+            PipelineTracer.recordResponse(wire != null ? wire.getCount() : 0, body != null ? body.getCount() : 0);
+            RequestMetrics.Listener listener = metricsListener;
+            if (listener != null) {
+                long now = System.nanoTime();
+                listener.onRequestCompleted(new RequestMetrics(url, code, attempts,
+                        (headersNanos - startNanos) / 1000000, (now - startNanos) / 1000000,
+                        wire != null ? wire.getCount() : 0, body != null ? body.getCount() : 0));
+            }
+        }
+
+        /**
+         * Drains and closes the raw body so the connection can be reused,
+         * or disconnects it if that would take too long.
+         */
+        private void release() {
+            closed = true;
+            try {
+                InputStream raw = wire != null ? wire : openRawBody();
+                boolean drained = false;
+                try {
+                    drained = drain(raw);
+                } finally {
+                    if (drained) {
+                        raw.close();
+                    } else {
+                        connection.disconnect();
+                    }
+                }
+            } catch (IOException e) {
+                connection.disconnect();
+            }
+        }
+
+        private InputStream openRawBody() throws IOException {
+            InputStream raw = code < HttpURLConnection.HTTP_BAD_REQUEST
+                    ? connection.getInputStream() : connection.getErrorStream();
+            return raw != null ? raw : new ByteArrayInputStream(new byte[0]);
+        }
+    }
+
+    /**
+     * Reads the given stream to its end, unless more than {@link #MAX_DRAIN_BYTES} are left.
+     *
+     * @return true if the end of the stream was reached
+     */
+    private static boolean drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[4096];
+        int drained = 0;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            drained += n;
+            if (drained > MAX_DRAIN_BYTES) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts the bytes read through it.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
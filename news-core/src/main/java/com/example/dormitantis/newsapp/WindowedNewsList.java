@@ -0,0 +1,468 @@
+package com.example.dormitantis.newsapp;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A list of news that only keeps on the heap a window of them around the position being
+ * displayed, see {@link #moveWindow(int)}. The others are spilled to a {@link NewsPageFile}
+ * and read back when the window comes back to them, or when they are asked for.
+ * <p>
+ * Every position keeps the hash of the webUrl of its news, so the rows can be identified and
+ * deduplicated without reading anything back. A news spilled once keeps its place in the file,
+ * so it is not written again when it leaves the window a second time. The window only moves
+ * once the center went a quarter of it away, so scrolling back and forth does not spill and
+ * read the same news over and over.
+ * <p>
+ * The list is not thread safe, it is meant to back an adapter on the main thread. Only the
+ * {@link WindowMove} and {@link Snapshot} it hands out touch the file from another thread, so
+ * scrolling never waits for the disk: the rows bound from the main thread use {@link #peek(int)},
+ * which never reads back.
+ */
+public final class WindowedNewsList extends AbstractList<News> {
+
+    /**
+     * Number of news kept on the heap, a few pages of the feed
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 128;
+
+    /**
+     * Number of news kept on the heap when memory runs low, still more than a screenful
+     */
+    public static final int MIN_WINDOW_SIZE = 32;
+
+    private final NewsPageFile pageFile;
+    private final List<Slot> slots = new ArrayList<>();
+
+    private int windowSize;
+    private int center;
+    private int residentCount;
+
+    /**
+     * Whether the window has to move on the next call whatever the center, e.g. after it was resized
+     */
+    private boolean windowMoving;
+
+    /**
+     * Constructs a new {@link WindowedNewsList}.
+     *
+     * @param pageFile   to spill the news outside of the window to
+     * @param windowSize the number of news to keep on the heap
+     */
+    public WindowedNewsList(NewsPageFile pageFile, int windowSize) {
+        this.pageFile = pageFile;
+        this.windowSize = Math.max(MIN_WINDOW_SIZE, windowSize);
+    }
+
+    /**
+     * Returns a 64-bit FNV-1a hash of the given webUrl.
+     */
+    public static long hashOf(String web) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < web.length(); i++) {
+            hash ^= web.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the news at the given position, reading it back from the file if it was spilled.
+     * A news read back stays spilled, it is kept on the heap again once the window comes back
+     * to it.
+     *
+     * @return the news, or null if it cannot be read back
+     */
+    @Override
+    public News get(int index) {
+        Slot slot = slots.get(index);
+        News news = slot.news;
+        if (news == null) {
+            try {
+                news = pageFile.read(slot.offset);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return news;
+    }
+
+    /**
+     * Returns the news at the given position if it is on the heap, without reading it back.
+     *
+     * @return the news, or null while it is spilled
+     */
+    public News peek(int index) {
+        return slots.get(index).news;
+    }
+
+    /**
+     * Returns the {@link #hashOf(String) hash} of the webUrl of the news at the given position,
+     * without reading it back.
+     */
+    public long getWebHash(int index) {
+        return slots.get(index).webHash;
+    }
+
+    @Override
+    public int size() {
+        return slots.size();
+    }
+
+    /**
+     * Replaces the news at the given position, without reading back the previous one.
+     *
+     * @return the previous news, or null if it was spilled
+     */
+    @Override
+    public News set(int index, News news) {
+        Slot slot = slots.get(index);
+        News previous = slot.news;
+        if (previous == null) {
+            residentCount++;
+        }
+        slot.news = news;
+        slot.webHash = hashOf(news.getWeb());
+        // The copy in the file is outdated
+        slot.offset = -1;
+        return previous;
+    }
+
+    @Override
+    public void add(int index, News news) {
+        slots.add(index, new Slot(news));
+        residentCount++;
+        modCount++;
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends News> newsList) {
+        List<Slot> added = new ArrayList<>(newsList.size());
+        for (News news : newsList) {
+            added.add(new Slot(news));
+        }
+        slots.addAll(index, added);
+        residentCount += added.size();
+        modCount++;
+        return !added.isEmpty();
+    }
+
+    /**
+     * Removes the news at the given position, reading it back if it was spilled so it can be
+     * added again somewhere else to move it.
+     *
+     * @return the news, or null if it cannot be read back
+     */
+    @Override
+    public News remove(int index) {
+        News news = get(index);
+        Slot slot = slots.remove(index);
+        slot.removed = true;
+        if (slot.news != null) {
+            residentCount--;
+        }
+        modCount++;
+        return news;
+    }
+
+    /**
+     * Removes the given range without reading back the news that were spilled.
+     */
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        List<Slot> removed = slots.subList(fromIndex, toIndex);
+        for (Slot slot : removed) {
+            slot.removed = true;
+            if (slot.news != null) {
+                residentCount--;
+            }
+        }
+        removed.clear();
+        modCount++;
+    }
+
+    /**
+     * Removes every news and forgets the ones written to the file. The moves in flight are
+     * not applied.
+     */
+    @Override
+    public void clear() {
+        for (Slot slot : slots) {
+            slot.removed = true;
+        }
+        slots.clear();
+        residentCount = 0;
+        center = 0;
+        modCount++;
+        try {
+            pageFile.clear();
+        } catch (IOException ignored) {
+            // The file only grows until the next clear
+        }
+    }
+
+    /**
+     * Moves the window around the given position right away, spilling the news that fall out
+     * of it and reading back the ones that fall in, on the calling thread.
+     * See {@link #moveWindow(int)} to do the reads and writes on another thread.
+     */
+    public void setCenter(int position) {
+        WindowMove move = moveWindow(position);
+        if (move != null) {
+            move.run();
+            apply(move);
+        }
+    }
+
+    /**
+     * Moves the window around the given position, without touching the file: the returned
+     * move has to {@link WindowMove#run() run}, on any thread, then be {@link #apply applied}
+     * back on this one. Nothing is spilled or read back meanwhile, and the list may change.
+     * <p>
+     * The window only moves once the center went a quarter of it away, or to trim the news
+     * added, set or read back by a {@link Snapshot} outside of it since the last move once
+     * they are twice as many as it holds.
+     *
+     * @return the move, or null if the window stays where it is
+     */
+    public WindowMove moveWindow(int position) {
+        boolean overflowing = residentCount > windowSize * 2;
+        if (!overflowing && !windowMoving && Math.abs(position - center) < windowSize / 4) {
+            return null;
+        }
+        center = position;
+        windowMoving = false;
+
+        int first = Math.max(0, center - windowSize / 2);
+        int end = Math.min(slots.size(), first + windowSize);
+        WindowMove move = new WindowMove(pageFile);
+        for (int i = 0; i < slots.size(); i++) {
+            Slot slot = slots.get(i);
+            boolean inWindow = i >= first && i < end;
+            if (inWindow && slot.news == null) {
+                move.loaded.add(slot);
+                move.loadedOffsets.add(slot.offset);
+            } else if (!inWindow && slot.news != null) {
+                move.spilled.add(slot);
+                move.spilledNews.add(slot.news);
+                move.spilledOffsets.add(slot.offset);
+            }
+        }
+        return move.loaded.isEmpty() && move.spilled.isEmpty() ? null : move;
+    }
+
+    /**
+     * Applies a move of the window once it ran. The news changed or removed since it was
+     * planned are left as they are.
+     */
+    public void apply(WindowMove move) {
+        for (int i = 0; i < move.spilled.size(); i++) {
+            Slot slot = move.spilled.get(i);
+            if (slot.removed || slot.news != move.spilledNews.get(i)) {
+                continue;
+            }
+            if (slot.offset == -1) {
+                long offset = move.spilledOffsets.get(i);
+                if (offset == -1) {
+                    // It could not be written, so it stays on the heap
+                    continue;
+                }
+                slot.offset = offset;
+            }
+            slot.news = null;
+            residentCount--;
+        }
+        for (int i = 0; i < move.loaded.size(); i++) {
+            Slot slot = move.loaded.get(i);
+            News news = move.loadedNews.get(i);
+            if (slot.removed || slot.news != null || news == null || slot.offset != move.loadedOffsets.get(i)) {
+                continue;
+            }
+            slot.news = news;
+            residentCount++;
+        }
+    }
+
+    /**
+     * Takes a snapshot of the given range without touching the file: the returned snapshot
+     * reads back its spilled news when it {@link Snapshot#run() runs}, on any thread. Once
+     * {@link #apply(Snapshot) applied} back on this one, the news it read are kept on the heap,
+     * so the range can be updated without reading anything from this thread.
+     */
+    public Snapshot snapshot(int fromIndex, int toIndex) {
+        Snapshot snapshot = new Snapshot(pageFile, toIndex - fromIndex);
+        for (Slot slot : slots.subList(fromIndex, toIndex)) {
+            snapshot.slots.add(slot);
+            snapshot.offsets.add(slot.offset);
+            snapshot.news.add(slot.news);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Keeps on the heap the news a snapshot read back. The news changed, removed or read back
+     * since it was taken are left as they are.
+     */
+    public void apply(Snapshot snapshot) {
+        for (int i = 0; i < snapshot.slots.size(); i++) {
+            Slot slot = snapshot.slots.get(i);
+            News news = snapshot.news.get(i);
+            if (slot.removed || slot.news != null || news == null || slot.offset != snapshot.offsets.get(i)) {
+                continue;
+            }
+            slot.news = news;
+            residentCount++;
+        }
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Changes the number of news kept on the heap, they are spilled or read back by the next
+     * move of the window. It is never made smaller than {@link #MIN_WINDOW_SIZE}.
+     */
+    public void setWindowSize(int windowSize) {
+        windowSize = Math.max(MIN_WINDOW_SIZE, windowSize);
+        if (windowSize != this.windowSize) {
+            this.windowSize = windowSize;
+            windowMoving = true;
+        }
+    }
+
+    /**
+     * Returns the number of news currently on the heap.
+     */
+    public int getResidentCount() {
+        return residentCount;
+    }
+
+    /**
+     * The reads and writes of the file moving the window, see {@link #moveWindow(int)}.
+     */
+    public static final class WindowMove implements Runnable {
+        private final NewsPageFile pageFile;
+
+        final List<Slot> spilled = new ArrayList<>();
+        final List<News> spilledNews = new ArrayList<>();
+
+        /**
+         * Where the spilled news are in the file, -1 until they are written
+         */
+        final List<Long> spilledOffsets = new ArrayList<>();
+
+        final List<Slot> loaded = new ArrayList<>();
+        final List<Long> loadedOffsets = new ArrayList<>();
+        final List<News> loadedNews = new ArrayList<>();
+
+        WindowMove(NewsPageFile pageFile) {
+            this.pageFile = pageFile;
+        }
+
+        /**
+         * Writes the news leaving the window that were never spilled, and reads back the ones
+         * entering it. A news that cannot be written or read is left where it is.
+         */
+        @Override
+        public void run() {
+            for (int i = 0; i < spilled.size(); i++) {
+                if (spilledOffsets.get(i) == -1) {
+                    try {
+                        spilledOffsets.set(i, pageFile.append(spilledNews.get(i)));
+                    } catch (IOException e) {
+                        // Kept on the heap
+                    }
+                }
+            }
+            for (long offset : loadedOffsets) {
+                News news = null;
+                try {
+                    news = pageFile.read(offset);
+                } catch (IOException e) {
+                    // Read when it is asked for
+                }
+                loadedNews.add(news);
+            }
+        }
+    }
+
+    /**
+     * The news of a range of the list, see {@link #snapshot(int, int)}.
+     */
+    public static final class Snapshot implements Runnable {
+        private final NewsPageFile pageFile;
+
+        final List<Slot> slots;
+        final List<Long> offsets;
+
+        /**
+         * The news of the range, null for the spilled ones until they are read back
+         */
+        final List<News> news;
+
+        private boolean complete;
+
+        Snapshot(NewsPageFile pageFile, int size) {
+            this.pageFile = pageFile;
+            this.slots = new ArrayList<>(size);
+            this.offsets = new ArrayList<>(size);
+            this.news = new ArrayList<>(size);
+        }
+
+        /**
+         * Reads back the spilled news of the range.
+         */
+        @Override
+        public void run() {
+            complete = true;
+            for (int i = 0; i < news.size(); i++) {
+                if (news.get(i) == null) {
+                    try {
+                        news.set(i, pageFile.read(offsets.get(i)));
+                    } catch (IOException e) {
+                        complete = false;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns the news of the range once the snapshot ran, or null if some could not be
+         * read back.
+         */
+        public List<News> getNews() {
+            return complete ? news : null;
+        }
+    }
+
+    /**
+     * A position of the list, holding its news or where to read it back from.
+     */
+    private static final class Slot {
+        /**
+         * The news, null while it is spilled
+         */
+        News news;
+
+        /**
+         * Offset of the copy of the news in the file, -1 if it has none
+         */
+        long offset = -1;
+
+        long webHash;
+
+        /**
+         * Whether the position was removed, so a move planned before is not applied to it
+         */
+        boolean removed;
+
+        Slot(News news) {
+            this.news = news;
+            this.webHash = hashOf(news.getWeb());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.dormitantis.newsapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link DeltaSync}.
+ */
+public class DeltaSyncTest {
+
+    /**
+     * 2018-10-02T14:00:11Z
+     */
+    private static final long WATERMARK = 1538488811000L;
+
+    @Test
+    public void deltaQuery_asksForTheNewestFromTheDayOfTheWatermark() {
+        String url = DeltaSync.deltaQuery(query(), WATERMARK, 2).toUrl();
+
+        assertTrue(url, url.contains("from-date=2018-10-02"));
+        assertTrue(url, url.contains("order-by=newest"));
+        assertTrue(url, url.contains("page=2"));
+        assertTrue(url, url.contains("page-size=" + DeltaSync.PAGE_SIZE));
+        assertTrue(url, url.contains("q=brexit"));
+    }
+
+    @Test
+    public void fetchNewer_stopsAtTheWatermark() {
+        final List<News> page = Arrays.asList(news("c", WATERMARK + 2000), news("b", WATERMARK + 1000),
+                news("a", WATERMARK), news("z", WATERMARK - 1000));
+        final List<Integer> pages = new ArrayList<>();
+
+        List<News> newer = DeltaSync.fetchNewer(query(), WATERMARK, new DeltaSync.PageFetcher() {
+            @Override
+            public List<News> fetch(GuardianQuery query, CancellationToken token) {
+                pages.add(query.getPage());
+                return page;
+            }
+        }, new CancellationToken());
+
+        assertEquals(Arrays.asList(news("c", WATERMARK + 2000), news("b", WATERMARK + 1000)), newer);
+        assertEquals(Collections.singletonList(1), pages);
+    }
+
+    @Test
+    public void fetchNewer_pagesUntilAShortPage() {
+        final List<Integer> pages = new ArrayList<>();
+
+        List<News> newer = DeltaSync.fetchNewer(query(), WATERMARK, new DeltaSync.PageFetcher() {
+            @Override
+            public List<News> fetch(GuardianQuery query, CancellationToken token) {
+                pages.add(query.getPage());
+                int size = query.getPage() == 1 ? DeltaSync.PAGE_SIZE : 3;
+                List<News> newsList = new ArrayList<>();
+                for (int i = 0; i < size; i++) {
+                    newsList.add(news(query.getPage() + "-" + i, WATERMARK + 1000));
+                }
+                return newsList;
+            }
+        }, new CancellationToken());
+
+        assertEquals(DeltaSync.PAGE_SIZE + 3, newer.size());
+        assertEquals(Arrays.asList(1, 2), pages);
+    }
+
+    @Test
+    public void fetchNewer_givesUpOnTooManyPagesOrAFailure() {
+        List<News> tooMany = DeltaSync.fetchNewer(query(), WATERMARK, new DeltaSync.PageFetcher() {
+            @Override
+            public List<News> fetch(GuardianQuery query, CancellationToken token) {
+                List<News> newsList = new ArrayList<>();
+                for (int i = 0; i < DeltaSync.PAGE_SIZE; i++) {
+                    newsList.add(news(query.getPage() + "-" + i, WATERMARK + 1000));
+                }
+                return newsList;
+            }
+        }, new CancellationToken());
+        List<News> failed = DeltaSync.fetchNewer(query(), WATERMARK, new DeltaSync.PageFetcher() {
+            @Override
+            public List<News> fetch(GuardianQuery query, CancellationToken token) {
+                return null;
+            }
+        }, new CancellationToken());
+
+        assertNull(tooMany);
+        assertNull(failed);
+    }
+
+    @Test
+    public void merge_putsTheNewerOnTopAndReplacesTheUpdated() {
+        News updated = new News("b", "Updated b", "Section", Collections.<String>emptyList(), "",
+                WATERMARK + 1000);
+
+        List<News> merged = DeltaSync.merge(Arrays.asList(news("c", WATERMARK + 2000), updated),
+                Arrays.asList(news("b", WATERMARK - 1000), news("a", WATERMARK - 2000)), 10);
+
+        assertEquals(Arrays.asList(news("c", WATERMARK + 2000), updated, news("a", WATERMARK - 2000)), merged);
+        assertEquals(WATERMARK + 2000, DeltaSync.watermarkOf(merged, WATERMARK));
+        assertEquals(WATERMARK, DeltaSync.watermarkOf(Collections.<News>emptyList(), WATERMARK));
+    }
+
+    @Test
+    public void merge_keepsTheSizeOfThePage() {
+        List<News> merged = DeltaSync.merge(Arrays.asList(news("d", WATERMARK + 2000), news("c", WATERMARK + 1000)),
+                Arrays.asList(news("b", WATERMARK - 1000), news("a", WATERMARK - 2000)), 3);
+
+        assertEquals(Arrays.asList(news("d", WATERMARK + 2000), news("c", WATERMARK + 1000),
+                news("b", WATERMARK - 1000)), merged);
+    }
+
+    private static GuardianQuery query() {
+        return new GuardianQuery.Builder().apiKey("test").keyword("brexit").build();
+    }
+
+    private static News news(String web, long publishedAt) {
+        return new News(web, "Title " + web, "Section", Collections.<String>emptyList(), "", publishedAt);
+    }
+}
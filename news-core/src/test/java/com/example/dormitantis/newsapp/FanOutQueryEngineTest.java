@@ -0,0 +1,166 @@
+package com.example.dormitantis.newsapp;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FanOutQueryEngine}.
+ */
+public class FanOutQueryEngineTest {
+
+    private FanOutQueryEngine engine;
+
+    @After
+    public void tearDown() {
+        if (engine != null) {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void merge_sortsByDateAndDropsDuplicates() {
+        News older = news("a", 1000);
+        News newer = news("b", 3000);
+        News undated = news("c", 0);
+        News middle = news("d", 2000);
+
+        List<News> merged = FanOutQueryEngine.merge(Arrays.asList(
+                Arrays.asList(older, undated, newer),
+                null,
+                Arrays.asList(news("b", 3000), middle)));
+
+        assertEquals(Arrays.asList(newer, middle, older, undated), merged);
+    }
+
+    @Test
+    public void run_deliversPartialResultsBeforeTheSlowestQuery() throws Exception {
+        final CountDownLatch slowQueryRelease = new CountDownLatch(1);
+        final Map<String, List<News>> results = new ConcurrentHashMap<>();
+        results.put("fast", Collections.singletonList(news("fast", 1000)));
+        results.put("slow", Collections.singletonList(news("slow", 2000)));
+        engine = new FanOutQueryEngine(new FanOutQueryEngine.Fetcher() {
+            @Override
+            public List<News> fetch(GuardianQuery query, CancellationToken token) {
+                if (query.getKeyword().equals("slow")) {
+                    await(slowQueryRelease);
+                }
+                return results.get(query.getKeyword());
+            }
+        }, 2);
+
+        final List<List<News>> partials = new ArrayList<>();
+        List<News> merged = engine.run(Arrays.asList(query("slow"), query("fast")), new CancellationToken(),
+                new FanOutQueryEngine.Listener() {
+                    @Override
+                    public void onResults(List<News> newsList, int completed, int queryCount) {
+                        partials.add(newsList);
+                        if (completed == 1) {
+                            // Only let the slow query finish once the fast one was delivered
+                            slowQueryRelease.countDown();
+                        }
+                    }
+                });
+
+        assertEquals(2, partials.size());
+        assertEquals(results.get("fast"), partials.get(0));
+        assertEquals(Arrays.asList(news("slow", 2000), news("fast", 1000)), merged);
+    }
+
+    @Test
+    public void run_boundsTheQueriesRunningAtOnce() {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        engine = new FanOutQueryEngine(new FanOutQueryEngine.Fetcher() {
+            @Override
+            public List<News> fetch(GuardianQuery query, CancellationToken token) {
+                int now = running.incrementAndGet();
+                maxRunning.set(Math.max(maxRunning.get(), now));
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                return Collections.singletonList(news(query.getKeyword(), 0));
+            }
+        }, 2);
+
+        List<GuardianQuery> queries = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            queries.add(query("q" + i));
+        }
+        List<News> merged = engine.run(queries, new CancellationToken(), null);
+
+        assertEquals(8, merged.size());
+        assertTrue("max running " + maxRunning.get(), maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void run_failedQueriesOnlyReturnNullWhenAllFailed() {
+        engine = new FanOutQueryEngine(new FanOutQueryEngine.Fetcher() {
+            @Override
+            public List<News> fetch(GuardianQuery query, CancellationToken token) {
+                return query.getKeyword().equals("ok") ? Collections.singletonList(news("ok", 0)) : null;
+            }
+        }, 2);
+
+        assertEquals(1, engine.run(Arrays.asList(query("ok"), query("ko")), new CancellationToken(), null).size());
+        assertNull(engine.run(Arrays.asList(query("ko"), query("ko too")), new CancellationToken(), null));
+    }
+
+    @Test
+    public void run_cancelCancelsEveryQuery() throws Exception {
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch cancelled = new CountDownLatch(2);
+        engine = new FanOutQueryEngine(new FanOutQueryEngine.Fetcher() {
+            @Override
+            public List<News> fetch(GuardianQuery query, CancellationToken token) {
+                started.countDown();
+                while (!token.isCancelled()) {
+                    Thread.yield();
+                }
+                cancelled.countDown();
+                return null;
+            }
+        }, 2);
+        final CancellationToken token = new CancellationToken();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                await(started);
+                token.cancel();
+            }
+        }).start();
+
+        assertNull(engine.run(Arrays.asList(query("a"), query("b")), token, null));
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+    }
+
+    private static GuardianQuery query(String keyword) {
+        return new GuardianQuery.Builder().apiKey("test").keyword(keyword).build();
+    }
+
+    private static News news(String web, long publishedAt) {
+        return new News(web, "Title " + web, "Section", Collections.<String>emptyList(), "", publishedAt);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.dormitantis.newsapp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link GuardianQuery}.
+ */
+public class GuardianQueryTest {
+
+    @Test
+    public void toUrl_onlyAsksForWhatTheParserReads() {
+        GuardianQuery query = new GuardianQuery.Builder().apiKey("test").keyword("climate").pageSize(42).build();
+
+        assertEquals("https://content.guardianapis.com/search?api-key=test&format=json&page-size=42"
+                + "&q=climate&show-fields=thumbnail&show-tags=contributor", query.toUrl());
+    }
+
+    @Test
+    public void toUrl_isTheSameWhateverTheBuilderOrder() {
+        GuardianQuery first = new GuardianQuery.Builder()
+                .apiKey("test")
+                .keyword("climate")
+                .section("environment")
+                .fromDate(2018, 1, 1)
+                .toDate(2018, 12, 31)
+                .orderBy(GuardianQuery.OrderBy.NEWEST)
+                .build();
+        GuardianQuery second = new GuardianQuery.Builder()
+                .orderBy(GuardianQuery.OrderBy.NEWEST)
+                .toDate(2018, 12, 31)
+                .fromDate(2018, 1, 1)
+                .section("environment")
+                .keyword("climate")
+                .apiKey("test")
+                .build();
+
+        assertEquals(first.toUrl(), second.toUrl());
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+        assertTrue(first.toUrl().contains("&from-date=2018-01-01&"));
+        assertTrue(first.toUrl().contains("&to-date=2018-12-31"));
+        assertTrue(first.toUrl().contains("&order-by=newest&"));
+    }
+
+    @Test
+    public void toUrl_encodesTheValuesOnce() {
+        GuardianQuery query = new GuardianQuery.Builder()
+                .apiKey("test")
+                .keyword("climate change")
+                .tag("environment/climate-change")
+                .build();
+
+        assertTrue(query.toUrl().contains("&q=climate%20change&"));
+        assertTrue(query.toUrl().contains("&tag=environment%2Fclimate-change"));
+    }
+
+    @Test
+    public void toUrl_joinsTheSectionsInOrder() {
+        GuardianQuery query = new GuardianQuery.Builder()
+                .apiKey("test")
+                .sections(Arrays.asList("world", "politics", "world"))
+                .build();
+
+        assertEquals(Arrays.asList("politics", "world"), query.getSections());
+        assertTrue(query.toUrl().contains("&section=politics%7Cworld&"));
+    }
+
+    @Test
+    public void toKey_isTheSameForEveryPageButKeepsTheFilters() {
+        GuardianQuery query = new GuardianQuery.Builder().apiKey("test").keyword("climate").build();
+        GuardianQuery filtered = query.buildUpon().section("environment").build();
+
+        assertEquals(query.toKey(), query.withPage(3).toKey());
+        assertEquals(query.toKey(), query.buildUpon().apiKey("other").build().toKey());
+        assertNotEquals(query.toKey(), filtered.toKey());
+        assertFalse(query.toKey().contains("api-key"));
+    }
+
+    @Test
+    public void isNewestFirst_followsTheDefaultOrderOfTheServer() {
+        GuardianQuery everything = new GuardianQuery.Builder().apiKey("test").build();
+        GuardianQuery keyword = everything.buildUpon().keyword("climate").build();
+
+        assertTrue(everything.isNewestFirst());
+        assertFalse(keyword.isNewestFirst());
+        assertTrue(keyword.buildUpon().orderBy(GuardianQuery.OrderBy.NEWEST).build().isNewestFirst());
+        assertFalse(everything.buildUpon().orderBy(GuardianQuery.OrderBy.OLDEST).build().isNewestFirst());
+    }
+
+    @Test
+    public void toUrl_asksForTheBodiesOfTheIds() {
+        String url = new GuardianQuery.Builder()
+                .apiKey("test")
+                .ids(Arrays.asList("world/2018/oct/17/b", "world/2018/oct/17/a"))
+                .showBody(true)
+                .build()
+                .toUrl();
+
+        assertTrue(url, url.contains("&ids=world%2F2018%2Foct%2F17%2Fa%2Cworld%2F2018%2Foct%2F17%2Fb&"));
+        assertTrue(url, url.contains("&show-fields=thumbnail%2Cbody&"));
+    }
+
+    @Test
+    public void idOf_isThePathOfTheWebUrl() {
+        assertEquals("world/2018/oct/17/a", GuardianQuery.idOf("https://www.theguardian.com/world/2018/oct/17/a"));
+        assertEquals("world/2018/oct/17/a", GuardianQuery.idOf("https://www.theguardian.com/world/2018/oct/17/a?x#y"));
+        assertNull(GuardianQuery.idOf("https://example.com/world/2018/oct/17/a"));
+        assertNull(GuardianQuery.idOf("https://www.theguardian.com/"));
+        assertNull(GuardianQuery.idOf(""));
+    }
+
+    @Test
+    public void toUrl_leavesOutTheDefaults() {
+        String url = new GuardianQuery.Builder().apiKey("test").keyword("  ").build().toUrl();
+
+        assertFalse(url.contains("q="));
+        assertFalse(url.contains("page="));
+        assertFalse(url.contains("order-by="));
+        assertFalse(url.contains("section="));
+    }
+
+    @Test
+    public void withPage_onlyChangesThePage() {
+        GuardianQuery query = new GuardianQuery.Builder().apiKey("test").keyword("climate").pageSize(42).build();
+        GuardianQuery third = query.withPage(3);
+
+        assertEquals(3, third.getPage());
+        assertEquals(query.toUrl().replace("page-size=42", "page=3&page-size=42"), third.toUrl());
+        assertEquals(query, third.withPage(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pageSize_largerThanServedIsRejected() {
+        new GuardianQuery.Builder().pageSize(GuardianQuery.MAX_PAGE_SIZE + 1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void build_emptyDateRangeIsRejected() {
+        new GuardianQuery.Builder().apiKey("test").fromDate(2018, 2, 1).toDate(2018, 1, 31).build();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void build_withoutApiKeyIsRejected() {
+        new GuardianQuery.Builder().keyword("climate").build();
+    }
+}
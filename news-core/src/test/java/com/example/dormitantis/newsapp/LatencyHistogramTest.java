@@ -0,0 +1,106 @@
+package com.example.dormitantis.newsapp;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_coverEveryDurationWithoutGaps() {
+        for (int index = 1; index < LatencyHistogram.indexOf(1L << 30); index++) {
+            assertEquals(LatencyHistogram.highestMicrosOf(index - 1) + 1,
+                    lowestMicrosOf(index));
+            assertEquals(index, LatencyHistogram.indexOf(lowestMicrosOf(index)));
+            assertEquals(index, LatencyHistogram.indexOf(LatencyHistogram.highestMicrosOf(index)));
+        }
+    }
+
+    @Test
+    public void percentiles_areWithinTheBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 100000; micros++) {
+            histogram.recordMicros(micros);
+        }
+
+        assertEquals(100000, histogram.getCount());
+        assertEquals(100000, histogram.getMaxMicros());
+        assertEquals(50000, histogram.getMeanMicros());
+        assertClose(50000, histogram.getPercentileMicros(50));
+        assertClose(95000, histogram.getPercentileMicros(95));
+        assertClose(99000, histogram.getPercentileMicros(99));
+        assertEquals(100000, histogram.getPercentileMicros(100));
+    }
+
+    @Test
+    public void empty_reportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(5000);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMicros(99));
+        assertEquals(0, histogram.getMeanMicros());
+    }
+
+    @Test
+    public void record_fromManyThreadsLosesNothing() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < 100000; j++) {
+                        histogram.recordMicros(j % 1000);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(400000, histogram.getCount());
+        assertEquals(999, histogram.getMaxMicros());
+    }
+
+    @Test
+    public void report_listsEveryStage() {
+        PipelineTracer.reset();
+        PipelineTracer.end(PipelineTracer.Stage.PARSE, PipelineTracer.begin(PipelineTracer.Stage.PARSE));
+        PipelineTracer.recordResponse(1000, 4000);
+        PipelineTracer.recordCacheLookup(true);
+        PipelineTracer.recordCacheLookup(false);
+
+        String report = PipelineTracer.report();
+        for (PipelineTracer.Stage stage : PipelineTracer.Stage.values()) {
+            assertTrue(report, report.contains(stage.getLabel()));
+        }
+        assertEquals(1, PipelineTracer.getHistogram(PipelineTracer.Stage.PARSE).getCount());
+        assertTrue(report, report.contains("compression    25.0%"));
+        assertTrue(report, report.contains("1 / 2 (50.0%)"));
+        PipelineTracer.reset();
+    }
+
+    private static long lowestMicrosOf(int index) {
+        return index == 0 ? 0 : LatencyHistogram.highestMicrosOf(index - 1) + 1;
+    }
+
+    private static void assertClose(long expected, long actual) {
+        assertTrue(expected + " != " + actual, Math.abs(expected - actual) <= expected / 16);
+    }
+}
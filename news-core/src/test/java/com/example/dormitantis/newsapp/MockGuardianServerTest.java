@@ -0,0 +1,136 @@
+package com.example.dormitantis.newsapp;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link MockGuardianServer}, read through {@link UrlConnectionTransport}
+ * and {@link NewsJsonParser} like the app reads theguardian.
+ */
+public class MockGuardianServerTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private MockGuardianServer server;
+    private final HttpTransport transport = new UrlConnectionTransport(1000, 1000, 0, 0);
+
+    @After
+    public void tearDown() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void search_pagesTheResultsOfEveryKeyword() throws IOException {
+        start(new MockGuardianServer.Builder().totalResults(45));
+        GuardianQuery query = new GuardianQuery.Builder().apiKey("test").keyword("climate").pageSize(20).build();
+
+        List<News> first = fetch(query);
+        List<News> last = fetch(query.withPage(3));
+        List<News> other = fetch(query.buildUpon().keyword("football").build());
+
+        assertEquals(20, first.size());
+        assertEquals(5, last.size());
+        assertTrue(first.get(0).getPublishedAt() > first.get(1).getPublishedAt());
+        assertFalse(first.get(0).getAuthors().isEmpty());
+        assertFalse(first.get(0).getThumbnail().isEmpty());
+        Set<String> webs = new HashSet<>();
+        for (News news : first) {
+            webs.add(news.getWeb());
+        }
+        for (News news : other) {
+            assertFalse(webs.contains(news.getWeb()));
+        }
+    }
+
+    @Test
+    public void search_refusesThePagesPastTheLastOne() throws IOException {
+        start(new MockGuardianServer.Builder().totalResults(45));
+        GuardianQuery query = new GuardianQuery.Builder().apiKey("test").pageSize(20).page(4).build();
+
+        HttpTransport.Response response = get(query.toUrl());
+        assertEquals(400, response.getCode());
+        response.close();
+    }
+
+    @Test
+    public void search_returnsTheBodiesOfTheGivenIds() throws IOException {
+        start(new MockGuardianServer.Builder().bodyBytes(1000));
+        List<String> webs = Arrays.asList("https://www.theguardian.com/world/2018/oct/08/a",
+                "https://www.theguardian.com/world/2018/oct/08/b");
+        GuardianQuery query = new GuardianQuery.Builder().apiKey("test")
+                .ids(Arrays.asList(GuardianQuery.idOf(webs.get(0)), GuardianQuery.idOf(webs.get(1))))
+                .showBody(true).build();
+
+        HttpTransport.Response response = get(query.toUrl());
+        Map<String, String> bodies = NewsJsonParser.parseBodies(new InputStreamReader(response.getBody(), UTF_8));
+        response.close();
+
+        assertEquals(new HashSet<>(webs), bodies.keySet());
+        assertEquals(1000, bodies.get(webs.get(0)).length());
+    }
+
+    @Test
+    public void failures_followTheConfiguredRates() throws IOException {
+        start(new MockGuardianServer.Builder().errorRate(1));
+        HttpTransport.Response response = get(new GuardianQuery.Builder().apiKey("test").build().toUrl());
+        assertEquals(500, response.getCode());
+        response.close();
+        server.close();
+
+        start(new MockGuardianServer.Builder().throttleRate(1));
+        response = get(new GuardianQuery.Builder().apiKey("test").build().toUrl());
+        assertEquals(429, response.getCode());
+        assertEquals(String.valueOf(MockGuardianServer.RETRY_AFTER_SECONDS), response.getHeader("Retry-After"));
+        response.close();
+        assertEquals(1, server.getThrottledCount());
+    }
+
+    @Test
+    public void search_isRevalidatedWithItsEtag() throws IOException {
+        start(new MockGuardianServer.Builder());
+        String url = new GuardianQuery.Builder().apiKey("test").build().toUrl();
+
+        HttpTransport.Response response = get(url);
+        String etag = response.getHeader("ETag");
+        response.close();
+        response = transport.get(server.urlFor(url), Collections.singletonMap("If-None-Match", etag),
+                new CancellationToken());
+
+        assertNotNull(etag);
+        assertEquals(304, response.getCode());
+        response.close();
+    }
+
+    private void start(MockGuardianServer.Builder builder) throws IOException {
+        server = builder.build();
+        server.start();
+    }
+
+    private HttpTransport.Response get(String url) throws IOException {
+        return transport.get(server.urlFor(url), Collections.<String, String>emptyMap(), new CancellationToken());
+    }
+
+    private List<News> fetch(GuardianQuery query) throws IOException {
+        HttpTransport.Response response = get(query.toUrl());
+        try {
+            assertEquals(200, response.getCode());
+            return NewsJsonParser.parse(new InputStreamReader(response.getBody(), UTF_8));
+        } finally {
+            response.close();
+        }
+    }
+}
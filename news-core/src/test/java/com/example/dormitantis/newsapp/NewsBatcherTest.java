@@ -0,0 +1,95 @@
+package com.example.dormitantis.newsapp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link NewsBatcher}.
+ */
+public class NewsBatcherTest {
+
+    @Test
+    public void batches_growUpToTheMaximum() {
+        final List<Integer> sizes = new ArrayList<>();
+        NewsBatcher batcher = new NewsBatcher(10, 40, new NewsBatcher.Consumer() {
+            @Override
+            public void onBatch(NewsBatcher batcher, List<News> batch) {
+                sizes.add(batch.size());
+                batcher.batchConsumed();
+            }
+        });
+
+        for (int i = 0; i < 140; i++) {
+            batcher.onNewsParsed(news(i));
+        }
+
+        // The last 30 are left for the whole list
+        assertEquals(Arrays.asList(10, 20, 40, 40), sizes);
+    }
+
+    @Test
+    public void batches_pileUpWhileTheConsumerIsBusy() {
+        final List<List<News>> batches = new ArrayList<>();
+        NewsBatcher batcher = new NewsBatcher(10, 40, new NewsBatcher.Consumer() {
+            @Override
+            public void onBatch(NewsBatcher batcher, List<News> batch) {
+                // Not consumed yet
+                batches.add(batch);
+            }
+        });
+
+        for (int i = 0; i < 100; i++) {
+            batcher.onNewsParsed(news(i));
+        }
+        assertEquals(1, batches.size());
+
+        // The news parsed meanwhile come in the next batch, none is lost or repeated
+        batcher.batchConsumed();
+        batcher.onNewsParsed(news(100));
+        assertEquals(2, batches.size());
+        assertEquals(10, batches.get(0).size());
+        assertEquals(91, batches.get(1).size());
+        assertEquals(news(10), batches.get(1).get(0));
+        assertEquals(news(100), batches.get(1).get(90));
+    }
+
+    @Test
+    public void parse_handsTheFirstBatchBeforeTheEnd() throws Exception {
+        final List<Integer> parsedWhenHandedOver = new ArrayList<>();
+        final List<News> parsed = new ArrayList<>();
+        final NewsBatcher batcher = new NewsBatcher(10, 40, new NewsBatcher.Consumer() {
+            @Override
+            public void onBatch(NewsBatcher batcher, List<News> batch) {
+                parsedWhenHandedOver.add(parsed.size());
+                batcher.batchConsumed();
+            }
+        });
+
+        byte[] response = RecordedResponses.page(200);
+        NewsJsonParser.parse(new InputStreamReader(new ByteArrayInputStream(response), Charset.forName("UTF-8")),
+                new NewsJsonParser.OnNewsParsedListener() {
+                    @Override
+                    public void onNewsParsed(News news) {
+                        parsed.add(news);
+                        batcher.onNewsParsed(news);
+                    }
+                });
+
+        assertEquals(200, parsed.size());
+        assertEquals(Integer.valueOf(10), parsedWhenHandedOver.get(0));
+    }
+
+    private static News news(int i) {
+        return new News("https://www.theguardian.com/" + i, "Title " + i, "Section",
+                Collections.<String>emptyList(), "");
+    }
+}
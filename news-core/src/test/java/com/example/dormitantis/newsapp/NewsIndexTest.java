@@ -0,0 +1,86 @@
+package com.example.dormitantis.newsapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link NewsIndex}.
+ */
+public class NewsIndexTest {
+
+    private static final News CLIMATE = new News("https://www.theguardian.com/climate",
+            "Climate change: world has 12 years to limit catastrophe", "World news",
+            Collections.singletonList("Jonathan Watts"), "");
+    private static final News ANDROID = new News("https://www.theguardian.com/android",
+            "Android apps share data with third parties", "Technology",
+            Arrays.asList("Alex Hern", "Samuel Gibbs"), "");
+    private static final News FOOTBALL = new News("https://www.theguardian.com/football",
+            "Climate of fear at the world cup", "Football",
+            Collections.<String>emptyList(), "");
+
+    private NewsIndex index;
+
+    @Before
+    public void setUp() {
+        index = new NewsIndex(10);
+        index.addAll(Arrays.asList(CLIMATE, ANDROID, FOOTBALL));
+    }
+
+    @Test
+    public void search_matchesTitleSectionAndAuthorWords() {
+        assertEquals(Collections.singletonList(ANDROID), index.search("third", 10));
+        assertEquals(Collections.singletonList(ANDROID), index.search("technology", 10));
+        assertEquals(Collections.singletonList(ANDROID), index.search("gibbs", 10));
+    }
+
+    @Test
+    public void search_matchesPrefixesMostRecentFirst() {
+        assertEquals(Arrays.asList(FOOTBALL, CLIMATE), index.search("clim", 10));
+        assertEquals(Collections.singletonList(FOOTBALL), index.search("clim", 1));
+    }
+
+    @Test
+    public void search_requiresEveryWord() {
+        assertEquals(Collections.singletonList(CLIMATE), index.search("climate news", 10));
+        assertEquals(Collections.singletonList(FOOTBALL), index.search("wor cup", 10));
+        assertTrue(index.search("climate android", 10).isEmpty());
+    }
+
+    @Test
+    public void search_normalizesLikeTheQueries() {
+        assertEquals(index.search("climate change", 10), index.search("  Climate-CHANGE! ", 10));
+        assertTrue(index.search("?!", 10).isEmpty());
+    }
+
+    @Test
+    public void addAll_replacesTheNewsWithTheSameUrl() {
+        News updated = new News(CLIMATE.getWeb(), "Heatwave warning", "Environment",
+                Collections.singletonList("Jonathan Watts"), "");
+        index.addAll(Collections.singletonList(updated));
+
+        assertEquals(3, index.size());
+        assertTrue(index.search("catastrophe", 10).isEmpty());
+        assertEquals(Collections.singletonList(updated), index.search("heatwave", 10));
+    }
+
+    @Test
+    public void addAll_dropsTheOldestNewsWhenFull() {
+        for (int i = 0; i < 25; i++) {
+            index.addAll(Collections.singletonList(new News("https://www.theguardian.com/" + i,
+                    "Story number " + i, "News", Collections.<String>emptyList(), "")));
+        }
+
+        assertEquals(10, index.size());
+        assertTrue(index.search("android", 10).isEmpty());
+        List<News> stories = index.search("story", 100);
+        assertEquals(10, stories.size());
+        assertEquals("Story number 24", stories.get(0).getTitle());
+        assertEquals("Story number 15", stories.get(9).getTitle());
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.dormitantis.newsapp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link NewsJsonParser}, fed with a recorded theguardian search response.
+ */
+public class NewsJsonParserTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String RESULTS_START = "\"results\":[";
+    private static final String RESULTS_END = "]}}";
+
+    @Test
+    public void parse_recordedResponse() throws Exception {
+        List<News> newsList = NewsJsonParser.parse(reader(new ByteArrayInputStream(recordedResponse().getBytes(UTF_8))));
+
+        assertEquals(3, newsList.size());
+
+        News first = newsList.get(0);
+        assertEquals("https://www.theguardian.com/world/2018/oct/02/climate-change-report-warming", first.getWeb());
+        assertEquals("Climate change: world has 12 years to limit catastrophe, warns UN", first.getTitle());
+        assertEquals("World news", first.getSection());
+        assertEquals(Collections.singletonList("Jonathan Watts"), first.getAuthors());
+        assertEquals("Jonathan Watts", first.getAuthorsText());
+        assertEquals("https://media.guim.co.uk/0a1b2c3d4e5f/0_0_3500_2100/500.jpg", first.getThumbnail());
+        // 2018-10-02T14:00:11Z
+        assertEquals(1538488811000L, first.getPublishedAt());
+
+        assertEquals(Arrays.asList("Alex Hern", "Samuel Gibbs"), newsList.get(1).getAuthors());
+        assertEquals("Alex Hern,\nSamuel Gibbs", newsList.get(1).getAuthorsText());
+        assertTrue(newsList.get(2).getAuthors().isEmpty());
+        assertEquals("", newsList.get(2).getAuthorsText());
+        assertEquals("", newsList.get(2).getThumbnail());
+    }
+
+    @Test
+    public void parse_repeatedValuesAreShared() throws Exception {
+        List<News> newsList = NewsJsonParser.parse(reader(new ByteArrayInputStream(RecordedResponses.page(6))));
+
+        // The recorded results come back every 3 news, with their own urls but the same names
+        assertNotSame(newsList.get(0).getWeb(), newsList.get(3).getWeb());
+        assertSame(newsList.get(0).getSection(), newsList.get(3).getSection());
+        assertSame(newsList.get(1).getAuthors().get(1), newsList.get(4).getAuthors().get(1));
+    }
+
+    @Test
+    public void news_displayedAuthorsRoundTrip() {
+        News news = new News("web", "Title", "Section", "Alex Hern,\nSamuel Gibbs");
+
+        assertEquals(Arrays.asList("Alex Hern", "Samuel Gibbs"), news.getAuthors());
+        assertEquals("Alex Hern,\nSamuel Gibbs", news.getAuthorsText());
+        assertEquals(news, new News("web", "Title", "Section", news.getAuthors(), ""));
+    }
+
+    @Test
+    public void parse_nullValuesBecomeEmpty() throws Exception {
+        String json = "{\"response\":{\"results\":[{\"webUrl\":null,\"webTitle\":\"Title\",\"sectionName\":\"News\",\"tags\":[]}]}}";
+        List<News> newsList = NewsJsonParser.parse(reader(new ByteArrayInputStream(json.getBytes(UTF_8))));
+
+        assertEquals(1, newsList.size());
+        assertEquals("", newsList.get(0).getWeb());
+    }
+
+    @Test
+    public void parseBodies_keysTheBodiesByWebUrl() throws Exception {
+        String json = "{\"response\":{\"status\":\"ok\",\"results\":["
+                + "{\"webUrl\":\"https://a\",\"fields\":{\"thumbnail\":\"t\",\"body\":\"<p>A</p>\"}},"
+                + "{\"webUrl\":\"https://b\",\"fields\":{\"thumbnail\":\"t\"}}]}}";
+        Map<String, String> bodies = NewsJsonParser.parseBodies(reader(new ByteArrayInputStream(json.getBytes(UTF_8))));
+
+        assertEquals(Collections.singletonMap("https://a", "<p>A</p>"), bodies);
+    }
+
+    @Test
+    public void parseTimestamp_onlyReadsUtcTimestamps() {
+        assertEquals(0, NewsJsonParser.parseTimestamp("1970-01-01T00:00:00Z"));
+        assertEquals(951782400000L, NewsJsonParser.parseTimestamp("2000-02-29T00:00:00Z"));
+        assertEquals(0, NewsJsonParser.parseTimestamp("2018-10-02T14:00:11+01:00"));
+        assertEquals(0, NewsJsonParser.parseTimestamp("2018-13-02T14:00:11Z"));
+        assertEquals(0, NewsJsonParser.parseTimestamp(""));
+    }
+
+    @Test(expected = IOException.class)
+    public void parse_malformedResponse() throws Exception {
+        NewsJsonParser.parse(reader(new ByteArrayInputStream("{\"response\":{\"results\":[{".getBytes(UTF_8))));
+    }
+
+    @Test
+    public void parse_multiMegabyteResponseIsStreamed() throws Exception {
+        String recorded = recordedResponse();
+        int resultsStart = recorded.indexOf(RESULTS_START) + RESULTS_START.length();
+        int resultsEnd = recorded.lastIndexOf(RESULTS_END);
+        final byte[] head = recorded.substring(0, resultsStart).getBytes(UTF_8);
+        final byte[] results = recorded.substring(resultsStart, resultsEnd).getBytes(UTF_8);
+        final byte[] tail = recorded.substring(resultsEnd).getBytes(UTF_8);
+        final int repeats = 2000;
+
+        // Replay the recorded results over and over without ever materializing the whole body
+        final CountingInputStream in = new CountingInputStream(new SequenceInputStream(new Enumeration<InputStream>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasMoreElements() {
+                return index <= repeats + 1;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                int current = index++;
+                if (current == 0) {
+                    return new ByteArrayInputStream(head);
+                } else if (current == repeats + 1) {
+                    return new ByteArrayInputStream(tail);
+                } else if (current == repeats) {
+                    return new ByteArrayInputStream(results);
+                }
+                byte[] chunk = new byte[results.length + 1];
+                System.arraycopy(results, 0, chunk, 0, results.length);
+                chunk[results.length] = ',';
+                return new ByteArrayInputStream(chunk);
+            }
+        }));
+
+        final long[] bytesReadAtFirstNews = {-1};
+        final int[] count = {0};
+        NewsJsonParser.parse(reader(in), new NewsJsonParser.OnNewsParsedListener() {
+            @Override
+            public void onNewsParsed(News news) {
+                if (count[0]++ == 0) {
+                    bytesReadAtFirstNews[0] = in.count;
+                }
+                assertFalse(news.getWeb().isEmpty());
+            }
+        });
+
+        assertEquals(3 * repeats, count[0]);
+        assertTrue("response should be multi-megabyte", in.count > 4 * 1024 * 1024);
+        assertTrue("first news should arrive before the body is downloaded",
+                bytesReadAtFirstNews[0] < 64 * 1024);
+    }
+
+    private static Reader reader(InputStream in) {
+        return new InputStreamReader(in, UTF_8);
+    }
+
+    private String recordedResponse() {
+        InputStream in = getClass().getClassLoader().getResourceAsStream("guardian_search_response.json");
+        Scanner scanner = new Scanner(in, "UTF-8").useDelimiter("\\A");
+        String json = scanner.next().trim();
+        scanner.close();
+        return json;
+    }
+
+    /**
+     * Counts how many bytes the parser actually pulled from the stream.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.dormitantis.newsapp;
+
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Builds theguardian search responses of any size out of the recorded one, for the tests
+ * and the benchmarks.
+ */
+public final class RecordedResponses {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String RESULTS_START = "\"results\":[";
+    private static final String RESULTS_END = "]}}";
+
+    /**
+     * Identifiers of the results, made unique in every copy of them
+     */
+    private static final Pattern IDENTIFIERS = Pattern.compile("(\"(?:id|webUrl|apiUrl)\":\"[^\"]*)\"");
+
+    private RecordedResponses() {
+    }
+
+    /**
+     * Returns the recorded response, as it was received.
+     */
+    public static String recorded() {
+        InputStream in = RecordedResponses.class.getClassLoader().getResourceAsStream("guardian_search_response.json");
+        Scanner scanner = new Scanner(in, "UTF-8").useDelimiter("\\A");
+        String json = scanner.next().trim();
+        scanner.close();
+        return json;
+    }
+
+    /**
+     * Returns a response with the given number of results, cycling through the recorded ones.
+     * Every result gets its own urls, while the sections and authors repeat like they do
+     * in the real responses.
+     */
+    public static byte[] page(int resultCount) {
+        String recorded = recorded();
+        int resultsStart = recorded.indexOf(RESULTS_START) + RESULTS_START.length();
+        int resultsEnd = recorded.lastIndexOf(RESULTS_END);
+        List<String> results = splitResults(recorded.substring(resultsStart, resultsEnd));
+
+        StringBuilder builder = new StringBuilder(recorded.substring(0, resultsStart));
+        for (int i = 0; i < resultCount; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            Matcher matcher = IDENTIFIERS.matcher(results.get(i % results.size()));
+            builder.append(matcher.replaceAll("$1-" + i + "\""));
+        }
+        builder.append(recorded.substring(resultsEnd));
+        return builder.toString().getBytes(UTF_8);
+    }
+
+    /**
+     * Splits the content of the results array into its objects.
+     */
+    private static List<String> splitResults(String results) {
+        List<String> objects = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        boolean inString = false;
+        for (int i = 0; i < results.length(); i++) {
+            char c = results.charAt(i);
+            if (inString) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                objects.add(results.substring(start, i));
+                start = i + 1;
+            }
+        }
+        objects.add(results.substring(start));
+        return objects;
+    }
+}
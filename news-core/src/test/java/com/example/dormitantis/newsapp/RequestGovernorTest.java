@@ -0,0 +1,219 @@
+package com.example.dormitantis.newsapp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link RequestGovernor} and {@link GovernedTransport}.
+ */
+public class RequestGovernorTest {
+
+    private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final FakeClock clock = new FakeClock();
+
+    @Test
+    public void acquire_servesTheUserVisibleRequestsFirst() throws Exception {
+        final RequestGovernor governor = new RequestGovernor(1, 1, 100, clock);
+        governor.acquire(RequestGovernor.Priority.USER_VISIBLE, new CancellationToken());
+
+        final List<RequestGovernor.Priority> served = Collections.synchronizedList(
+                new ArrayList<RequestGovernor.Priority>());
+        Thread prefetch = acquireInBackground(governor, RequestGovernor.Priority.PREFETCH, served);
+        Thread.sleep(50);
+        Thread user = acquireInBackground(governor, RequestGovernor.Priority.USER_VISIBLE, served);
+        Thread.sleep(50);
+        assertTrue(served.isEmpty());
+
+        clock.nanos += SECOND_NANOS;
+        user.join(5000);
+        assertEquals(Collections.singletonList(RequestGovernor.Priority.USER_VISIBLE), served);
+
+        clock.nanos += SECOND_NANOS;
+        prefetch.join(5000);
+        assertEquals(2, served.size());
+        assertEquals(3, governor.getRequestsToday());
+    }
+
+    @Test
+    public void acquire_keepsTheEndOfTheQuotaForTheUser() throws Exception {
+        RequestGovernor governor = new RequestGovernor(1000, 1000, 10, clock);
+        for (int i = 0; i < 8; i++) {
+            governor.acquire(RequestGovernor.Priority.BACKGROUND, new CancellationToken());
+        }
+        try {
+            governor.acquire(RequestGovernor.Priority.PREFETCH, new CancellationToken());
+            fail("The last calls of the day should be kept for the user");
+        } catch (RequestGovernor.QuotaExceededException expected) {
+            assertEquals(1, governor.getRefusedCount());
+        }
+        governor.acquire(RequestGovernor.Priority.USER_VISIBLE, new CancellationToken());
+
+        // A new day starts over
+        clock.millis += TimeUnit.DAYS.toMillis(1);
+        governor.acquire(RequestGovernor.Priority.PREFETCH, new CancellationToken());
+        assertEquals(1, governor.getRequestsToday());
+    }
+
+    @Test
+    public void setQuotaStore_keepsTheCountOfTheDayAcrossGovernors() throws Exception {
+        final Map<Long, Integer> stored = new HashMap<>();
+        RequestGovernor.QuotaStore quotaStore = new RequestGovernor.QuotaStore() {
+            @Override
+            public int load(long day) {
+                Integer requests = stored.get(day);
+                return requests == null ? 0 : requests;
+            }
+
+            @Override
+            public void save(long day, int requests) {
+                stored.clear();
+                stored.put(day, requests);
+            }
+        };
+        RequestGovernor governor = new RequestGovernor(1000, 1000, 10, clock);
+        governor.setQuotaStore(quotaStore);
+        for (int i = 0; i < 8; i++) {
+            governor.acquire(RequestGovernor.Priority.BACKGROUND, new CancellationToken());
+        }
+
+        // As if the process was restarted
+        RequestGovernor restarted = new RequestGovernor(1000, 1000, 10, clock);
+        restarted.setQuotaStore(quotaStore);
+        assertEquals(8, restarted.getRequestsToday());
+        try {
+            restarted.acquire(RequestGovernor.Priority.BACKGROUND, new CancellationToken());
+            fail("The calls of the previous process should count");
+        } catch (RequestGovernor.QuotaExceededException expected) {
+            assertEquals(1, restarted.getRefusedCount());
+        }
+
+        clock.millis += TimeUnit.DAYS.toMillis(1);
+        RequestGovernor nextDay = new RequestGovernor(1000, 1000, 10, clock);
+        nextDay.setQuotaStore(quotaStore);
+        assertEquals(0, nextDay.getRequestsToday());
+    }
+
+    @Test
+    public void get_retriesAfterTheRetryAfterOfAThrottledResponse() throws Exception {
+        final RequestGovernor governor = new RequestGovernor(1000, 1, 100, clock);
+        final List<Integer> codes = new ArrayList<>(Collections.singletonList(429));
+        GovernedTransport transport = new GovernedTransport(new HttpTransport() {
+            @Override
+            public Response get(String url, Map<String, String> headers, CancellationToken token) {
+                if (!codes.isEmpty()) {
+                    codes.remove(0);
+                    // Let the pause pass while the request waits
+                    clock.autoAdvanceNanos = SECOND_NANOS / 4;
+                    return response(429, "1");
+                }
+                return response(200, null);
+            }
+        }, governor);
+
+        HttpTransport.Response response = transport.get("https://example.com", Collections.<String, String>emptyMap(),
+                new CancellationToken());
+
+        assertEquals(200, response.getCode());
+        assertEquals(1, governor.getThrottledCount());
+        assertEquals(2, governor.getRequestsToday());
+    }
+
+    @Test
+    public void get_takesAPermitForTheRetryOfAServerError() throws Exception {
+        RequestGovernor governor = new RequestGovernor(1000, 10, 100, clock);
+        final List<Integer> codes = new ArrayList<>(Collections.singletonList(503));
+        GovernedTransport transport = new GovernedTransport(new HttpTransport() {
+            @Override
+            public Response get(String url, Map<String, String> headers, CancellationToken token) {
+                return response(codes.isEmpty() ? 200 : codes.remove(0), null);
+            }
+        }, governor, 2, 0);
+
+        HttpTransport.Response response = transport.get("https://example.com", Collections.<String, String>emptyMap(),
+                new CancellationToken());
+
+        assertEquals(200, response.getCode());
+        assertEquals(2, governor.getRequestsToday());
+    }
+
+    @Test
+    public void parseRetryAfter_readsSecondsAndDates() {
+        assertEquals(120000, RequestGovernor.parseRetryAfter("120", 0));
+        assertEquals(30000, RequestGovernor.parseRetryAfter("Thu, 01 Jan 1970 00:00:30 GMT", 0));
+        assertEquals(RequestGovernor.DEFAULT_RETRY_AFTER_MILLIS, RequestGovernor.parseRetryAfter("soon", 0));
+        assertEquals(RequestGovernor.DEFAULT_RETRY_AFTER_MILLIS, RequestGovernor.parseRetryAfter(null, 0));
+    }
+
+    private static Thread acquireInBackground(final RequestGovernor governor, final RequestGovernor.Priority priority,
+                                              final List<RequestGovernor.Priority> served) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    governor.acquire(priority, new CancellationToken());
+                    served.add(priority);
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static HttpTransport.Response response(final int code, final String retryAfter) {
+        return new HttpTransport.Response() {
+            @Override
+            public int getCode() {
+                return code;
+            }
+
+            @Override
+            public String getHeader(String name) {
+                return name.equals("Retry-After") ? retryAfter : null;
+            }
+
+            @Override
+            public InputStream getBody() {
+                return new ByteArrayInputStream(new byte[0]);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private static final class FakeClock implements RequestGovernor.Clock {
+        volatile long nanos;
+        volatile long millis = TimeUnit.DAYS.toMillis(17800);
+
+        /**
+         * How much time passes every time the time is read
+         */
+        volatile long autoAdvanceNanos;
+
+        @Override
+        public synchronized long nanoTime() {
+            nanos += autoAdvanceNanos;
+            return nanos;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return millis;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.dormitantis.newsapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link SyncInterval}.
+ */
+public class SyncIntervalTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    @Test
+    public void next_followsHowManyNewsWerePublished() {
+        assertEquals(HOUR, SyncInterval.next(2 * HOUR, SyncInterval.BUSY_NEWS_COUNT));
+        assertEquals(2 * HOUR, SyncInterval.next(2 * HOUR, 1));
+        assertEquals(4 * HOUR, SyncInterval.next(2 * HOUR, 0));
+    }
+
+    @Test
+    public void next_staysWithinTheBounds() {
+        assertEquals(SyncInterval.MIN_INTERVAL_MILLIS,
+                SyncInterval.next(SyncInterval.MIN_INTERVAL_MILLIS, 100));
+        assertEquals(SyncInterval.MAX_INTERVAL_MILLIS,
+                SyncInterval.next(SyncInterval.MAX_INTERVAL_MILLIS, 0));
+    }
+}
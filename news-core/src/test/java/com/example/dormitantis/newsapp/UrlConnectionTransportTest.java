@@ -0,0 +1,252 @@
+package com.example.dormitantis.newsapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link UrlConnectionTransport}, against a mock server on the loopback
+ * interface serving pages of 42 results built from a recorded theguardian search response.
+ */
+public class UrlConnectionTransportTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Short timeouts and backoff, so the retries do not slow the tests down
+     */
+    private static final int READ_TIMEOUT_MILLIS = 300;
+    private static final long BASE_BACKOFF_MILLIS = 10;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private UrlConnectionTransport transport;
+
+    private final List<InetSocketAddress> clientAddresses = Collections.synchronizedList(new ArrayList<InetSocketAddress>());
+    private final List<RequestMetrics> metrics = Collections.synchronizedList(new ArrayList<RequestMetrics>());
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    /**
+     * Status code of the responses, per request, the following requests get a 200
+     */
+    private volatile int[] failures = new int[0];
+
+    /**
+     * Requests whose response is delayed past the read timeout
+     */
+    private volatile int slowRequests;
+
+    private byte[] page;
+
+    @Before
+    public void setUp() throws Exception {
+        page = RecordedResponses.page(42);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/search", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        transport = new UrlConnectionTransport(1000, READ_TIMEOUT_MILLIS, 2, BASE_BACKOFF_MILLIS);
+        transport.setMetricsListener(new RequestMetrics.Listener() {
+            @Override
+            public void onRequestCompleted(RequestMetrics requestMetrics) {
+                metrics.add(requestMetrics);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void get_reusesTheConnection() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            HttpTransport.Response response = get();
+            assertEquals(200, response.getCode());
+            readFully(response.getBody());
+            response.close();
+        }
+
+        assertEquals(5, clientAddresses.size());
+        for (InetSocketAddress address : clientAddresses) {
+            assertEquals("every request should go through the same connection",
+                    clientAddresses.get(0), address);
+        }
+    }
+
+    @Test
+    public void get_reusesTheConnectionOfAnUnreadResponse() throws Exception {
+        get().close();
+        HttpTransport.Response response = get();
+        readFully(response.getBody());
+        response.close();
+
+        assertEquals(clientAddresses.get(0), clientAddresses.get(1));
+    }
+
+    @Test
+    public void get_decompressesGzippedResponses() throws Exception {
+        HttpTransport.Response response = get();
+        byte[] body = readFully(response.getBody());
+        response.close();
+
+        assertArrayEquals(page, body);
+        assertEquals(42, NewsJsonParser.parse(new InputStreamReader(new ByteArrayInputStream(body), UTF_8)).size());
+        RequestMetrics requestMetrics = metrics.get(0);
+        assertEquals(page.length, requestMetrics.getBodyBytes());
+        long saving = 100 - requestMetrics.getWireBytes() * 100 / requestMetrics.getBodyBytes();
+        assertTrue("gzip should at least halve the JSON of a page, " + page.length + " bytes sent as "
+                + requestMetrics.getWireBytes() + " gzipped bytes, " + saving + "% saved", saving >= 50);
+    }
+
+    @Test
+    public void get_retriesServerErrors() throws Exception {
+        failures = new int[]{503, 500};
+
+        HttpTransport.Response response = get();
+        readFully(response.getBody());
+        response.close();
+
+        assertEquals(200, response.getCode());
+        assertEquals(3, requestCount.get());
+        assertEquals(3, metrics.get(0).getAttempts());
+        // The failed attempts kept the connection alive too
+        assertEquals(clientAddresses.get(0), clientAddresses.get(2));
+    }
+
+    @Test
+    public void get_givesUpAfterMaxRetries() throws Exception {
+        failures = new int[]{503, 503, 503, 503};
+
+        HttpTransport.Response response = get();
+        response.close();
+
+        assertEquals(503, response.getCode());
+        assertEquals(3, requestCount.get());
+    }
+
+    @Test
+    public void get_doesNotRetryClientErrors() throws Exception {
+        failures = new int[]{404};
+
+        HttpTransport.Response response = get();
+        response.close();
+
+        assertEquals(404, response.getCode());
+        assertEquals(1, requestCount.get());
+    }
+
+    @Test
+    public void get_retriesTimeouts() throws Exception {
+        slowRequests = 1;
+
+        HttpTransport.Response response = get();
+        readFully(response.getBody());
+        response.close();
+
+        assertEquals(200, response.getCode());
+        assertEquals(2, metrics.get(0).getAttempts());
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void get_throwsWhenEveryAttemptTimesOut() throws Exception {
+        slowRequests = 3;
+        get();
+    }
+
+    @Test(expected = IOException.class)
+    public void get_stopsRetryingOnceCancelled() throws Exception {
+        failures = new int[]{503, 503};
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        transport.get(url(), Collections.<String, String>emptyMap(), token);
+    }
+
+    private HttpTransport.Response get() throws IOException {
+        return transport.get(url(), Collections.<String, String>emptyMap(), new CancellationToken());
+    }
+
+    private String url() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/search";
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        int request = requestCount.getAndIncrement();
+        clientAddresses.add(exchange.getRemoteAddress());
+        try {
+            if (request < slowRequests) {
+                try {
+                    Thread.sleep(READ_TIMEOUT_MILLIS * 3);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+            int[] currentFailures = failures;
+            if (request < currentFailures.length) {
+                byte[] error = "{\"message\":\"unavailable\"}".getBytes(UTF_8);
+                exchange.sendResponseHeaders(currentFailures[request], error.length);
+                exchange.getResponseBody().write(error);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                exchange.sendResponseHeaders(200, 0);
+                GZIPOutputStream out = new GZIPOutputStream(exchange.getResponseBody());
+                out.write(page);
+                out.finish();
+            } else {
+                exchange.sendResponseHeaders(200, page.length);
+                exchange.getResponseBody().write(page);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
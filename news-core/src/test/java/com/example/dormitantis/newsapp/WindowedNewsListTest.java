@@ -0,0 +1,199 @@
+package com.example.dormitantis.newsapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link WindowedNewsList} and {@link NewsPageFile}.
+ */
+public class WindowedNewsListTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private NewsPageFile pageFile;
+    private WindowedNewsList list;
+
+    @Before
+    public void setUp() {
+        pageFile = new NewsPageFile(new File(folder.getRoot(), "feed.pages"));
+        list = new WindowedNewsList(pageFile, WindowedNewsList.MIN_WINDOW_SIZE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pageFile.close();
+    }
+
+    @Test
+    public void pageFile_readsBackWhatItWrote() throws Exception {
+        News news = new News("https://www.theguardian.com/a", "Title", "World news",
+                Arrays.asList("Jane Doe", "John Smith"), "https://media.guim.co.uk/a.jpg", 1500000000000L);
+        long first = pageFile.append(news);
+        long second = pageFile.append(news(2));
+
+        assertEquals(news, pageFile.read(first));
+        assertEquals(news(2), pageFile.read(second));
+    }
+
+    @Test
+    public void setCenter_spillsTheNewsOutsideOfTheWindow() {
+        List<News> expected = news(0, 200);
+        list.addAll(expected);
+        list.setCenter(150);
+
+        assertTrue(list.getResidentCount() <= WindowedNewsList.MIN_WINDOW_SIZE);
+        assertEquals(expected, new ArrayList<>(list));
+        // The news read outside of the window stay spilled
+        assertTrue(list.getResidentCount() <= WindowedNewsList.MIN_WINDOW_SIZE);
+        assertNull(list.peek(0));
+    }
+
+    @Test
+    public void spilledNews_areNotReadBackOnceTheFileIsClosed() throws Exception {
+        list.addAll(news(0, 100));
+        list.setCenter(90);
+        pageFile.close();
+
+        assertNull(list.set(0, news(500)));
+        assertEquals(news(500), list.peek(0));
+        assertNull(list.get(1));
+    }
+
+    @Test
+    public void snapshot_readsBackTheSpilledNewsOffTheList() {
+        list.addAll(news(0, 100));
+        list.setCenter(90);
+        int resident = list.getResidentCount();
+
+        WindowedNewsList.Snapshot snapshot = list.snapshot(0, 20);
+        assertEquals(resident, list.getResidentCount());
+        snapshot.run();
+        list.apply(snapshot);
+
+        assertEquals(news(0, 20), snapshot.getNews());
+        assertEquals(resident + 20, list.getResidentCount());
+        assertEquals(news(3), list.peek(3));
+    }
+
+    @Test
+    public void moveWindow_readsBackTheNewsEnteringTheWindow() throws Exception {
+        list.addAll(news(0, 100));
+        list.setCenter(90);
+
+        WindowedNewsList.WindowMove move = list.moveWindow(10);
+        move.run();
+        list.apply(move);
+        long length = pageFile.length();
+        for (int i = 0; i < 20; i++) {
+            list.get(i);
+        }
+
+        assertEquals(WindowedNewsList.MIN_WINDOW_SIZE, list.getResidentCount());
+        assertEquals(length, pageFile.length());
+    }
+
+    @Test
+    public void moveWindow_leavesAloneTheNewsChangedMeanwhile() {
+        List<News> expected = new ArrayList<>(news(0, 100));
+        list.addAll(expected);
+
+        WindowedNewsList.WindowMove move = list.moveWindow(90);
+        list.set(5, news(500));
+        expected.set(5, news(500));
+        list.subList(10, 20).clear();
+        expected.subList(10, 20).clear();
+        move.run();
+        list.apply(move);
+
+        assertEquals(expected, new ArrayList<>(list));
+        list.setCenter(10);
+        assertTrue(list.getResidentCount() <= WindowedNewsList.MIN_WINDOW_SIZE);
+    }
+
+    @Test
+    public void getWebHash_doesNotReadBack() throws Exception {
+        list.addAll(news(0, 100));
+        list.setCenter(90);
+        int resident = list.getResidentCount();
+
+        assertEquals(WindowedNewsList.hashOf(news(0).getWeb()), list.getWebHash(0));
+        assertEquals(resident, list.getResidentCount());
+    }
+
+    @Test
+    public void spilledNews_areNotWrittenTwice() throws Exception {
+        list.addAll(news(0, 100));
+        list.setCenter(90);
+        list.setCenter(10);
+        long length = pageFile.length();
+        for (int i = 0; i < 20; i++) {
+            list.get(i);
+        }
+        list.setCenter(90);
+
+        assertEquals(length, pageFile.length());
+    }
+
+    @Test
+    public void updates_applyToSpilledNews() {
+        List<News> expected = new ArrayList<>(news(0, 100));
+        list.addAll(expected);
+        list.setCenter(90);
+
+        list.set(5, news(500));
+        expected.set(5, news(500));
+        list.add(1, list.remove(3));
+        expected.add(1, expected.remove(3));
+        list.subList(10, 20).clear();
+        expected.subList(10, 20).clear();
+        list.addAll(0, news(300, 310));
+        expected.addAll(0, news(300, 310));
+
+        assertEquals(expected, new ArrayList<>(list));
+    }
+
+    @Test
+    public void setWindowSize_shrinksTheWindow() {
+        list = new WindowedNewsList(pageFile, 64);
+        list.addAll(news(0, 100));
+        list.setWindowSize(0);
+        list.setCenter(0);
+
+        assertEquals(WindowedNewsList.MIN_WINDOW_SIZE, list.getWindowSize());
+        assertTrue(list.getResidentCount() <= WindowedNewsList.MIN_WINDOW_SIZE);
+    }
+
+    @Test
+    public void clear_forgetsTheFile() throws Exception {
+        list.addAll(news(0, 100));
+        list.setCenter(90);
+        list.clear();
+
+        assertEquals(0, list.size());
+        assertEquals(0, pageFile.length());
+    }
+
+    private static List<News> news(int from, int to) {
+        List<News> newsList = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            newsList.add(news(i));
+        }
+        return newsList;
+    }
+
+    private static News news(int i) {
+        return new News("https://www.theguardian.com/" + i, "Title " + i, "Section",
+                i % 2 == 0 ? "Author " + i : "", "", i * 1000L);
+    }
+}